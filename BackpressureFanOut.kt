@@ -0,0 +1,165 @@
+package com.guardianai.managers
+
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Etapa de distribución (fan-out) con buffers por suscriptor
+ * El publicador nunca se suspende: cada suscriptor tiene su propio buffer y
+ * su propia política de desbordamiento, así un colector lento sólo se retrasa a sí mismo
+ */
+class BackpressureFanOut<T>(private val name: String) {
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+        const val DEFAULT_BATCH_SIZE = 32
+    }
+
+    enum class OverflowPolicy {
+        DROP_OLDEST,  // Descarta el elemento más antiguo del buffer
+        CONFLATE,     // Conserva sólo el último elemento
+        BATCH         // Entrega listas con todo lo acumulado desde la última recolección
+    }
+
+    data class SubscriberStats(
+        val fanOut: String,
+        val subscriber: String,
+        val policy: OverflowPolicy,
+        val capacity: Int,
+        val published: Long,
+        val delivered: Long,
+        val dropped: Long,
+        val lag: Long
+    )
+
+    private inner class Subscriber(
+        val subscriberName: String,
+        val policy: OverflowPolicy,
+        val capacity: Int
+    ) {
+        val published = AtomicLong(0)
+        val delivered = AtomicLong(0)
+        val dropped = AtomicLong(0)
+
+        // onUndeliveredElement se invoca por cada elemento descartado por desbordamiento
+        val channel: Channel<T> = when (policy) {
+            OverflowPolicy.CONFLATE -> Channel(Channel.CONFLATED) { dropped.incrementAndGet() }
+            else -> Channel(capacity, BufferOverflow.DROP_OLDEST) { dropped.incrementAndGet() }
+        }
+
+        fun offer(value: T) {
+            published.incrementAndGet()
+            channel.trySend(value)
+        }
+
+        fun stats(): SubscriberStats = SubscriberStats(
+            fanOut = name,
+            subscriber = subscriberName,
+            policy = policy,
+            capacity = capacity,
+            published = published.get(),
+            delivered = delivered.get(),
+            dropped = dropped.get(),
+            lag = (published.get() - delivered.get() - dropped.get()).coerceAtLeast(0L)
+        )
+    }
+
+    private val subscribers = CopyOnWriteArrayList<Subscriber>()
+
+    /**
+     * Publica un valor a todos los suscriptores sin suspender
+     */
+    fun publish(value: T) {
+        for (subscriber in subscribers) {
+            subscriber.offer(value)
+        }
+    }
+
+    /**
+     * Suscripción elemento a elemento con política DROP_OLDEST o CONFLATE
+     */
+    fun subscribe(
+        subscriberName: String,
+        policy: OverflowPolicy = OverflowPolicy.DROP_OLDEST,
+        capacity: Int = DEFAULT_CAPACITY
+    ): Flow<T> {
+        require(policy != OverflowPolicy.BATCH) { "Use subscribeBatched para la política BATCH" }
+        require(capacity > 0) { "La capacidad debe ser positiva" }
+
+        return flow {
+            val subscriber = register(subscriberName, policy, capacity)
+            try {
+                for (value in subscriber.channel) {
+                    subscriber.delivered.incrementAndGet()
+                    emit(value)
+                }
+            } finally {
+                unregister(subscriber)
+            }
+        }
+    }
+
+    /**
+     * Suscripción por lotes: cada emisión contiene hasta [maxBatchSize] elementos acumulados
+     */
+    fun subscribeBatched(
+        subscriberName: String,
+        maxBatchSize: Int = DEFAULT_BATCH_SIZE,
+        capacity: Int = DEFAULT_CAPACITY
+    ): Flow<List<T>> {
+        require(maxBatchSize > 0) { "El tamaño de lote debe ser positivo" }
+        require(capacity > 0) { "La capacidad debe ser positiva" }
+
+        return flow {
+            val subscriber = register(subscriberName, OverflowPolicy.BATCH, capacity)
+            try {
+                while (true) {
+                    val first = subscriber.channel.receiveCatching().getOrNull() ?: break
+                    val batch = ArrayList<T>(maxBatchSize)
+                    batch.add(first)
+
+                    while (batch.size < maxBatchSize) {
+                        val next = subscriber.channel.tryReceive().getOrNull() ?: break
+                        batch.add(next)
+                    }
+
+                    subscriber.delivered.addAndGet(batch.size.toLong())
+                    emit(batch)
+                }
+            } finally {
+                unregister(subscriber)
+            }
+        }
+    }
+
+    /**
+     * Estadísticas de retraso y descartes por suscriptor
+     */
+    fun getSubscriberStats(): List<SubscriberStats> = subscribers.map { it.stats() }
+
+    fun getSubscriberCount(): Int = subscribers.size
+
+    /**
+     * Cierra todos los buffers; los colectores terminan tras vaciar lo pendiente
+     */
+    fun close() {
+        for (subscriber in subscribers) {
+            subscriber.channel.close()
+        }
+    }
+
+    private fun register(subscriberName: String, policy: OverflowPolicy, capacity: Int): Subscriber {
+        val subscriber = Subscriber(subscriberName, policy, capacity)
+        subscribers.add(subscriber)
+        return subscriber
+    }
+
+    private fun unregister(subscriber: Subscriber) {
+        subscribers.remove(subscriber)
+        subscriber.channel.cancel()
+    }
+}
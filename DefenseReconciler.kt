@@ -0,0 +1,190 @@
+package com.guardianai.managers
+
+import android.util.Log
+import kotlinx.coroutines.*
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Reconfiguración declarativa por diferencias de subsistemas defensivos
+ * Cada nivel se describe como un estado objetivo (subsistema → valor). Sólo se aplican
+ * los subsistemas cuyo valor difiere del último aplicado; los cambios sin dependencias
+ * entre sí se aplican en paralelo por oleadas, así que la latencia es la del camino
+ * crítico y no la suma de pasos. Si un cambio falla se deshacen los ya aplicados.
+ * Un subsistema se reaplica cuando cambia algo de lo que depende, porque ese cambio
+ * puede sobrescribirlo. Las claves ausentes del objetivo no se exigen y conservan su
+ * último valor; invalidate() olvida las que se modificaron por otra vía.
+ */
+class DefenseReconciler<K : Enum<K>>(
+    private val name: String,
+    private val dependencies: Map<K, Set<K>> = emptyMap(),
+    private val metrics: MetricsRegistry = MetricsRegistry.shared,
+    private val applyValue: suspend (key: K, value: Any) -> Unit
+) {
+
+    companion object {
+        private const val TAG = "DefenseReconciler"
+    }
+
+    data class ReconfigurationResult(
+        val changed: List<String>,
+        val unchanged: Int,
+        val waves: Int,
+        val elapsedMs: Long,
+        val sequentialMs: Long, // Suma de los pasos: lo que habría tardado en serie
+        val failedChange: String? = null,
+        val rolledBack: List<String> = emptyList()
+    ) {
+        val succeeded: Boolean
+            get() = failedChange == null
+    }
+
+    private class Change<K>(val key: K, val from: Any?, val to: Any)
+
+    private class Outcome<K>(val change: Change<K>, val elapsedNs: Long, val error: Exception?)
+
+    private val mutex = Mutex()
+    private val applied = AtomicReference<Map<K, Any>>(emptyMap())
+
+    private val reconfigurations = metrics.counter("reconfig.$name.runs")
+    private val changesApplied = metrics.counter("reconfig.$name.changes")
+    private val changesSkipped = metrics.counter("reconfig.$name.unchanged")
+    private val rollbacks = metrics.counter("reconfig.$name.rollbacks")
+    private val elapsedTime = metrics.histogram("reconfig.$name.elapsed_ms")
+    private val sequentialTime = metrics.histogram("reconfig.$name.sequential_ms")
+
+    /**
+     * Lleva los subsistemas al estado objetivo; las reconfiguraciones concurrentes se serializan
+     */
+    suspend fun reconcile(target: Map<K, Any>): ReconfigurationResult = mutex.withLock {
+        val start = System.nanoTime()
+        reconfigurations.increment()
+
+        val current = applied.get()
+        val changedKeys = target.keys.filterTo(HashSet()) { current[it] != target[it] }
+        do {
+            val dependents = target.keys.filter { key ->
+                key !in changedKeys && dependencies[key].orEmpty().any { it in changedKeys }
+            }
+            changedKeys.addAll(dependents)
+        } while (dependents.isNotEmpty())
+        val changes = target.filterKeys { it in changedKeys }.map { (key, value) -> Change(key, current[key], value) }
+        changesSkipped.add((target.size - changes.size).toLong())
+
+        val waves = plan(changes)
+        val completed = ArrayList<Outcome<K>>(changes.size)
+        var failure: Outcome<K>? = null
+
+        try {
+            for (wave in waves) {
+                val outcomes = coroutineScope {
+                    wave.map { change -> async { execute(change) } }.awaitAll()
+                }
+                outcomes.forEach { if (it.error == null) completed.add(it) else if (failure == null) failure = it }
+                if (failure != null) break
+            }
+        } catch (e: CancellationException) {
+            withContext(NonCancellable) { rollback(completed) }
+            throw e
+        }
+
+        val sequentialMs = (completed.sumOf { it.elapsedNs } + (failure?.elapsedNs ?: 0L)) / 1_000_000
+        val elapsedMs = (System.nanoTime() - start) / 1_000_000
+        elapsedTime.record(elapsedMs)
+        sequentialTime.record(sequentialMs)
+
+        val failed = failure
+        if (failed != null) {
+            Log.e(TAG, "[$name] ${failed.change.key} -> ${failed.change.to} failed; rolling back", failed.error)
+            val undone = rollback(completed)
+            return@withLock ReconfigurationResult(
+                changed = emptyList(),
+                unchanged = target.size - changes.size,
+                waves = waves.size,
+                elapsedMs = elapsedMs,
+                sequentialMs = sequentialMs,
+                failedChange = failed.change.key.name,
+                rolledBack = undone
+            )
+        }
+
+        // Las claves sin cambio que otra vía invalidó durante la ejecución siguen invalidadas
+        applied.updateAndGet { state -> state + changes.associate { it.key to it.to } }
+        changesApplied.add(changes.size.toLong())
+        if (changes.isNotEmpty()) {
+            Log.d(TAG, "[$name] ${changes.size} changes in ${waves.size} waves: ${elapsedMs}ms (serial ${sequentialMs}ms)")
+        }
+        ReconfigurationResult(
+            changed = changes.map { it.key.name },
+            unchanged = target.size - changes.size,
+            waves = waves.size,
+            elapsedMs = elapsedMs,
+            sequentialMs = sequentialMs
+        )
+    }
+
+    /**
+     * Olvida el valor aplicado de subsistemas modificados fuera del reconciliador;
+     * la siguiente reconciliación los vuelve a aplicar
+     */
+    fun invalidate(vararg keys: K) {
+        val forgotten = keys.toSet()
+        applied.updateAndGet { state -> state - forgotten }
+    }
+
+    /**
+     * Último valor aplicado con éxito por subsistema
+     */
+    fun appliedState(): Map<K, Any> = applied.get()
+
+    /**
+     * Oleadas en orden topológico: un cambio espera sólo a los cambios del mismo plan de los que depende
+     */
+    private fun plan(changes: List<Change<K>>): List<List<Change<K>>> {
+        val pending = changes.associateBy { it.key }.toMutableMap()
+        val waves = mutableListOf<List<Change<K>>>()
+        while (pending.isNotEmpty()) {
+            val ready = pending.values.filter { change ->
+                dependencies[change.key].orEmpty().none { it in pending }
+            }
+            // Un ciclo en las dependencias se rompe aplicando lo que quede en serie
+            val wave = ready.ifEmpty { listOf(pending.values.first()) }
+            wave.forEach { pending.remove(it.key) }
+            waves.add(wave)
+        }
+        return waves
+    }
+
+    private suspend fun execute(change: Change<K>): Outcome<K> {
+        val start = System.nanoTime()
+        return try {
+            applyValue(change.key, change.to)
+            Outcome(change, System.nanoTime() - start, null)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Outcome(change, System.nanoTime() - start, e)
+        }
+    }
+
+    /**
+     * Restaura el valor anterior de los cambios aplicados, en orden inverso; sin valor previo no hay nada que restaurar
+     */
+    private suspend fun rollback(completed: List<Outcome<K>>): List<String> {
+        val undone = mutableListOf<String>()
+        for (outcome in completed.asReversed()) {
+            val previous = outcome.change.from ?: continue
+            try {
+                applyValue(outcome.change.key, previous)
+                undone.add(outcome.change.key.name)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e(TAG, "[$name] Rollback of ${outcome.change.key} failed", e)
+            }
+        }
+        rollbacks.add(undone.size.toLong())
+        return undone
+    }
+}
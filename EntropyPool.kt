@@ -0,0 +1,188 @@
+package com.guardianai.security.quantum_encryption
+
+import java.security.SecureRandom
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Servicio de entropía para rutas calientes de generación de claves
+ * - Un HMAC-DRBG (SHA-256, SP 800-90A) por hilo: sin contención entre generadores concurrentes
+ * - Cada DRBG se resiembra desde un SecureRandom compartido por tiempo o por volumen servido
+ * - Los bytes se sirven en bloque desde un búfer preasignado por hilo
+ */
+class EntropyPool(
+    private val reseedIntervalMs: Long = DEFAULT_RESEED_INTERVAL,
+    private val reseedBytes: Long = DEFAULT_RESEED_BYTES,
+    private val bufferSize: Int = DEFAULT_BUFFER_SIZE,
+    private val seedSource: SecureRandom = SecureRandom()
+) {
+
+    companion object {
+        const val DEFAULT_RESEED_INTERVAL = 60000L       // 1 minuto
+        const val DEFAULT_RESEED_BYTES = 1L shl 20       // 1 MB por semilla
+        const val DEFAULT_BUFFER_SIZE = 4096
+        private const val SEED_SIZE = 48
+        private const val HASH_LENGTH = 32
+
+        /**
+         * Instancia compartida por el motor cuántico, túneles, bóveda y VPN
+         */
+        val shared: EntropyPool by lazy { EntropyPool() }
+    }
+
+    data class EntropyStats(
+        val bytesServed: Long,
+        val reseeds: Long,
+        val averageReseedMicros: Double,
+        val maxReseedMicros: Long,
+        val activeGenerators: Int
+    )
+
+    private val bytesServed = AtomicLong(0)
+    private val reseedCount = AtomicLong(0)
+    private val reseedTimeNs = AtomicLong(0)
+    private val maxReseedNs = AtomicLong(0)
+    private val generatorCount = AtomicInteger(0)
+
+    private val generator = ThreadLocal.withInitial { ThreadDrbg() }
+
+    fun nextBytes(bytes: ByteArray, offset: Int = 0, length: Int = bytes.size - offset) {
+        generator.get().nextBytes(bytes, offset, length)
+        bytesServed.addAndGet(length.toLong())
+    }
+
+    fun nextLong(): Long {
+        val drbg = generator.get()
+        bytesServed.addAndGet(8)
+        return drbg.nextLong()
+    }
+
+    /**
+     * Double uniforme en [0, 1) con 53 bits de precisión
+     */
+    fun nextDouble(): Double = (nextLong() ushr 11) * (1.0 / (1L shl 53))
+
+    fun getStats(): EntropyStats {
+        val reseeds = reseedCount.get()
+        return EntropyStats(
+            bytesServed = bytesServed.get(),
+            reseeds = reseeds,
+            averageReseedMicros = if (reseeds > 0) reseedTimeNs.get() / 1000.0 / reseeds else 0.0,
+            maxReseedMicros = maxReseedNs.get() / 1000,
+            activeGenerators = generatorCount.get()
+        )
+    }
+
+    /**
+     * HMAC-DRBG confinado a un hilo
+     */
+    private inner class ThreadDrbg {
+        private val mac = Mac.getInstance("HmacSHA256")
+        private val key = ByteArray(HASH_LENGTH)
+        private val value = ByteArray(HASH_LENGTH)
+        private val buffer = ByteArray(bufferSize)
+        private val seed = ByteArray(SEED_SIZE)
+        private var position = bufferSize
+        private var bytesSinceReseed = 0L
+        private var lastReseed = 0L
+
+        init {
+            generatorCount.incrementAndGet()
+            reseed()
+        }
+
+        fun nextBytes(bytes: ByteArray, offset: Int, length: Int) {
+            var written = 0
+            while (written < length) {
+                val remaining = length - written
+                if (position == bufferSize && remaining >= bufferSize) {
+                    // Peticiones grandes se generan directamente en el destino
+                    val chunk = remaining - remaining % HASH_LENGTH
+                    generate(bytes, offset + written, chunk)
+                    written += chunk
+                    continue
+                }
+                if (position == bufferSize) refill()
+                val chunk = minOf(remaining, bufferSize - position)
+                System.arraycopy(buffer, position, bytes, offset + written, chunk)
+                buffer.fill(0, position, position + chunk) // Los bytes servidos no permanecen en memoria
+                position += chunk
+                written += chunk
+            }
+        }
+
+        fun nextLong(): Long {
+            if (bufferSize - position < 8) refill()
+            var result = 0L
+            for (i in 0 until 8) {
+                result = (result shl 8) or (buffer[position + i].toLong() and 0xFF)
+            }
+            buffer.fill(0, position, position + 8)
+            position += 8
+            return result
+        }
+
+        private fun refill() {
+            generate(buffer, 0, bufferSize)
+            position = 0
+        }
+
+        private fun generate(output: ByteArray, offset: Int, length: Int) {
+            val now = System.currentTimeMillis()
+            if (bytesSinceReseed >= reseedBytes || now - lastReseed >= reseedIntervalMs) {
+                reseed()
+            }
+
+            var generated = 0
+            while (generated < length) {
+                hmac(key, value, null, -1, value)
+                val chunk = minOf(HASH_LENGTH, length - generated)
+                System.arraycopy(value, 0, output, offset + generated, chunk)
+                generated += chunk
+            }
+            update(null)
+            bytesSinceReseed += length
+        }
+
+        private fun reseed() {
+            val start = System.nanoTime()
+            seedSource.nextBytes(seed)
+            val elapsed = System.nanoTime() - start
+
+            if (lastReseed == 0L) {
+                key.fill(0x00)
+                value.fill(0x01)
+            }
+            update(seed)
+            seed.fill(0)
+
+            bytesSinceReseed = 0
+            lastReseed = System.currentTimeMillis()
+            reseedCount.incrementAndGet()
+            reseedTimeNs.addAndGet(elapsed)
+            maxReseedNs.accumulateAndGet(elapsed) { a, b -> maxOf(a, b) }
+        }
+
+        /**
+         * Función de actualización de HMAC-DRBG con datos opcionales
+         */
+        private fun update(provided: ByteArray?) {
+            hmac(key, value, provided, 0x00, key)
+            hmac(key, value, null, -1, value)
+            if (provided != null) {
+                hmac(key, value, provided, 0x01, key)
+                hmac(key, value, null, -1, value)
+            }
+        }
+
+        private fun hmac(macKey: ByteArray, data: ByteArray, provided: ByteArray?, separator: Int, output: ByteArray) {
+            mac.init(SecretKeySpec(macKey, "HmacSHA256"))
+            mac.update(data)
+            if (separator >= 0) mac.update(separator.toByte())
+            if (provided != null) mac.update(provided)
+            mac.doFinal(output, 0)
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.guardianai.managers
+
+import android.util.Log
+import com.guardianai.communication.real_time.GeoIpDatabase
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Motor de reglas de firewall compilado para decisiones por paquete
+ * Los bloqueos activos se compilan en una estructura inmutable: trie binario de prefijos
+ * IPv4, tabla de intervalos de puertos fusionados y mapa de bits por UID. Cada cambio
+ * recompila y publica la nueva versión con un único intercambio volátil (copy-on-write),
+ * así que la ruta de paquetes de la VPN decide sin locks ni asignaciones.
+ */
+class FirewallRuleEngine(
+    private val expiryService: TimingWheelExpiryService = TimingWheelExpiryService.shared,
+    private val metrics: MetricsRegistry = MetricsRegistry.shared
+) {
+
+    companion object {
+        private const val TAG = "FirewallRuleEngine"
+        private const val LOOKUP_SAMPLE_RATE = 1024 // Se cronometra ~1 de cada 1024 consultas
+        private val LOOKUP_BOUNDS_NS = longArrayOf(25, 50, 100, 200, 500, 1000, 2000, 5000, 10000)
+
+        val shared: FirewallRuleEngine by lazy { FirewallRuleEngine() }
+
+        /**
+         * Prefijo "a.b.c.d" o "a.b.c.d/n" como (dirección, longitud); null si no es IPv4
+         */
+        fun parsePrefix(source: String): Pair<Int, Int>? {
+            val slash = source.indexOf('/')
+            val address = GeoIpDatabase.parseIPv4(if (slash < 0) source.trim() else source.substring(0, slash).trim())
+            if (address < 0) return null
+            val length = if (slash < 0) 32 else source.substring(slash + 1).trim().toIntOrNull() ?: return null
+            if (length !in 0..32) return null
+            val mask = if (length == 0) 0 else -1 shl (32 - length)
+            return (address.toInt() and mask) to length
+        }
+    }
+
+    /**
+     * Conjunto de reglas compilado e inmutable; seguro para lecturas concurrentes
+     */
+    class CompiledRuleSet internal constructor(
+        val version: Long,
+        val blockAll: Boolean,
+        private val left: IntArray,
+        private val right: IntArray,
+        private val terminal: BooleanArray,
+        private val portStarts: IntArray,
+        private val portEnds: IntArray,
+        private val uidBitmap: LongArray,
+        val prefixCount: Int,
+        val uidCount: Int
+    ) {
+        val trieNodes: Int
+            get() = terminal.size
+
+        val portIntervals: Int
+            get() = portStarts.size
+
+        val ruleCount: Int
+            get() = prefixCount + portStarts.size + uidCount + if (blockAll) 1 else 0
+
+        fun isBlocked(ip: Int, port: Int, uid: Int): Boolean =
+            blockAll || matchesAddress(ip) || matchesPort(port) || matchesUid(uid)
+
+        fun matchesAddress(ip: Int): Boolean {
+            if (terminal[0]) return true
+            var node = 0
+            var bit = 31
+            while (bit >= 0) {
+                node = if ((ip ushr bit) and 1 == 0) left[node] else right[node]
+                if (node == 0) return false // La raíz nunca es hija: 0 marca ausencia
+                if (terminal[node]) return true
+                bit--
+            }
+            return false
+        }
+
+        fun matchesPort(port: Int): Boolean {
+            if (port < 0 || portStarts.isEmpty()) return false
+            // Último intervalo que empieza en o antes del puerto
+            var low = 0
+            var high = portStarts.size - 1
+            while (low < high) {
+                val mid = (low + high + 1) ushr 1
+                if (portStarts[mid] <= port) low = mid else high = mid - 1
+            }
+            return portStarts[low] <= port && port <= portEnds[low]
+        }
+
+        fun matchesUid(uid: Int): Boolean {
+            if (uid < 0) return false
+            val word = uid ushr 6
+            return word < uidBitmap.size && (uidBitmap[word] and (1L shl uid)) != 0L
+        }
+    }
+
+    data class RuleEngineStats(
+        val version: Long,
+        val ruleCount: Int,
+        val prefixes: Int,
+        val trieNodes: Int,
+        val portIntervals: Int,
+        val blockedUids: Int,
+        val blockAll: Boolean,
+        val lookups: Long,
+        val denies: Long,
+        val compileCount: Long,
+        val lastCompileMs: Double,
+        val lookupP50Ns: Long,
+        val lookupP99Ns: Long
+    )
+
+    // Estado fuente (mutable, bajo lock); la ruta de paquetes sólo ve `current`
+    private val lock = Any()
+    private val prefixes = HashMap<Long, Int>() // clave: dirección << 6 | longitud → referencias
+    private val portRanges = HashMap<String, List<IntRange>>() // por origen del conjunto (nivel, política...)
+    private val uids = HashSet<Int>()
+    private val blockAllOwners = HashSet<String>() // Orígenes que exigen cortar todo el tráfico
+    private var version = 0L
+
+    @Volatile
+    var current: CompiledRuleSet = compile()
+        private set
+
+    private val lookups = LongAdder()
+    private val denies = LongAdder()
+    private val compileCount = LongAdder()
+    @Volatile private var lastCompileNs = 0L
+    private val lookupCost = metrics.histogram("firewall.lookup_ns", LOOKUP_BOUNDS_NS)
+    private val compileTime = metrics.histogram("firewall.compile_ms")
+    private val ruleCountGauge = metrics.gauge("firewall.rules")
+
+    /**
+     * Decisión por paquete: true si debe descartarse. Sin locks; uid o puerto < 0 se ignoran
+     */
+    fun isBlocked(ip: Int, port: Int = -1, uid: Int = -1): Boolean {
+        val rules = current
+        lookups.increment()
+        val blocked = if (ThreadLocalRandom.current().nextInt(LOOKUP_SAMPLE_RATE) == 0) {
+            val start = System.nanoTime()
+            val result = rules.isBlocked(ip, port, uid)
+            lookupCost.record(System.nanoTime() - start)
+            result
+        } else {
+            rules.isBlocked(ip, port, uid)
+        }
+        if (blocked) denies.increment()
+        return blocked
+    }
+
+    /**
+     * Bloquea los orígenes (IP o CIDR) en un único intercambio; caducan tras ttlMs si > 0.
+     * Devuelve cuántos orígenes eran IPv4 válidos.
+     */
+    fun blockSources(sources: Collection<String>, ttlMs: Long = 0L): Int {
+        val keys = sources.mapNotNull { source ->
+            val prefix = parsePrefix(source)
+            if (prefix == null) Log.d(TAG, "Ignoring non-IPv4 source: $source")
+            prefix?.let { (address, length) -> prefixKey(address, length) }
+        }
+        if (keys.isEmpty()) return 0
+
+        // Contador de referencias: el mismo origen puede bloquearse por varias amenazas
+        update { keys.forEach { prefixes.merge(it, 1) { a, b -> a + b } } }
+
+        if (ttlMs > 0) {
+            expiryService.scheduleAt(System.currentTimeMillis() + ttlMs) { releasePrefixes(keys) }
+        }
+        return keys.size
+    }
+
+    fun unblockSources(sources: Collection<String>) {
+        val keys = sources.mapNotNull { source ->
+            parsePrefix(source)?.let { (address, length) -> prefixKey(address, length) }
+        }
+        if (keys.isNotEmpty()) update { keys.forEach { prefixes.remove(it) } }
+    }
+
+    /**
+     * Reemplaza los intervalos de puertos de un origen de reglas (p. ej. "level")
+     */
+    fun setPortRanges(owner: String, ranges: List<IntRange>) {
+        update {
+            if (ranges.isEmpty()) portRanges.remove(owner) else portRanges.put(owner, ranges)
+        }
+    }
+
+    fun blockUids(blocked: Collection<Int>) {
+        update { uids.addAll(blocked.filter { it >= 0 }) }
+    }
+
+    fun unblockUids(unblocked: Collection<Int>) {
+        update { uids.removeAll(unblocked.toSet()) }
+    }
+
+    /**
+     * Activa o levanta el corte total de un origen; el tráfico sigue cortado mientras quede alguno
+     */
+    fun setBlockAll(owner: String, enabled: Boolean) {
+        update { if (enabled) blockAllOwners.add(owner) else blockAllOwners.remove(owner) }
+    }
+
+    fun getStats(): RuleEngineStats {
+        val rules = current
+        val cost = lookupCost.snapshot()
+        return RuleEngineStats(
+            version = rules.version,
+            ruleCount = rules.ruleCount,
+            prefixes = rules.prefixCount,
+            trieNodes = rules.trieNodes,
+            portIntervals = rules.portIntervals,
+            blockedUids = rules.uidCount,
+            blockAll = rules.blockAll,
+            lookups = lookups.sum(),
+            denies = denies.sum(),
+            compileCount = compileCount.sum(),
+            lastCompileMs = lastCompileNs / 1_000_000.0,
+            lookupP50Ns = cost.percentile(0.5),
+            lookupP99Ns = cost.percentile(0.99)
+        )
+    }
+
+    private fun releasePrefixes(keys: List<Long>) {
+        update {
+            keys.forEach { key ->
+                val remaining = (prefixes[key] ?: return@forEach) - 1
+                if (remaining > 0) prefixes[key] = remaining else prefixes.remove(key)
+            }
+        }
+    }
+
+    /**
+     * Aplica el cambio al estado fuente, recompila y publica; los lectores nunca esperan
+     */
+    private inline fun update(change: () -> Unit) {
+        synchronized(lock) {
+            change()
+            val start = System.nanoTime()
+            current = compile()
+            lastCompileNs = System.nanoTime() - start
+        }
+        compileCount.increment()
+        compileTime.record(lastCompileNs / 1_000_000)
+        ruleCountGauge.set(current.ruleCount.toLong())
+    }
+
+    private fun compile(): CompiledRuleSet {
+        // Trie de prefijos: los más cortos primero para no crear nodos bajo uno ya terminal
+        var left = IntArray(64)
+        var right = IntArray(64)
+        var terminal = BooleanArray(64)
+        var size = 1
+
+        val sorted = prefixes.keys.sortedBy { it and 0x3F }
+        var inserted = 0
+        for (key in sorted) {
+            val address = (key ushr 6).toInt()
+            val length = (key and 0x3F).toInt()
+            var node = 0
+            var covered = terminal[0]
+            var depth = 0
+            while (!covered && depth < length) {
+                val bit = (address ushr (31 - depth)) and 1
+                var child = if (bit == 0) left[node] else right[node]
+                if (child == 0) {
+                    if (size == terminal.size) {
+                        left = left.copyOf(size * 2)
+                        right = right.copyOf(size * 2)
+                        terminal = terminal.copyOf(size * 2)
+                    }
+                    child = size++
+                    if (bit == 0) left[node] = child else right[node] = child
+                }
+                node = child
+                covered = terminal[node]
+                depth++
+            }
+            if (!covered) {
+                terminal[node] = true
+                inserted++
+            }
+        }
+
+        // Intervalos de puertos ordenados y fusionados
+        val ranges = portRanges.values.flatten()
+            .map { maxOf(it.first, 0)..minOf(it.last, 65535) }
+            .filter { !it.isEmpty() }
+            .sortedBy { it.first }
+        val starts = ArrayList<Int>(ranges.size)
+        val ends = ArrayList<Int>(ranges.size)
+        for (range in ranges) {
+            if (ends.isNotEmpty() && range.first <= ends.last() + 1) {
+                ends[ends.size - 1] = maxOf(ends.last(), range.last)
+            } else {
+                starts.add(range.first)
+                ends.add(range.last)
+            }
+        }
+
+        // Mapa de bits de UIDs dimensionado al mayor UID bloqueado
+        val bitmap = LongArray(if (uids.isEmpty()) 0 else (uids.max() ushr 6) + 1)
+        for (uid in uids) bitmap[uid ushr 6] = bitmap[uid ushr 6] or (1L shl uid)
+
+        return CompiledRuleSet(
+            version = ++version,
+            blockAll = blockAllOwners.isNotEmpty(),
+            left = left.copyOf(size),
+            right = right.copyOf(size),
+            terminal = terminal.copyOf(size),
+            portStarts = starts.toIntArray(),
+            portEnds = ends.toIntArray(),
+            uidBitmap = bitmap,
+            prefixCount = inserted,
+            uidCount = uids.size
+        )
+    }
+
+    private fun prefixKey(address: Int, length: Int): Long =
+        ((address.toLong() and 0xFFFFFFFFL) shl 6) or length.toLong()
+}
@@ -0,0 +1,263 @@
+package com.guardianai.communication.real_time
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.IntBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Base de datos compacta de geolocalización IPv4 mapeada en memoria
+ * Rangos ordenados y no solapados en arreglos primitivos; país, región y ciudad
+ * se codifican por diccionario. La búsqueda es binaria sin asignaciones, por lo que
+ * puede usarse en línea para cada flujo VPN o IOC.
+ *
+ * Formato (big-endian):
+ * - Cabecera: magic, versión, rangos, entradas de diccionario, offset del diccionario
+ * - starts[n], ends[n]: direcciones como enteros sin signo
+ * - registros[n]: país(int), región(int), ciudad(int), latitud(float), longitud(float)
+ * - diccionario: [short len][utf-8]
+ */
+class GeoIpDatabase private constructor(
+    private val starts: IntBuffer,
+    private val ends: IntBuffer,
+    private val records: ByteBuffer,
+    private val dictionary: Array<String>,
+    val rangeCount: Int
+) {
+
+    companion object {
+        const val NOT_FOUND = -1
+        private const val MAGIC = 0x47454F31 // "GEO1"
+        private const val VERSION = 2 // v1 guardaba país y región en 16 bits
+        private const val HEADER_SIZE = 20
+        private const val RECORD_SIZE = 20
+        private const val SIGN = Int.MIN_VALUE
+
+        /**
+         * Abre y mapea el archivo compilado; devuelve null si no existe o es inválido
+         */
+        fun open(file: File): GeoIpDatabase? {
+            if (!file.exists() || file.length() < HEADER_SIZE) return null
+
+            return RandomAccessFile(file, "r").use { raf ->
+                val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null
+
+                val count = buffer.getInt(8)
+                val dictionaryCount = buffer.getInt(12)
+                val dictionaryOffset = buffer.getInt(16)
+                val startsOffset = HEADER_SIZE
+                val endsOffset = startsOffset + count * 4
+                val recordsOffset = endsOffset + count * 4
+                if (recordsOffset + count.toLong() * RECORD_SIZE > dictionaryOffset || dictionaryOffset > raf.length()) {
+                    return null
+                }
+
+                GeoIpDatabase(
+                    starts = slice(buffer, startsOffset, count * 4).asIntBuffer(),
+                    ends = slice(buffer, endsOffset, count * 4).asIntBuffer(),
+                    records = slice(buffer, recordsOffset, count * RECORD_SIZE),
+                    dictionary = readDictionary(buffer, dictionaryOffset, dictionaryCount),
+                    rangeCount = count
+                )
+            }
+        }
+
+        /**
+         * Compila un CSV "ip_inicio,ip_fin,país,región,ciudad,latitud,longitud" al formato binario
+         * Los campos pueden ir entre comillas (RFC 4180), p. ej. ciudades con comas
+         * Los rangos se ordenan y los solapados se descartan; la escritura es atómica
+         */
+        fun compile(csv: File, output: File): Int {
+            val ranges = ArrayList<LongArray>()
+            val ids = HashMap<String, Int>()
+            val dictionary = ArrayList<String>()
+            fun encode(value: String): Int = ids.getOrPut(value) { dictionary.add(value); dictionary.size - 1 }
+            encode("") // id 0 = desconocido
+
+            csv.forEachLine { line ->
+                if (line.startsWith("#")) return@forEachLine
+                val fields = splitCsvLine(line)
+                if (fields.size < 7) return@forEachLine
+                val start = parseIPv4(fields[0].trim())
+                val end = parseIPv4(fields[1].trim())
+                if (start < 0 || end < start) return@forEachLine
+                val lat = fields[5].trim().toFloatOrNull() ?: return@forEachLine
+                val lon = fields[6].trim().toFloatOrNull() ?: return@forEachLine
+
+                ranges.add(longArrayOf(
+                    start, end,
+                    encode(fields[2].trim()).toLong(),
+                    encode(fields[3].trim()).toLong(),
+                    encode(fields[4].trim()).toLong(),
+                    lat.toRawBits().toLong(),
+                    lon.toRawBits().toLong()
+                ))
+            }
+
+            ranges.sortBy { it[0] }
+            val accepted = ArrayList<LongArray>(ranges.size)
+            for (range in ranges) {
+                if (accepted.isEmpty() || range[0] > accepted.last()[1]) accepted.add(range)
+            }
+
+            val count = accepted.size
+            val dictionaryOffset = HEADER_SIZE + count * (8 + RECORD_SIZE)
+            val tmp = File(output.parentFile, output.name + ".tmp")
+
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeInt(count)
+                out.writeInt(dictionary.size)
+                out.writeInt(dictionaryOffset)
+                for (range in accepted) out.writeInt(range[0].toInt())
+                for (range in accepted) out.writeInt(range[1].toInt())
+                for (range in accepted) {
+                    out.writeInt(range[2].toInt())
+                    out.writeInt(range[3].toInt())
+                    out.writeInt(range[4].toInt())
+                    out.writeInt(range[5].toInt())
+                    out.writeInt(range[6].toInt())
+                }
+                for (value in dictionary) {
+                    val bytes = value.toByteArray(Charsets.UTF_8)
+                    out.writeShort(bytes.size)
+                    out.write(bytes)
+                }
+            }
+
+            if (!tmp.renameTo(output)) {
+                output.delete()
+                tmp.renameTo(output)
+            }
+            return count
+        }
+
+        /**
+         * Convierte una IPv4 textual en su valor sin signo sin crear objetos; -1 si no es válida
+         */
+        fun parseIPv4(ip: CharSequence): Long {
+            var result = 0L
+            var octet = -1
+            var dots = 0
+            for (i in 0 until ip.length) {
+                val c = ip[i]
+                if (c == '.') {
+                    if (octet < 0 || dots == 3) return -1
+                    result = (result shl 8) or octet.toLong()
+                    octet = -1
+                    dots++
+                } else if (c in '0'..'9') {
+                    octet = (if (octet < 0) 0 else octet * 10) + (c - '0')
+                    if (octet > 255) return -1
+                } else {
+                    return -1
+                }
+            }
+            if (octet < 0 || dots != 3) return -1
+            return (result shl 8) or octet.toLong()
+        }
+
+        /**
+         * Separa una línea CSV respetando campos entre comillas y comillas dobladas ("")
+         */
+        private fun splitCsvLine(line: String): List<String> {
+            val fields = ArrayList<String>(7)
+            val field = StringBuilder()
+            var quoted = false
+            var i = 0
+            while (i < line.length) {
+                val c = line[i]
+                when {
+                    quoted && c == '"' && i + 1 < line.length && line[i + 1] == '"' -> {
+                        field.append('"')
+                        i++
+                    }
+                    c == '"' -> quoted = !quoted
+                    c == ',' && !quoted -> {
+                        fields.add(field.toString())
+                        field.setLength(0)
+                    }
+                    else -> field.append(c)
+                }
+                i++
+            }
+            fields.add(field.toString())
+            return fields
+        }
+
+        private fun slice(buffer: ByteBuffer, offset: Int, length: Int): ByteBuffer {
+            val duplicate = buffer.duplicate()
+            duplicate.position(offset)
+            duplicate.limit(offset + length)
+            return duplicate.slice()
+        }
+
+        private fun readDictionary(buffer: ByteBuffer, offset: Int, count: Int): Array<String> {
+            var position = offset
+            return Array(count) {
+                val length = buffer.getShort(position).toInt() and 0xFFFF
+                val bytes = ByteArray(length)
+                val duplicate = buffer.duplicate()
+                duplicate.position(position + 2)
+                duplicate.get(bytes)
+                position += 2 + length
+                String(bytes, Charsets.UTF_8)
+            }
+        }
+    }
+
+    /**
+     * Índice del rango que contiene la dirección (entero sin signo), o NOT_FOUND
+     */
+    fun lookup(address: Int): Int {
+        var n = rangeCount
+        if (n == 0) return NOT_FOUND
+        val key = address xor SIGN
+        var base = 0
+
+        // Búsqueda binaria sin saltos impredecibles: sólo avanza la base
+        while (n > 1) {
+            val half = n ushr 1
+            base = if ((starts.get(base + half) xor SIGN) <= key) base + half else base
+            n -= half
+        }
+
+        val start = starts.get(base) xor SIGN
+        val end = ends.get(base) xor SIGN
+        return if (key >= start && key <= end) base else NOT_FOUND
+    }
+
+    fun lookup(ip: CharSequence): Int {
+        val address = parseIPv4(ip)
+        return if (address < 0) NOT_FOUND else lookup(address.toInt())
+    }
+
+    // Accesores por índice de rango; los identificadores de diccionario permiten agrupar sin cadenas
+    fun countryId(index: Int): Int = records.getInt(index * RECORD_SIZE)
+    fun regionId(index: Int): Int = records.getInt(index * RECORD_SIZE + 4)
+    fun cityId(index: Int): Int = records.getInt(index * RECORD_SIZE + 8)
+    fun latitude(index: Int): Float = records.getFloat(index * RECORD_SIZE + 12)
+    fun longitude(index: Int): Float = records.getFloat(index * RECORD_SIZE + 16)
+    fun name(id: Int): String = dictionary[id]
+
+    /**
+     * Resuelve la ubicación completa; asigna un objeto, por lo que sólo se usa fuera de rutas calientes
+     */
+    fun resolve(ip: CharSequence): ThreatIntelligenceEngine.GeoLocation? {
+        val index = lookup(ip)
+        if (index == NOT_FOUND) return null
+        return ThreatIntelligenceEngine.GeoLocation(
+            country = name(countryId(index)),
+            region = name(regionId(index)),
+            city = name(cityId(index)).ifEmpty { null },
+            latitude = latitude(index).toDouble(),
+            longitude = longitude(index).toDouble()
+        )
+    }
+}
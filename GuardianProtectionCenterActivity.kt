@@ -48,6 +48,7 @@ class GuardianProtectionCenterActivity : AppCompatActivity() {
     private var isRealTimeProtectionActive = false
     private var currentProtectionLevel = ProtectionLevel.HIGH
     private var activeThreatsCount = 0
+    private var fullScanJob: Job? = null
     
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -248,10 +249,19 @@ class GuardianProtectionCenterActivity : AppCompatActivity() {
                 btnQuickScan.isEnabled = false
                 btnQuickScan.text = "Escaneando..."
                 
-                val result = securityManager.performQuickScan()
-                
-                showScanResults(result, "Escaneo Rápido")
+                securityManager.quickScanProgress().collect { progress ->
+                    renderScanProgress(progress, btnQuickScan, "Escaneando")
+                    
+                    progress.result?.let { result ->
+                        showScanResults(
+                            ScanResult(result.threatsFound, progress.itemsDone.toInt(), result.scanDuration),
+                            if (result.isPartial) "Escaneo Rápido (parcial)" else "Escaneo Rápido"
+                        )
+                    }
+                }
                 
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: Exception) {
                 showToast("Error durante el escaneo: ${e.message}")
             } finally {
@@ -262,24 +272,64 @@ class GuardianProtectionCenterActivity : AppCompatActivity() {
     }
     
     private fun performFullScan() {
-        lifecycleScope.launch {
+        // Un segundo toque durante el escaneo lo cancela
+        fullScanJob?.let { job ->
+            if (job.isActive) {
+                job.cancel()
+                return
+            }
+        }
+        
+        fullScanJob = lifecycleScope.launch {
             try {
-                btnFullScan.isEnabled = false
                 btnFullScan.text = "Escaneando..."
                 
-                val result = securityManager.performFullSystemScan()
-                
-                showScanResults(result, "Escaneo Completo")
+                securityManager.scanProgress().collect { progress ->
+                    renderScanProgress(progress, btnFullScan, "Cancelar")
+                    
+                    progress.result?.let { result ->
+                        showScanResults(
+                            ScanResult(result.threatsFound, progress.itemsDone.toInt(), result.scanDuration),
+                            if (result.isPartial) "Escaneo Completo (parcial)" else "Escaneo Completo"
+                        )
+                    }
+                }
                 
+            } catch (e: CancellationException) {
+                if (!isFinishing) showToast("Escaneo cancelado")
+                throw e
             } catch (e: Exception) {
                 showToast("Error durante el escaneo: ${e.message}")
             } finally {
-                btnFullScan.isEnabled = true
                 btnFullScan.text = "Escaneo Completo"
             }
         }
     }
     
+    private fun renderScanProgress(progress: SecurityManager.ScanProgress, button: Button, action: String) {
+        val percent = (progress.fraction * 100).toInt()
+        val eta = progress.etaMs?.let { " · ${it / 1000}s" } ?: ""
+        button.text = "$action ($percent%$eta)"
+        
+        // Los hallazgos se muestran según llegan, sin esperar al final del escaneo
+        progress.newFindings.forEach { finding ->
+            activeThreatsCount++
+            threatHistoryAdapter.addThreat(
+                ThreatData(
+                    id = finding.id,
+                    name = finding.description,
+                    type = finding.type,
+                    severity = finding.severity,
+                    source = finding.source,
+                    detectionTime = java.text.DateFormat.getTimeInstance().format(java.util.Date(finding.timestamp)),
+                    status = "Detectada",
+                    description = finding.description
+                )
+            )
+        }
+        if (progress.newFindings.isNotEmpty()) updateThreatCounters()
+    }
+    
     private fun activateEmergencyProtocol() {
         lifecycleScope.launch {
             try {
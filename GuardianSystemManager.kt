@@ -27,6 +27,11 @@ class GuardianSystemManager(private val context: Context) {
         private const val QUANTUM_ENCRYPTION_BITS = 256
         private const val TACTICAL_RESPONSE_TIME_MS = 100L
         private const val EMERGENCY_PROTOCOL_CODE = "DELTA-FORCE-GUARDIAN"
+        const val THREATS_DETECTED_METRIC = "system.threats.detected"
+        const val THREATS_NEUTRALIZED_METRIC = "system.threats.neutralized"
+        private const val INTRUSION_ATTEMPTS_METRIC = "system.intrusion_attempts"
+        private const val TACTICAL_OPERATIONS_METRIC = "system.tactical_operations"
+        private const val EMERGENCY_ACTIVATIONS_METRIC = "system.emergency_activations"
     }
 
     // ============== SUB-MANAGERS ORIGINALES ==============
@@ -76,11 +81,15 @@ class GuardianSystemManager(private val context: Context) {
     private val activeModules = ConcurrentHashMap<String, ModuleStatus>()
     private val militaryProtocols = ConcurrentHashMap<String, MilitaryProtocol>()
 
-    // ============== ATOMIC COUNTERS MILITARES ==============
-    private val threatCounter = AtomicInteger(0)
-    private val neutralizedThreats = AtomicInteger(0)
+    // ============== CONTADORES MILITARES ==============
+    // Registro propio para no mezclar los contadores con los de otras instancias; shared recibe los totales
+    private val metricsRegistry = MetricsRegistry(parent = MetricsRegistry.shared)
+    private val threatCounter = metricsRegistry.counter(THREATS_DETECTED_METRIC)
+    private val neutralizedThreats = metricsRegistry.counter(THREATS_NEUTRALIZED_METRIC)
+    private val intrusionAttempts = metricsRegistry.counter(INTRUSION_ATTEMPTS_METRIC)
+    private val tacticalOperations = metricsRegistry.counter(TACTICAL_OPERATIONS_METRIC)
+    private val emergencyActivations = metricsRegistry.counter(EMERGENCY_ACTIVATIONS_METRIC)
     private val activeDefenses = AtomicInteger(0)
-    private val emergencyActivations = AtomicInteger(0)
 
     // ============== FLAGS DE ESTADO ==============
     private val isInCombatMode = AtomicBoolean(false)
@@ -443,6 +452,7 @@ class GuardianSystemManager(private val context: Context) {
             }
 
             updateThreatLevel()
+            refreshSystemMetrics()
 
             delay(1000) // Cada segundo
         }
@@ -514,7 +524,7 @@ class GuardianSystemManager(private val context: Context) {
      * Maneja amenazas militares detectadas
      */
     private suspend fun handleMilitaryThreats(threats: List<MilitaryThreat>) {
-        threatCounter.addAndGet(threats.size)
+        threatCounter.add(threats.size.toLong())
 
         for (threat in threats) {
             when (threat.severity) {
@@ -532,14 +542,14 @@ class GuardianSystemManager(private val context: Context) {
     private suspend fun handleLowThreat(threat: MilitaryThreat) {
         Log.d(TAG, "Handling low threat: ${threat.id}")
         defensiveSystemsManager.deployCountermeasure(CountermeasureType.BASIC, threat)
-        neutralizedThreats.incrementAndGet()
+        neutralizedThreats.increment()
     }
 
     private suspend fun handleMediumThreat(threat: MilitaryThreat) {
         Log.d(TAG, "Handling medium threat: ${threat.id}")
         defensiveSystemsManager.deployCountermeasure(CountermeasureType.ADVANCED, threat)
         tacticalResponseManager.prepareResponse(threat)
-        neutralizedThreats.incrementAndGet()
+        neutralizedThreats.increment()
     }
 
     private suspend fun handleHighThreat(threat: MilitaryThreat) {
@@ -547,7 +557,7 @@ class GuardianSystemManager(private val context: Context) {
         activateCombatMode()
         defensiveSystemsManager.deployCountermeasure(CountermeasureType.MAXIMUM, threat)
         tacticalResponseManager.executeResponse(threat)
-        neutralizedThreats.incrementAndGet()
+        neutralizedThreats.increment()
     }
 
     private suspend fun handleCriticalThreat(threat: MilitaryThreat) {
@@ -568,6 +578,7 @@ class GuardianSystemManager(private val context: Context) {
      */
     private suspend fun handleIntrusionAttempts(count: Int) {
         Log.d(TAG, "Detected $count intrusion attempts")
+        intrusionAttempts.add(count.toLong())
 
         if (count > 10) {
             activateCyberDefense()
@@ -605,7 +616,7 @@ class GuardianSystemManager(private val context: Context) {
         }
 
         Log.w(TAG, "ACTIVATING EMERGENCY PROTOCOL: $EMERGENCY_PROTOCOL_CODE")
-        emergencyActivations.incrementAndGet()
+        emergencyActivations.increment()
 
         _systemStatus.value = SystemStatus.EMERGENCY_MODE
         _militaryStatus.value = _militaryStatus.value.copy(
@@ -887,8 +898,8 @@ class GuardianSystemManager(private val context: Context) {
     // ============== FUNCIONES AUXILIARES ==============
 
     private fun updateThreatLevel() {
-        val threats = threatCounter.get()
-        val neutralized = neutralizedThreats.get()
+        val threats = threatCounter.sum()
+        val neutralized = neutralizedThreats.sum()
 
         val threatRatio = if (threats > 0) {
             (threats - neutralized).toFloat() / threats
@@ -904,6 +915,23 @@ class GuardianSystemManager(private val context: Context) {
         }
     }
 
+    /**
+     * Publica las métricas del sistema desde una única instantánea del registro
+     */
+    private fun refreshSystemMetrics() {
+        val snapshot = metricsRegistry.snapshot()
+        _systemMetrics.value = _systemMetrics.value.copy(
+            threatsDetected = snapshot.counter(THREATS_DETECTED_METRIC),
+            threatsBlocked = snapshot.counter(THREATS_NEUTRALIZED_METRIC),
+            intrusionAttempts = snapshot.counter(INTRUSION_ATTEMPTS_METRIC),
+            successfulDefenses = snapshot.counter(THREATS_NEUTRALIZED_METRIC),
+            tacticalOperations = snapshot.counter(TACTICAL_OPERATIONS_METRIC),
+            emergencyResponses = snapshot.counter(EMERGENCY_ACTIVATIONS_METRIC),
+            cyberAttacksRepelled = securityManager.getMetricsSnapshot()
+                .counter(SecurityManager.MilitaryMetrics.CYBER_ATTACKS_REPELLED)
+        )
+    }
+
     private fun updateDefconLevel(threats: List<MilitaryThreat>) {
         val maxSeverity = threats.maxOfOrNull { it.severity } ?: return
 
@@ -921,6 +949,7 @@ class GuardianSystemManager(private val context: Context) {
     }
 
     private fun executeTacticalRecommendation(action: TacticalAction) {
+        tacticalOperations.increment()
         CoroutineScope(Dispatchers.IO).launch {
             tacticalResponseManager.executeAction(action)
         }
@@ -984,13 +1013,18 @@ class GuardianSystemManager(private val context: Context) {
             defconLevel = _militaryStatus.value.defconLevel.name,
             encryptionStatus = _militaryStatus.value.encryptionStatus,
             activeThreats = _militaryStatus.value.activeThreats,
-            neutralizedThreats = neutralizedThreats.get(),
+            neutralizedThreats = neutralizedThreats.sum().toInt(),
             combatMode = isInCombatMode.get(),
             stealthMode = isInStealthMode.get(),
             emergencyActive = isEmergencyActive.get()
         )
     }
 
+    /**
+     * Instantánea de los contadores militares de esta instancia
+     */
+    fun getMetricsSnapshot(): MetricsRegistry.MetricsSnapshot = metricsRegistry.snapshot()
+
     // ============== CLASES DE DATOS PARA UI ==============
 
     data class SystemStatusUI(
@@ -1,6 +1,8 @@
 package com.guardianai.admin.advanced
 
 import android.content.Context
+import com.guardianai.managers.GuardianSystemManager
+import com.guardianai.managers.MetricsRegistry
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.*
 import java.util.concurrent.ConcurrentHashMap
@@ -31,6 +33,10 @@ class GuardianSystemOrchestrator(private val context: Context) {
     private val _systemMetrics = MutableStateFlow(SystemMetrics())
     val systemMetrics: StateFlow<SystemMetrics> = _systemMetrics.asStateFlow()
     
+    // Totales del proceso: los managers acumulan aquí sus contadores
+    private val metricsRegistry = MetricsRegistry.shared
+    private val optimizationCycles = metricsRegistry.counter("orchestrator.optimization_cycles")
+    
     // Configuración del sistema
     private val systemConfig = SystemConfiguration()
     private val subsystemStates = ConcurrentHashMap<String, SubsystemState>()
@@ -471,7 +477,12 @@ class GuardianSystemOrchestrator(private val context: Context) {
     private suspend fun optimizeAIProcessing() {}
     private suspend fun optimizeQuantumOperations() {}
     private fun calculatePerformanceImprovement(old: PerformanceAnalysis, new: PerformanceAnalysis): Map<String, Float> = emptyMap()
-    private fun updateSystemMetrics(improvement: Map<String, Float>) {}
+    private fun updateSystemMetrics(improvement: Map<String, Float>) {
+        optimizationCycles.increment()
+        improvement.forEach { (name, value) ->
+            metricsRegistry.gauge("orchestrator.improvement.$name").set(value.toDouble())
+        }
+    }
     
     private fun analyzeUsagePatterns(): List<UsagePattern> = emptyList()
     private fun identifyImprovementOpportunities(patterns: List<UsagePattern>): List<ImprovementOpportunity> = emptyList()
@@ -480,7 +491,19 @@ class GuardianSystemOrchestrator(private val context: Context) {
     private fun consolidateImprovement(improvement: ImprovementOpportunity) {}
     private fun revertImprovement(improvement: ImprovementOpportunity) {}
     
-    private suspend fun monitorSystemMetrics() {}
+    private suspend fun monitorSystemMetrics() {
+        while (_systemStatus.value != SystemStatus.SHUTDOWN) {
+            // Una sola instantánea por ciclo. Sólo los contadores del sistema: las amenazas de
+            // seguridad que gestiona GuardianSystemManager ya están contadas ahí
+            val snapshot = metricsRegistry.snapshot()
+            _systemMetrics.value = _systemMetrics.value.copy(
+                threatsDetected = snapshot.counter(GuardianSystemManager.THREATS_DETECTED_METRIC),
+                threatsBlocked = snapshot.counter(GuardianSystemManager.THREATS_NEUTRALIZED_METRIC)
+            )
+            
+            delay(5000) // Cada 5 segundos
+        }
+    }
     private suspend fun monitorSubsystems() {}
     private suspend fun performAutomaticOptimization() {}
     private fun checkCriticalThresholds(health: SystemHealth) {}
@@ -0,0 +1,349 @@
+package com.guardianai.communication.real_time
+
+/**
+ * Motor incremental de agrupamiento de IOCs mediante union-find
+ * Cada IOC nuevo se enlaza con los IOCs que comparten infraestructura
+ * (IP /24, registrante, familia de hash, TTP del mismo actor). Las uniones son casi O(1)
+ * y los clústeres que superan el umbral de tamaño o velocidad se emiten
+ * como candidatos a campaña en el momento en que se forman.
+ * Los IOCs expirados se retiran de forma perezosa: dejan de contar y de enlazar al momento,
+ * y cuando dominan la estructura se reconstruye sólo con los vivos, separando los clústeres
+ * que únicamente se unían a través de ellos.
+ */
+class IOCClusterEngine(
+    private val sizeThreshold: Int = DEFAULT_SIZE_THRESHOLD,
+    private val velocityThreshold: Float = DEFAULT_VELOCITY_THRESHOLD,
+    private val minVelocityClusterSize: Int = 3,
+    private val maxMembersPerCandidate: Int = 200
+) {
+
+    companion object {
+        const val DEFAULT_SIZE_THRESHOLD = 10
+        const val DEFAULT_VELOCITY_THRESHOLD = 5f // IOCs por hora
+        private const val INITIAL_CAPACITY = 1024
+        private const val COMPACTION_MIN_REMOVED = 256
+        private const val HOUR_MS = 3600000L
+        private val MITRE_TECHNIQUE = Regex("^T\\d{4}(\\.\\d{3})?$")
+    }
+
+    data class ClusterCandidate(
+        val clusterId: Int,
+        val size: Int,
+        val memberKeys: List<String>,
+        val sharedFeatures: List<String>,
+        val firstSeen: Long,
+        val lastSeen: Long,
+        val velocityPerHour: Float,
+        val actor: String?,
+        val tags: List<String>,
+        val ttps: List<String>
+    )
+
+    // Estructura union-find sobre arreglos primitivos; size cuenta sólo miembros vivos
+    private var parent = IntArray(INITIAL_CAPACITY)
+    private var size = IntArray(INITIAL_CAPACITY)
+    private var nextMember = IntArray(INITIAL_CAPACITY) // Lista circular de miembros por clúster
+    private var minNode = IntArray(INITIAL_CAPACITY)    // Identificador estable del clúster
+    private var firstSeen = LongArray(INITIAL_CAPACITY)
+    private var lastSeen = LongArray(INITIAL_CAPACITY)
+    private var emittedSize = IntArray(INITIAL_CAPACITY)
+    private var nodeCount = 0
+
+    // Datos propios de cada nodo, necesarios para reconstruir tras retirar IOCs
+    private var nodeId = IntArray(INITIAL_CAPACITY)     // Estable aunque la reconstrucción renumere nodos
+    private var memberFirstSeen = LongArray(INITIAL_CAPACITY)
+    private var memberLastSeen = LongArray(INITIAL_CAPACITY)
+    private var removed = BooleanArray(INITIAL_CAPACITY)
+    private var removedCount = 0
+    private var nextNodeId = 0
+
+    private val nodeByKey = HashMap<String, Int>()
+    private val keys = ArrayList<String>(INITIAL_CAPACITY)
+    private val featuresByNode = ArrayList<Array<String>>(INITIAL_CAPACITY)
+    private val contexts = ArrayList<ThreatIntelligenceEngine.IOCContext>(INITIAL_CAPACITY)
+    private val nodeByFeature = HashMap<String, Int>()
+    private val lock = Any()
+
+    /**
+     * Añade o actualiza un IOC; devuelve un candidato si su clúster cruza un umbral
+     */
+    fun add(
+        key: String,
+        ioc: ThreatIntelligenceEngine.IOC,
+        ttpIds: Collection<String> = emptyList()
+    ): ClusterCandidate? {
+        val features = extractFeatures(ioc, ttpIds)
+
+        synchronized(lock) {
+            val existing = nodeByKey[key]
+            val node = existing ?: insertNode(key, nextNodeId++, ioc.firstSeen, ioc.lastSeen, features, ioc.context)
+
+            if (existing != null) {
+                val root = find(node)
+                if (ioc.lastSeen > lastSeen[root]) lastSeen[root] = ioc.lastSeen
+                if (ioc.lastSeen > memberLastSeen[node]) memberLastSeen[node] = ioc.lastSeen
+                val known = featuresByNode[node]
+                if (features.any { it !in known }) featuresByNode[node] = (known + features).distinct().toTypedArray()
+            }
+
+            link(node, features)
+            return checkThresholds(find(node))
+        }
+    }
+
+    /**
+     * Retira un IOC expirado: deja de contar en su clúster y de enlazar IOCs nuevos
+     */
+    fun remove(key: String): Boolean = synchronized(lock) {
+        val node = nodeByKey.remove(key) ?: return false
+        removed[node] = true
+        removedCount++
+        val root = find(node)
+        size[root]--
+
+        // Las características que apuntaban al nodo pasan a otro miembro vivo que las comparta
+        for (feature in featuresByNode[node]) {
+            if (nodeByFeature[feature] != node) continue
+            val heir = liveMemberWith(root, feature)
+            if (heir >= 0) nodeByFeature[feature] = heir else nodeByFeature.remove(feature)
+        }
+
+        if (removedCount >= COMPACTION_MIN_REMOVED && removedCount * 2 > nodeCount) compact()
+        true
+    }
+
+    /**
+     * Identificador estable del clúster al que pertenece el IOC
+     */
+    fun clusterOf(key: String): Int? = synchronized(lock) {
+        nodeByKey[key]?.let { minNode[find(it)] }
+    }
+
+    fun clusterSize(key: String): Int = synchronized(lock) {
+        nodeByKey[key]?.let { size[find(it)] } ?: 0
+    }
+
+    fun getNodeCount(): Int = synchronized(lock) { nodeCount - removedCount }
+
+    private fun insertNode(
+        key: String,
+        id: Int,
+        seenFrom: Long,
+        seenTo: Long,
+        features: Array<String>,
+        context: ThreatIntelligenceEngine.IOCContext
+    ): Int {
+        ensureCapacity(nodeCount + 1)
+        val node = nodeCount++
+        parent[node] = node
+        size[node] = 1
+        nextMember[node] = node
+        minNode[node] = id
+        firstSeen[node] = seenFrom
+        lastSeen[node] = seenTo
+        emittedSize[node] = 0
+        nodeId[node] = id
+        memberFirstSeen[node] = seenFrom
+        memberLastSeen[node] = seenTo
+        removed[node] = false
+        nodeByKey[key] = node
+        keys.add(key)
+        featuresByNode.add(features)
+        contexts.add(context)
+        return node
+    }
+
+    private fun link(node: Int, features: Array<String>) {
+        for (feature in features) {
+            val other = nodeByFeature.putIfAbsent(feature, node)
+            if (other != null && other != node) union(node, other)
+        }
+    }
+
+    /**
+     * Reconstruye la estructura sólo con los IOCs vivos. Los identificadores estables se
+     * conservan y cada clúster hereda el tamaño ya emitido para no repetir candidatos
+     */
+    private fun compact() {
+        val live = (0 until nodeCount).filter { !removed[it] }
+        val inheritedEmitted = IntArray(live.size) { emittedSize[find(live[it])] }
+        val oldIds = nodeId
+        val oldFirstSeen = memberFirstSeen
+        val oldLastSeen = memberLastSeen
+        val oldKeys = ArrayList(keys)
+        val oldFeatures = ArrayList(featuresByNode)
+        val oldContexts = ArrayList(contexts)
+
+        val capacity = maxOf(INITIAL_CAPACITY, live.size * 2)
+        parent = IntArray(capacity)
+        size = IntArray(capacity)
+        nextMember = IntArray(capacity)
+        minNode = IntArray(capacity)
+        firstSeen = LongArray(capacity)
+        lastSeen = LongArray(capacity)
+        emittedSize = IntArray(capacity)
+        nodeId = IntArray(capacity)
+        memberFirstSeen = LongArray(capacity)
+        memberLastSeen = LongArray(capacity)
+        removed = BooleanArray(capacity)
+        nodeCount = 0
+        removedCount = 0
+        nodeByKey.clear()
+        keys.clear()
+        featuresByNode.clear()
+        contexts.clear()
+        nodeByFeature.clear()
+
+        for ((index, old) in live.withIndex()) {
+            val node = insertNode(oldKeys[old], oldIds[old], oldFirstSeen[old], oldLastSeen[old], oldFeatures[old], oldContexts[old])
+            emittedSize[node] = inheritedEmitted[index]
+            link(node, oldFeatures[old])
+        }
+    }
+
+    private fun liveMemberWith(root: Int, feature: String): Int {
+        var member = root
+        do {
+            if (!removed[member] && feature in featuresByNode[member]) return member
+            member = nextMember[member]
+        } while (member != root)
+        return -1
+    }
+
+    private fun find(node: Int): Int {
+        var x = node
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]] // Compresión por división a la mitad
+            x = parent[x]
+        }
+        return x
+    }
+
+    private fun union(a: Int, b: Int) {
+        var rootA = find(a)
+        var rootB = find(b)
+        if (rootA == rootB) return
+
+        // Unión por tamaño
+        if (size[rootA] < size[rootB]) {
+            val tmp = rootA
+            rootA = rootB
+            rootB = tmp
+        }
+
+        parent[rootB] = rootA
+        size[rootA] += size[rootB]
+        if (minNode[rootB] < minNode[rootA]) minNode[rootA] = minNode[rootB]
+        if (firstSeen[rootB] < firstSeen[rootA]) firstSeen[rootA] = firstSeen[rootB]
+        if (lastSeen[rootB] > lastSeen[rootA]) lastSeen[rootA] = lastSeen[rootB]
+        if (emittedSize[rootB] > emittedSize[rootA]) emittedSize[rootA] = emittedSize[rootB]
+
+        // Empalmar las listas circulares de miembros en O(1)
+        val tmp = nextMember[rootA]
+        nextMember[rootA] = nextMember[rootB]
+        nextMember[rootB] = tmp
+    }
+
+    private fun checkThresholds(root: Int): ClusterCandidate? {
+        val clusterSize = size[root]
+        val spanHours = ((lastSeen[root] - firstSeen[root]).toFloat() / HOUR_MS).coerceAtLeast(1f)
+        val velocity = clusterSize / spanHours
+
+        val crossesSize = clusterSize >= sizeThreshold
+        val crossesVelocity = clusterSize >= minVelocityClusterSize && velocity >= velocityThreshold
+        if (!crossesSize && !crossesVelocity) return null
+
+        // Emitir una vez al cruzar el umbral y de nuevo cada vez que el clúster duplica su tamaño
+        if (emittedSize[root] > 0 && clusterSize < emittedSize[root] * 2) return null
+        emittedSize[root] = clusterSize
+
+        return buildCandidate(root, velocity)
+    }
+
+    private fun buildCandidate(root: Int, velocity: Float): ClusterCandidate {
+        val memberKeys = ArrayList<String>(minOf(size[root], maxMembersPerCandidate))
+        val featureCounts = HashMap<String, Int>()
+        val actorCounts = HashMap<String, Int>()
+        val tags = LinkedHashSet<String>()
+        val ttps = LinkedHashSet<String>()
+
+        var member = root
+        do {
+            if (!removed[member]) {
+                if (memberKeys.size < maxMembersPerCandidate) memberKeys.add(keys[member])
+                for (feature in featuresByNode[member]) {
+                    featureCounts.merge(feature, 1, Int::plus)
+                    if (feature.startsWith("ttp:")) ttps.add(feature.removePrefix("ttp:").substringBefore('@'))
+                }
+                val context = contexts[member]
+                context.actor?.let { actorCounts.merge(it, 1, Int::plus) }
+                if (tags.size < 50) tags.addAll(context.tags)
+            }
+            member = nextMember[member]
+        } while (member != root)
+
+        return ClusterCandidate(
+            clusterId = minNode[root],
+            size = size[root],
+            memberKeys = memberKeys,
+            sharedFeatures = featureCounts.filter { it.value > 1 }.keys.sorted(),
+            firstSeen = firstSeen[root],
+            lastSeen = lastSeen[root],
+            velocityPerHour = velocity,
+            actor = actorCounts.maxByOrNull { it.value }?.key,
+            tags = tags.toList(),
+            ttps = ttps.toList()
+        )
+    }
+
+    /**
+     * Deriva las claves de infraestructura compartida de un IOC
+     */
+    private fun extractFeatures(ioc: ThreatIntelligenceEngine.IOC, ttpIds: Collection<String>): Array<String> {
+        val features = ArrayList<String>(4)
+
+        if (ioc.type == ThreatIntelligenceEngine.IOCType.IP_ADDRESS) {
+            val lastDot = ioc.value.lastIndexOf('.')
+            if (lastDot > 0 && ioc.value.count { it == '.' } == 3) {
+                features.add("ip24:" + ioc.value.substring(0, lastDot))
+            }
+        }
+
+        if (ioc.type == ThreatIntelligenceEngine.IOCType.FILE_HASH) {
+            ioc.context.malwareFamily?.let { features.add("family:" + it.lowercase()) }
+        }
+
+        // Una técnica MITRE la usan actores sin relación entre sí: sólo enlaza IOCs del mismo
+        // actor, familia o campaña, y sin ninguno de ellos no enlaza
+        val ttpScope = (ioc.context.actor ?: ioc.context.malwareFamily ?: ioc.context.campaign)?.lowercase()
+
+        for (tag in ioc.context.tags) {
+            when {
+                tag.startsWith("registrant:", ignoreCase = true) -> features.add("registrant:" + tag.substring(11).lowercase())
+                ttpScope != null && MITRE_TECHNIQUE.matches(tag) -> features.add("ttp:$tag@$ttpScope")
+            }
+        }
+
+        if (ttpScope != null) {
+            for (ttp in ttpIds) features.add("ttp:$ttp@$ttpScope")
+        }
+
+        return features.distinct().toTypedArray()
+    }
+
+    private fun ensureCapacity(required: Int) {
+        if (required <= parent.size) return
+        val newSize = maxOf(required, parent.size * 2)
+        parent = parent.copyOf(newSize)
+        size = size.copyOf(newSize)
+        nextMember = nextMember.copyOf(newSize)
+        minNode = minNode.copyOf(newSize)
+        firstSeen = firstSeen.copyOf(newSize)
+        lastSeen = lastSeen.copyOf(newSize)
+        emittedSize = emittedSize.copyOf(newSize)
+        nodeId = nodeId.copyOf(newSize)
+        memberFirstSeen = memberFirstSeen.copyOf(newSize)
+        memberLastSeen = memberLastSeen.copyOf(newSize)
+        removed = removed.copyOf(newSize)
+    }
+}
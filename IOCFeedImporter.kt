@@ -0,0 +1,566 @@
+package com.guardianai.communication.real_time
+
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.BufferedInputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.time.Instant
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Importador en streaming de feeds de IOCs (bundles STIX 2.x y JSON plano)
+ * Lee con JsonReader registro a registro y entrega lotes al índice de IOCs,
+ * de modo que la memoria máxima depende del tamaño de lote y no del archivo
+ */
+class IOCFeedImporter(
+    private val batchSize: Int = DEFAULT_BATCH_SIZE,
+    private val maxInternedStrings: Int = DEFAULT_MAX_INTERNED
+) {
+
+    companion object {
+        const val DEFAULT_BATCH_SIZE = 5000
+        const val DEFAULT_MAX_INTERNED = 50000
+        private const val CHECKPOINT_SUFFIX = ".import-checkpoint"
+        private const val READ_BUFFER_SIZE = 64 * 1024
+
+        // Definiciones de marcado TLP oficiales de STIX 2.x
+        private val STIX_TLP_MARKINGS = mapOf(
+            "marking-definition--613f2e26-407d-48c7-9eca-b8e91df99dc9" to ThreatIntelligenceEngine.TLPLevel.WHITE,
+            "marking-definition--34098fce-860f-48ae-8e50-ebd3cc5e41da" to ThreatIntelligenceEngine.TLPLevel.GREEN,
+            "marking-definition--f88d31f6-486f-44da-b317-01333bde0b82" to ThreatIntelligenceEngine.TLPLevel.AMBER,
+            "marking-definition--5e57c739-391a-4eb3-b6be-7d15ca92d5ed" to ThreatIntelligenceEngine.TLPLevel.RED
+        )
+
+        private val STIX_COMPARISON = Regex("""\[\s*([a-z0-9-]+):([^=\]]+?)\s*=\s*'((?:[^'\\]|\\.)*)'""")
+    }
+
+    enum class FeedFormat { STIX_BUNDLE, FLAT_JSON }
+
+    data class ImportProgress(
+        val fileName: String,
+        val format: FeedFormat?,
+        val bytesRead: Long,
+        val totalBytes: Long,
+        val recordsProcessed: Long,
+        val indicatorsImported: Long,
+        val recordsSkipped: Long,
+        val isComplete: Boolean
+    ) {
+        val percent: Float
+            get() = if (totalBytes > 0) (bytesRead.toFloat() / totalBytes).coerceIn(0f, 1f) * 100f else 0f
+    }
+
+    data class ImportResult(
+        val fileName: String,
+        val format: FeedFormat?,
+        val indicatorsImported: Long,
+        val recordsSkipped: Long,
+        val resumedFromRecord: Long,
+        val durationMs: Long,
+        val alreadyImported: Boolean = false
+    )
+
+    /**
+     * Punto de reanudación persistido junto al archivo del feed
+     */
+    private data class Checkpoint(
+        val fileLength: Long,
+        val lastModified: Long,
+        val recordsProcessed: Long,
+        val indicatorsImported: Long,
+        val isComplete: Boolean
+    )
+
+    private val interner = StringInterner(maxInternedStrings)
+    // Las importaciones se serializan: comparten el internado y los checkpoints de cada archivo
+    private val importMutex = Mutex()
+
+    /**
+     * Importa un feed completo; si se interrumpió antes, continúa desde el último lote confirmado
+     * Una importación concurrente espera a que termine la anterior
+     * @param sink recibe cada lote; al retornar, el lote se considera persistido
+     */
+    suspend fun import(
+        file: File,
+        sink: (List<ThreatIntelligenceEngine.IOC>) -> Unit,
+        onProgress: (ImportProgress) -> Unit = {}
+    ): ImportResult = importMutex.withLock { importLocked(file, sink, onProgress) }
+
+    private suspend fun importLocked(
+        file: File,
+        sink: (List<ThreatIntelligenceEngine.IOC>) -> Unit,
+        onProgress: (ImportProgress) -> Unit
+    ): ImportResult {
+        val startTime = System.currentTimeMillis()
+        val checkpointFile = File(file.parentFile, file.name + CHECKPOINT_SUFFIX)
+        val checkpoint = readCheckpoint(checkpointFile)
+            ?.takeIf { it.fileLength == file.length() && it.lastModified == file.lastModified() }
+
+        if (checkpoint?.isComplete == true) {
+            return ImportResult(file.name, null, checkpoint.indicatorsImported, 0, checkpoint.recordsProcessed, 0, alreadyImported = true)
+        }
+
+        val resumeFrom = checkpoint?.recordsProcessed ?: 0L
+        var recordsProcessed = 0L
+        var imported = checkpoint?.indicatorsImported ?: 0L
+        var skipped = 0L
+        var format: FeedFormat? = null
+        val batch = ArrayList<ThreatIntelligenceEngine.IOC>(batchSize)
+
+        val counting = CountingInputStream(BufferedInputStream(FileInputStream(file), READ_BUFFER_SIZE))
+
+        fun flush(complete: Boolean) {
+            if (batch.isNotEmpty()) {
+                sink(batch.toList())
+                imported += batch.size
+                batch.clear()
+            }
+            writeCheckpoint(checkpointFile, Checkpoint(file.length(), file.lastModified(), recordsProcessed, imported, complete))
+            onProgress(ImportProgress(file.name, format, counting.count, file.length(), recordsProcessed, imported, skipped, complete))
+        }
+
+        JsonReader(InputStreamReader(counting, Charsets.UTF_8)).use { reader ->
+            reader.isLenient = true
+            format = openRecordArray(reader)
+
+            if (format != null) {
+                while (reader.hasNext()) {
+                    coroutineContext.ensureActive()
+
+                    if (recordsProcessed < resumeFrom) {
+                        reader.skipValue()
+                        recordsProcessed++
+                        continue
+                    }
+
+                    val ioc = when (format) {
+                        FeedFormat.STIX_BUNDLE -> readStixObject(reader)
+                        else -> readFlatRecord(reader)
+                    }
+                    recordsProcessed++
+
+                    if (ioc != null) batch.add(ioc) else skipped++
+
+                    if (batch.size >= batchSize) {
+                        flush(complete = false)
+                    }
+                }
+            }
+        }
+
+        flush(complete = true)
+
+        return ImportResult(
+            fileName = file.name,
+            format = format,
+            indicatorsImported = imported,
+            recordsSkipped = skipped,
+            resumedFromRecord = resumeFrom,
+            durationMs = System.currentTimeMillis() - startTime
+        )
+    }
+
+    /**
+     * Posiciona el lector dentro del arreglo de registros y detecta el formato
+     */
+    private fun openRecordArray(reader: JsonReader): FeedFormat? {
+        when (reader.peek()) {
+            JsonToken.BEGIN_ARRAY -> {
+                reader.beginArray()
+                return FeedFormat.FLAT_JSON
+            }
+            JsonToken.BEGIN_OBJECT -> {
+                reader.beginObject()
+                while (reader.hasNext()) {
+                    when (reader.nextName()) {
+                        "objects" -> {
+                            reader.beginArray()
+                            return FeedFormat.STIX_BUNDLE
+                        }
+                        "indicators", "iocs", "data" -> {
+                            reader.beginArray()
+                            return FeedFormat.FLAT_JSON
+                        }
+                        else -> reader.skipValue()
+                    }
+                }
+                return null
+            }
+            else -> return null
+        }
+    }
+
+    /**
+     * Lee un objeto STIX; sólo los indicadores y observables simples producen IOCs
+     */
+    private fun readStixObject(reader: JsonReader): ThreatIntelligenceEngine.IOC? {
+        var objectType: String? = null
+        var id: String? = null
+        var name: String? = null
+        var description: String? = null
+        var pattern: String? = null
+        var value: String? = null
+        var hashValue: String? = null
+        var created = 0L
+        var modified = 0L
+        var validFrom = 0L
+        var validUntil = 0L
+        var confidence = -1
+        var tlp: ThreatIntelligenceEngine.TLPLevel? = null
+        var killChainPhase: String? = null
+        var createdBy: String? = null
+        val labels = ArrayList<String>(4)
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "type" -> objectType = nextStringOrNull(reader)
+                "id" -> id = nextStringOrNull(reader)
+                "name" -> name = nextStringOrNull(reader)
+                "description" -> description = nextStringOrNull(reader)
+                "pattern" -> pattern = nextStringOrNull(reader)
+                "value" -> value = nextStringOrNull(reader)
+                "hashes" -> hashValue = readFirstHash(reader)
+                "created" -> created = nextTimestamp(reader)
+                "modified" -> modified = nextTimestamp(reader)
+                "valid_from" -> validFrom = nextTimestamp(reader)
+                "valid_until" -> validUntil = nextTimestamp(reader)
+                "confidence" -> confidence = if (reader.peek() == JsonToken.NUMBER) reader.nextInt() else { reader.skipValue(); -1 }
+                "created_by_ref" -> createdBy = nextStringOrNull(reader)?.let { interner.intern(it) }
+                "labels", "indicator_types" -> readStringArray(reader, labels)
+                "object_marking_refs" -> tlp = readTlpMarking(reader) ?: tlp
+                "kill_chain_phases" -> killChainPhase = readFirstKillChainPhase(reader)
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+
+        val (iocType, iocValue) = when (objectType) {
+            "indicator" -> pattern?.let { parseStixPattern(it) } ?: return null
+            "ipv4-addr", "ipv6-addr" -> ThreatIntelligenceEngine.IOCType.IP_ADDRESS to (value ?: return null)
+            "domain-name" -> ThreatIntelligenceEngine.IOCType.DOMAIN to (value ?: return null)
+            "url" -> ThreatIntelligenceEngine.IOCType.URL to (value ?: return null)
+            "email-addr" -> ThreatIntelligenceEngine.IOCType.EMAIL to (value ?: return null)
+            "mutex" -> ThreatIntelligenceEngine.IOCType.MUTEX to (name ?: return null)
+            "file" -> ThreatIntelligenceEngine.IOCType.FILE_HASH to (hashValue ?: return null)
+            else -> return null
+        }
+
+        val firstSeen = when {
+            validFrom > 0 -> validFrom
+            created > 0 -> created
+            else -> System.currentTimeMillis()
+        }
+        val lastSeen = when {
+            validUntil > 0 -> validUntil
+            modified > 0 -> modified
+            else -> firstSeen
+        }
+
+        return ThreatIntelligenceEngine.IOC(
+            id = id ?: "${iocType.name}:$iocValue",
+            type = iocType,
+            value = iocValue,
+            description = description ?: name ?: "",
+            firstSeen = firstSeen,
+            lastSeen = lastSeen,
+            confidence = if (confidence >= 0) confidence / 100f else 0.5f,
+            tlp = tlp ?: ThreatIntelligenceEngine.TLPLevel.AMBER,
+            sources = listOf(createdBy ?: interner.intern("STIX")),
+            associatedThreats = emptyList(),
+            context = ThreatIntelligenceEngine.IOCContext(
+                malwareFamily = null,
+                campaign = null,
+                actor = null,
+                killChainPhase = killChainPhase,
+                tags = labels
+            )
+        )
+    }
+
+    /**
+     * Lee un registro de feed JSON plano
+     */
+    private fun readFlatRecord(reader: JsonReader): ThreatIntelligenceEngine.IOC? {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue()
+            return null
+        }
+
+        var id: String? = null
+        var typeName: String? = null
+        var value: String? = null
+        var description: String? = null
+        var firstSeen = 0L
+        var lastSeen = 0L
+        var confidence = 0.5f
+        var tlp: ThreatIntelligenceEngine.TLPLevel? = null
+        var malwareFamily: String? = null
+        var campaign: String? = null
+        var actor: String? = null
+        var killChainPhase: String? = null
+        val sources = ArrayList<String>(2)
+        val tags = ArrayList<String>(4)
+        val associatedThreats = ArrayList<String>(2)
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "id" -> id = nextStringOrNull(reader)
+                "type" -> typeName = nextStringOrNull(reader)
+                "value", "indicator", "ioc" -> value = nextStringOrNull(reader)
+                "description" -> description = nextStringOrNull(reader)
+                "first_seen", "firstSeen" -> firstSeen = nextTimestamp(reader)
+                "last_seen", "lastSeen" -> lastSeen = nextTimestamp(reader)
+                "confidence" -> confidence = nextConfidence(reader)
+                "tlp" -> tlp = nextStringOrNull(reader)?.let { parseTlp(it) }
+                "source" -> nextStringOrNull(reader)?.let { sources.add(interner.intern(it)) }
+                "sources" -> readStringArray(reader, sources)
+                "tags" -> readStringArray(reader, tags)
+                "threats", "associated_threats" -> readStringArray(reader, associatedThreats)
+                "malware_family", "malwareFamily" -> malwareFamily = nextStringOrNull(reader)?.let { interner.intern(it) }
+                "campaign" -> campaign = nextStringOrNull(reader)?.let { interner.intern(it) }
+                "actor" -> actor = nextStringOrNull(reader)?.let { interner.intern(it) }
+                "kill_chain_phase", "killChainPhase" -> killChainPhase = nextStringOrNull(reader)?.let { interner.intern(it) }
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+
+        val iocValue = value ?: return null
+        val iocType = typeName?.let { parseFlatType(it) } ?: return null
+        val seen = if (firstSeen > 0) firstSeen else System.currentTimeMillis()
+
+        return ThreatIntelligenceEngine.IOC(
+            id = id ?: "${iocType.name}:$iocValue",
+            type = iocType,
+            value = iocValue,
+            description = description ?: "",
+            firstSeen = seen,
+            lastSeen = if (lastSeen > 0) lastSeen else seen,
+            confidence = confidence,
+            tlp = tlp ?: ThreatIntelligenceEngine.TLPLevel.AMBER,
+            sources = sources,
+            associatedThreats = associatedThreats,
+            context = ThreatIntelligenceEngine.IOCContext(
+                malwareFamily = malwareFamily,
+                campaign = campaign,
+                actor = actor,
+                killChainPhase = killChainPhase,
+                tags = tags
+            )
+        )
+    }
+
+    private fun parseStixPattern(pattern: String): Pair<ThreatIntelligenceEngine.IOCType, String>? {
+        val match = STIX_COMPARISON.find(pattern) ?: return null
+        val objectType = match.groupValues[1]
+        val path = match.groupValues[2]
+        val value = match.groupValues[3].replace("\\'", "'")
+
+        val type = when (objectType) {
+            "ipv4-addr", "ipv6-addr" -> ThreatIntelligenceEngine.IOCType.IP_ADDRESS
+            "domain-name" -> ThreatIntelligenceEngine.IOCType.DOMAIN
+            "url" -> ThreatIntelligenceEngine.IOCType.URL
+            "file" -> if (path.contains("hashes")) ThreatIntelligenceEngine.IOCType.FILE_HASH else return null
+            "email-addr", "email-message" -> ThreatIntelligenceEngine.IOCType.EMAIL
+            "windows-registry-key" -> ThreatIntelligenceEngine.IOCType.REGISTRY_KEY
+            "mutex" -> ThreatIntelligenceEngine.IOCType.MUTEX
+            "x509-certificate" -> ThreatIntelligenceEngine.IOCType.SSL_CERT
+            "network-traffic" -> if (path.contains("User-Agent", ignoreCase = true)) {
+                ThreatIntelligenceEngine.IOCType.USER_AGENT
+            } else {
+                ThreatIntelligenceEngine.IOCType.NETWORK_SIGNATURE
+            }
+            else -> return null
+        }
+        return type to value
+    }
+
+    private fun parseFlatType(name: String): ThreatIntelligenceEngine.IOCType? {
+        return when (name.lowercase()) {
+            "ip", "ipv4", "ipv6", "ip_address", "ip-address" -> ThreatIntelligenceEngine.IOCType.IP_ADDRESS
+            "domain", "hostname", "fqdn" -> ThreatIntelligenceEngine.IOCType.DOMAIN
+            "url", "uri" -> ThreatIntelligenceEngine.IOCType.URL
+            "hash", "md5", "sha1", "sha256", "file_hash" -> ThreatIntelligenceEngine.IOCType.FILE_HASH
+            "email" -> ThreatIntelligenceEngine.IOCType.EMAIL
+            "user_agent", "useragent" -> ThreatIntelligenceEngine.IOCType.USER_AGENT
+            else -> ThreatIntelligenceEngine.IOCType.values().firstOrNull { it.name.equals(name, ignoreCase = true) }
+        }
+    }
+
+    private fun parseTlp(value: String): ThreatIntelligenceEngine.TLPLevel? {
+        val normalized = value.uppercase().removePrefix("TLP:").removePrefix("TLP_").trim()
+        return when (normalized) {
+            "CLEAR", "WHITE" -> ThreatIntelligenceEngine.TLPLevel.WHITE
+            "GREEN" -> ThreatIntelligenceEngine.TLPLevel.GREEN
+            "AMBER", "AMBER+STRICT" -> ThreatIntelligenceEngine.TLPLevel.AMBER
+            "RED" -> ThreatIntelligenceEngine.TLPLevel.RED
+            else -> STIX_TLP_MARKINGS[value]
+        }
+    }
+
+    // Lectores auxiliares de tokens
+    private fun nextStringOrNull(reader: JsonReader): String? {
+        return when (reader.peek()) {
+            JsonToken.STRING, JsonToken.NUMBER -> reader.nextString()
+            JsonToken.NULL -> { reader.nextNull(); null }
+            else -> { reader.skipValue(); null }
+        }
+    }
+
+    private fun nextTimestamp(reader: JsonReader): Long {
+        return when (reader.peek()) {
+            JsonToken.NUMBER -> {
+                val raw = reader.nextLong()
+                if (raw < 100_000_000_000L) raw * 1000 else raw // segundos o milisegundos
+            }
+            JsonToken.STRING -> try {
+                Instant.parse(reader.nextString()).toEpochMilli()
+            } catch (e: Exception) {
+                0L
+            }
+            else -> { reader.skipValue(); 0L }
+        }
+    }
+
+    private fun nextConfidence(reader: JsonReader): Float {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue()
+            return 0.5f
+        }
+        val raw = reader.nextDouble().toFloat()
+        return (if (raw > 1f) raw / 100f else raw).coerceIn(0f, 1f)
+    }
+
+    private fun readStringArray(reader: JsonReader, into: MutableList<String>) {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            nextStringOrNull(reader)?.let { into.add(interner.intern(it)) }
+            return
+        }
+        reader.beginArray()
+        while (reader.hasNext()) {
+            nextStringOrNull(reader)?.let { into.add(interner.intern(it)) }
+        }
+        reader.endArray()
+    }
+
+    private fun readTlpMarking(reader: JsonReader): ThreatIntelligenceEngine.TLPLevel? {
+        var tlp: ThreatIntelligenceEngine.TLPLevel? = null
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue()
+            return null
+        }
+        reader.beginArray()
+        while (reader.hasNext()) {
+            val ref = nextStringOrNull(reader) ?: continue
+            STIX_TLP_MARKINGS[ref]?.let { if (tlp == null || it.ordinal > tlp!!.ordinal) tlp = it }
+        }
+        reader.endArray()
+        return tlp
+    }
+
+    private fun readFirstKillChainPhase(reader: JsonReader): String? {
+        var phase: String? = null
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue()
+            return null
+        }
+        reader.beginArray()
+        while (reader.hasNext()) {
+            reader.beginObject()
+            while (reader.hasNext()) {
+                if (reader.nextName() == "phase_name" && phase == null) {
+                    phase = nextStringOrNull(reader)?.let { interner.intern(it) }
+                } else {
+                    reader.skipValue()
+                }
+            }
+            reader.endObject()
+        }
+        reader.endArray()
+        return phase
+    }
+
+    private fun readFirstHash(reader: JsonReader): String? {
+        var hash: String? = null
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue()
+            return null
+        }
+        reader.beginObject()
+        while (reader.hasNext()) {
+            reader.nextName()
+            val value = nextStringOrNull(reader)
+            if (hash == null) hash = value
+        }
+        reader.endObject()
+        return hash
+    }
+
+    // Persistencia del punto de reanudación
+    private fun readCheckpoint(file: File): Checkpoint? {
+        if (!file.exists()) return null
+        return try {
+            val parts = file.readText().trim().split(' ')
+            Checkpoint(parts[0].toLong(), parts[1].toLong(), parts[2].toLong(), parts[3].toLong(), parts[4].toBoolean())
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    private fun writeCheckpoint(file: File, checkpoint: Checkpoint) {
+        val tmp = File(file.parentFile, file.name + ".tmp")
+        tmp.writeText(
+            "${checkpoint.fileLength} ${checkpoint.lastModified} ${checkpoint.recordsProcessed} " +
+                "${checkpoint.indicatorsImported} ${checkpoint.isComplete}"
+        )
+        tmp.renameTo(file)
+    }
+
+    /**
+     * Cuenta bytes consumidos para el progreso
+     */
+    private class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+        var count = 0L
+            private set
+
+        override fun read(): Int {
+            val b = super.read()
+            if (b >= 0) count++
+            return b
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val n = super.read(b, off, len)
+            if (n > 0) count += n
+            return n
+        }
+
+        override fun skip(n: Long): Long {
+            val skipped = super.skip(n)
+            count += skipped
+            return skipped
+        }
+    }
+
+    /**
+     * Internado acotado para cadenas muy repetidas (fuentes, TLP, tags)
+     */
+    private class StringInterner(private val maxSize: Int) {
+        private val pool = HashMap<String, String>()
+
+        fun intern(value: String): String {
+            pool[value]?.let { return it }
+            if (pool.size < maxSize) pool[value] = value
+            return value
+        }
+    }
+}
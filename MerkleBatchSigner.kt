@@ -0,0 +1,220 @@
+package com.guardianai.security.quantum_encryption
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.selects.onTimeout
+import kotlinx.coroutines.selects.select
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Firma por lotes con árbol de Merkle para telemetría y evidencias de alto volumen
+ * Los mensajes se acumulan durante una ventana corta (o hasta llenar el lote), se
+ * construye el árbol, se firma sólo la raíz y cada mensaje recibe su prueba de inclusión.
+ * La verificación de un mensaje individual es O(log n).
+ *
+ * maxBatchSize y maxDelayMs fijan el compromiso entre latencia y rendimiento:
+ * ventanas más largas amortizan la firma entre más mensajes a costa de esperar más.
+ */
+class MerkleBatchSigner(
+    private val maxBatchSize: Int = DEFAULT_MAX_BATCH_SIZE,
+    private val maxDelayMs: Long = DEFAULT_MAX_DELAY,
+    private val signRoot: suspend (root: ByteArray) -> SignedRoot
+) {
+
+    companion object {
+        const val DEFAULT_MAX_BATCH_SIZE = 256
+        const val DEFAULT_MAX_DELAY = 20L
+        private const val LEAF_PREFIX: Byte = 0x00
+        private const val NODE_PREFIX: Byte = 0x01
+        private val digest = ThreadLocal.withInitial { MessageDigest.getInstance("SHA-256") }
+
+        fun leafHash(message: ByteArray): ByteArray {
+            val sha = digest.get()
+            sha.update(LEAF_PREFIX)
+            sha.update(message)
+            return sha.digest()
+        }
+
+        private fun nodeHash(left: ByteArray, right: ByteArray): ByteArray {
+            val sha = digest.get()
+            sha.update(NODE_PREFIX)
+            sha.update(left)
+            sha.update(right)
+            return sha.digest()
+        }
+
+        /**
+         * Recalcula la raíz desde la hoja y su prueba; el nodo impar de un nivel sube sin hermano
+         */
+        fun computeRoot(leaf: ByteArray, leafIndex: Int, batchSize: Int, proof: List<ByteArray>): ByteArray? {
+            if (leafIndex !in 0 until batchSize) return null
+            var hash = leaf
+            var index = leafIndex
+            var levelSize = batchSize
+            var proofIndex = 0
+
+            while (levelSize > 1) {
+                val isPromoted = index == levelSize - 1 && levelSize % 2 == 1
+                if (!isPromoted) {
+                    val sibling = proof.getOrNull(proofIndex++) ?: return null
+                    hash = if (index % 2 == 0) nodeHash(hash, sibling) else nodeHash(sibling, hash)
+                }
+                index /= 2
+                levelSize = (levelSize + 1) / 2
+            }
+            return if (proofIndex == proof.size) hash else null
+        }
+    }
+
+    data class SignedRoot(val keyId: String, val signature: ByteArray)
+
+    data class BatchSignature(
+        val batchId: Long,
+        val keyId: String,
+        val root: ByteArray,
+        val rootSignature: ByteArray,
+        val leafIndex: Int,
+        val batchSize: Int,
+        val proof: List<ByteArray>,
+        val timestamp: Long
+    )
+
+    data class BatchStats(
+        val messagesSigned: Long,
+        val batches: Long,
+        val averageBatchSize: Double,
+        val averageWaitMs: Double
+    )
+
+    private class Request(val message: ByteArray, val enqueuedAt: Long, val result: CompletableDeferred<BatchSignature>)
+
+    private val requests = Channel<Request>(Channel.UNLIMITED)
+    private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    private val batchCounter = AtomicLong(0)
+    private val messagesSigned = AtomicLong(0)
+    private val waitTimeNs = AtomicLong(0)
+
+    init {
+        scope.launch { runBatches() }
+    }
+
+    /**
+     * Encola el mensaje y espera la firma del lote en que quede incluido
+     */
+    suspend fun sign(message: ByteArray): BatchSignature {
+        val request = Request(message, System.nanoTime(), CompletableDeferred())
+        requests.send(request)
+        return request.result.await()
+    }
+
+    fun getStats(): BatchStats {
+        val signed = messagesSigned.get()
+        val batches = batchCounter.get()
+        return BatchStats(
+            messagesSigned = signed,
+            batches = batches,
+            averageBatchSize = if (batches > 0) signed.toDouble() / batches else 0.0,
+            averageWaitMs = if (signed > 0) waitTimeNs.get() / 1_000_000.0 / signed else 0.0
+        )
+    }
+
+    /**
+     * Deja de aceptar mensajes; los ya encolados se firman antes de terminar
+     */
+    fun close() {
+        requests.close()
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private suspend fun runBatches() {
+        val batch = ArrayList<Request>(maxBatchSize)
+        while (currentCoroutineContext().isActive) {
+            // El primer mensaje abre la ventana; se cierra al llenarse o al vencer el plazo
+            val first = requests.receiveCatching().getOrNull()
+            if (first == null) {
+                scope.cancel()
+                return
+            }
+            batch.add(first)
+            val deadline = System.nanoTime() + maxDelayMs * 1_000_000
+            while (batch.size < maxBatchSize) {
+                val next = requests.tryReceive().getOrNull()
+                if (next != null) {
+                    batch.add(next)
+                    continue
+                }
+                val remainingMs = (deadline - System.nanoTime()) / 1_000_000
+                if (remainingMs <= 0) break
+                // select es atómico: a diferencia de withTimeoutOrNull, el plazo no puede perder un mensaje ya recibido
+                val received = select<Request?> {
+                    requests.onReceiveCatching { it.getOrNull() }
+                    onTimeout(remainingMs) { null }
+                } ?: break
+                batch.add(received)
+            }
+
+            try {
+                signBatch(batch)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                batch.forEach { it.result.completeExceptionally(e) }
+            }
+            batch.clear()
+        }
+    }
+
+    private suspend fun signBatch(batch: List<Request>) {
+        val levels = buildTree(batch)
+        val root = levels.last()[0]
+        val signed = signRoot(root)
+        val batchId = batchCounter.incrementAndGet()
+        val now = System.currentTimeMillis()
+        val completedAt = System.nanoTime()
+
+        for ((index, request) in batch.withIndex()) {
+            waitTimeNs.addAndGet(completedAt - request.enqueuedAt)
+            request.result.complete(
+                BatchSignature(
+                    batchId = batchId,
+                    keyId = signed.keyId,
+                    root = root,
+                    rootSignature = signed.signature,
+                    leafIndex = index,
+                    batchSize = batch.size,
+                    proof = proofFor(levels, index),
+                    timestamp = now
+                )
+            )
+        }
+        messagesSigned.addAndGet(batch.size.toLong())
+    }
+
+    private fun buildTree(batch: List<Request>): List<Array<ByteArray>> {
+        val levels = ArrayList<Array<ByteArray>>()
+        var level = Array(batch.size) { leafHash(batch[it].message) }
+        levels.add(level)
+        while (level.size > 1) {
+            val current = level
+            level = Array((current.size + 1) / 2) { i ->
+                val left = current[i * 2]
+                if (i * 2 + 1 < current.size) nodeHash(left, current[i * 2 + 1]) else left
+            }
+            levels.add(level)
+        }
+        return levels
+    }
+
+    private fun proofFor(levels: List<Array<ByteArray>>, leafIndex: Int): List<ByteArray> {
+        val proof = ArrayList<ByteArray>(levels.size)
+        var index = leafIndex
+        for (level in 0 until levels.size - 1) {
+            val nodes = levels[level]
+            val sibling = index xor 1
+            if (sibling < nodes.size) proof.add(nodes[sibling])
+            index /= 2
+        }
+        return proof
+    }
+}
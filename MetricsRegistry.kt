@@ -0,0 +1,181 @@
+package com.guardianai.managers
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.LongAccumulator
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Registro de métricas sin contención; cada manager tiene el suyo y `shared` queda
+ * para los servicios que ya son únicos en el proceso (cortafuegos, diario, planificador)
+ * Con parent, contadores e histogramas se acumulan además en el registro padre, que
+ * mantiene así los totales del proceso; los indicadores son siempre locales.
+ * Los contadores usan LongAdder (celdas repartidas por hilo), los histogramas cubetas
+ * atómicas fijas y los indicadores un valor volátil; registrar nunca toma un lock.
+ * Las lecturas se hacen sobre una instantánea inmutable, completa o como delta
+ * respecto a la exportación anterior.
+ */
+class MetricsRegistry(private val parent: MetricsRegistry? = null) {
+
+    companion object {
+        /** Límites superiores por defecto (ms) para latencias y duraciones */
+        val DEFAULT_LATENCY_BOUNDS = longArrayOf(
+            1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000
+        )
+
+        val shared: MetricsRegistry by lazy { MetricsRegistry() }
+    }
+
+    class Counter internal constructor(val name: String, private val rollup: Counter? = null) {
+        private val adder = LongAdder()
+
+        fun increment() {
+            adder.increment()
+            rollup?.increment()
+        }
+
+        fun add(delta: Long) {
+            adder.add(delta)
+            rollup?.add(delta)
+        }
+
+        fun sum(): Long = adder.sum()
+    }
+
+    class Gauge internal constructor(val name: String) {
+        @Volatile
+        private var value = 0.0
+
+        fun set(value: Double) {
+            this.value = value
+        }
+
+        fun set(value: Long) = set(value.toDouble())
+
+        fun get(): Double = value
+    }
+
+    /**
+     * Histograma de cubetas fijas; la última cubeta recoge los valores por encima del mayor límite
+     */
+    class Histogram internal constructor(
+        val name: String,
+        private val bounds: LongArray,
+        private val rollup: Histogram? = null
+    ) {
+        private val buckets = AtomicLongArray(bounds.size + 1)
+        private val sum = LongAdder()
+        private val max = LongAccumulator({ a, b -> maxOf(a, b) }, Long.MIN_VALUE)
+
+        fun record(value: Long) {
+            var index = bounds.binarySearch(value)
+            if (index < 0) index = -index - 1
+            buckets.incrementAndGet(index)
+            sum.add(value)
+            max.accumulate(value)
+            rollup?.record(value)
+        }
+
+        internal fun snapshot(): HistogramSnapshot {
+            val counts = LongArray(buckets.length()) { buckets.get(it) }
+            val highest = max.get()
+            return HistogramSnapshot(
+                bounds = bounds,
+                bucketCounts = counts,
+                count = counts.sum(),
+                sum = sum.sum(),
+                max = if (highest == Long.MIN_VALUE) 0L else highest
+            )
+        }
+    }
+
+    class HistogramSnapshot(
+        val bounds: LongArray,
+        val bucketCounts: LongArray,
+        val count: Long,
+        val sum: Long,
+        val max: Long
+    ) {
+        val mean: Double
+            get() = if (count > 0) sum.toDouble() / count else 0.0
+
+        /**
+         * Límite superior de la cubeta que contiene el percentil (cota, no valor exacto)
+         */
+        fun percentile(quantile: Double): Long {
+            if (count == 0L) return 0L
+            val rank = (quantile * count).toLong().coerceIn(1L, count)
+            var seen = 0L
+            for (i in bucketCounts.indices) {
+                seen += bucketCounts[i]
+                if (seen >= rank) return if (i < bounds.size) bounds[i] else max
+            }
+            return max
+        }
+
+        fun minus(previous: HistogramSnapshot?): HistogramSnapshot {
+            if (previous == null || previous.bucketCounts.size != bucketCounts.size) return this
+            val counts = LongArray(bucketCounts.size) { bucketCounts[it] - previous.bucketCounts[it] }
+            return HistogramSnapshot(bounds, counts, counts.sum(), sum - previous.sum, max)
+        }
+    }
+
+    data class MetricsSnapshot(
+        val timestamp: Long,
+        val counters: Map<String, Long>,
+        val gauges: Map<String, Double>,
+        val histograms: Map<String, HistogramSnapshot>,
+        val intervalMs: Long = 0L
+    ) {
+        fun counter(name: String): Long = counters[name] ?: 0L
+
+        fun gauge(name: String): Double = gauges[name] ?: 0.0
+
+        fun histogram(name: String): HistogramSnapshot? = histograms[name]
+
+        /**
+         * Diferencia respecto a una instantánea anterior; los indicadores conservan su valor actual
+         */
+        fun deltaSince(previous: MetricsSnapshot): MetricsSnapshot = MetricsSnapshot(
+            timestamp = timestamp,
+            counters = counters.mapValues { (name, value) -> value - previous.counter(name) },
+            gauges = gauges,
+            histograms = histograms.mapValues { (name, histogram) -> histogram.minus(previous.histograms[name]) },
+            intervalMs = timestamp - previous.timestamp
+        )
+    }
+
+    private val counters = ConcurrentHashMap<String, Counter>()
+    private val gauges = ConcurrentHashMap<String, Gauge>()
+    private val histograms = ConcurrentHashMap<String, Histogram>()
+    private val lastExport = AtomicReference<MetricsSnapshot?>(null)
+    private val createdAt = System.currentTimeMillis()
+
+    fun counter(name: String): Counter = counters.computeIfAbsent(name) { Counter(it, parent?.counter(it)) }
+
+    fun gauge(name: String): Gauge = gauges.computeIfAbsent(name) { Gauge(it) }
+
+    fun histogram(name: String, bounds: LongArray = DEFAULT_LATENCY_BOUNDS): Histogram =
+        histograms.computeIfAbsent(name) { Histogram(it, bounds.sortedArray(), parent?.histogram(it, bounds)) }
+
+    /**
+     * Instantánea inmutable de todas las métricas; cada valor se lee una sola vez
+     */
+    fun snapshot(): MetricsSnapshot = MetricsSnapshot(
+        timestamp = System.currentTimeMillis(),
+        counters = counters.mapValues { it.value.sum() },
+        gauges = gauges.mapValues { it.value.get() },
+        histograms = histograms.mapValues { it.value.snapshot() }
+    )
+
+    /**
+     * Delta desde la exportación anterior (o desde la creación del registro en la primera)
+     */
+    fun exportDelta(): MetricsSnapshot {
+        val current = snapshot()
+        val previous = lastExport.getAndSet(current)
+            ?: MetricsSnapshot(createdAt, emptyMap(), emptyMap(), emptyMap())
+        return current.deltaSince(previous)
+    }
+}
@@ -0,0 +1,341 @@
+package com.guardianai.communication.real_time
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import kotlin.math.max
+
+/**
+ * Pronosticador en línea de actividad de amenazas
+ * Mantiene estado Holt-Winters aditivo (nivel, tendencia y estacionalidad horaria)
+ * por serie (tipo de actualización, sector, región) en arreglos primitivos.
+ * Cada evento actualiza su serie en O(1) amortizado y un pronóstico a cualquier
+ * horizonte se calcula en forma cerrada, sin reprocesar el historial.
+ */
+class OnlineThreatForecaster(
+    private val checkpointFile: File,
+    private val alpha: Double = 0.3,  // Suavizado del nivel
+    private val beta: Double = 0.05,  // Suavizado de la tendencia
+    private val gamma: Double = 0.2,  // Suavizado estacional
+    private val maxSeries: Int = DEFAULT_MAX_SERIES,
+    private val maxDictionarySize: Int = DEFAULT_MAX_DICTIONARY
+) {
+
+    companion object {
+        const val DEFAULT_MAX_SERIES = 4096
+        const val DEFAULT_MAX_DICTIONARY = 256
+        const val SEASON_LENGTH = 24 // Estacionalidad diaria en buckets horarios
+        const val BUCKET_MS = 3600000L
+        const val UNKNOWN = "global"
+        private const val MAX_CATCH_UP_BUCKETS = SEASON_LENGTH * 7
+        private const val CHECKPOINT_MAGIC = 0x47544643 // "GTFC"
+        private const val CHECKPOINT_VERSION = 1
+        private const val INITIAL_CAPACITY = 64
+    }
+
+    data class SeriesForecast(
+        val type: ThreatIntelligenceEngine.ThreatUpdateType,
+        val sector: String,
+        val region: String,
+        val expectedEvents: Double,
+        val trendPerHour: Double,
+        val observedHours: Int
+    )
+
+    private val types = ThreatIntelligenceEngine.ThreatUpdateType.values()
+    private val sectors = Dictionary()
+    private val regions = Dictionary()
+    private val slotBySeries = HashMap<Long, Int>()
+
+    // Estado por serie en arreglos paralelos
+    private var seriesKey = LongArray(INITIAL_CAPACITY)
+    private var level = DoubleArray(INITIAL_CAPACITY)
+    private var trend = DoubleArray(INITIAL_CAPACITY)
+    private var seasonal = DoubleArray(INITIAL_CAPACITY * SEASON_LENGTH)
+    private var currentBucket = LongArray(INITIAL_CAPACITY)
+    private var currentCount = IntArray(INITIAL_CAPACITY)
+    private var observedBuckets = IntArray(INITIAL_CAPACITY)
+    private var slotCount = 0
+
+    private val lock = Any()
+
+    init {
+        loadCheckpoint()
+    }
+
+    /**
+     * Registra un evento en su serie
+     */
+    fun record(
+        type: ThreatIntelligenceEngine.ThreatUpdateType,
+        sector: String?,
+        region: String?,
+        timestamp: Long
+    ) {
+        val bucket = timestamp / BUCKET_MS
+        synchronized(lock) {
+            val slot = slotFor(type, sectors.idOf(sector, maxDictionarySize), regions.idOf(region, maxDictionarySize), bucket)
+                ?: return
+            when {
+                bucket == currentBucket[slot] -> currentCount[slot]++
+                bucket > currentBucket[slot] -> {
+                    closeBuckets(slot, bucket)
+                    currentCount[slot] = 1
+                }
+                // Eventos tardíos se acumulan en el bucket abierto
+                else -> currentCount[slot]++
+            }
+        }
+    }
+
+    /**
+     * Número esperado de eventos de la serie en las próximas [horizonMs]
+     */
+    fun forecast(
+        type: ThreatIntelligenceEngine.ThreatUpdateType,
+        sector: String?,
+        region: String?,
+        horizonMs: Long,
+        now: Long = System.currentTimeMillis()
+    ): Double {
+        synchronized(lock) {
+            val key = seriesKeyOf(type.ordinal, sectors.lookup(sector), regions.lookup(region))
+            val slot = slotBySeries[key] ?: return 0.0
+            return forecastSlot(slot, horizonMs, now / BUCKET_MS)
+        }
+    }
+
+    /**
+     * Pronóstico de todas las series, ordenado por eventos esperados
+     */
+    fun forecastAll(horizonMs: Long, limit: Int = 50, now: Long = System.currentTimeMillis()): List<SeriesForecast> {
+        val nowBucket = now / BUCKET_MS
+        synchronized(lock) {
+            val result = ArrayList<SeriesForecast>(slotCount)
+            for (slot in 0 until slotCount) {
+                val key = seriesKey[slot]
+                result.add(
+                    SeriesForecast(
+                        type = types[(key ushr 40).toInt()],
+                        sector = sectors.nameOf(((key ushr 20) and 0xFFFFF).toInt()),
+                        region = regions.nameOf((key and 0xFFFFF).toInt()),
+                        expectedEvents = forecastSlot(slot, horizonMs, nowBucket),
+                        trendPerHour = trend[slot],
+                        observedHours = observedBuckets[slot]
+                    )
+                )
+            }
+            result.sortByDescending { it.expectedEvents }
+            return if (result.size > limit) result.subList(0, limit).toList() else result
+        }
+    }
+
+    fun getSeriesCount(): Int = synchronized(lock) { slotCount }
+
+    /**
+     * Persiste el modelo de forma atómica para no perderlo en reinicios
+     */
+    fun checkpoint() {
+        val tmp = File(checkpointFile.parentFile, checkpointFile.name + ".tmp")
+        synchronized(lock) {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+                out.writeInt(CHECKPOINT_MAGIC)
+                out.writeInt(CHECKPOINT_VERSION)
+                out.writeInt(types.size)
+                sectors.write(out)
+                regions.write(out)
+                out.writeInt(slotCount)
+                for (slot in 0 until slotCount) {
+                    out.writeLong(seriesKey[slot])
+                    out.writeDouble(level[slot])
+                    out.writeDouble(trend[slot])
+                    for (h in 0 until SEASON_LENGTH) out.writeDouble(seasonal[slot * SEASON_LENGTH + h])
+                    out.writeLong(currentBucket[slot])
+                    out.writeInt(currentCount[slot])
+                    out.writeInt(observedBuckets[slot])
+                }
+            }
+        }
+        tmp.renameTo(checkpointFile)
+    }
+
+    private fun loadCheckpoint() {
+        if (!checkpointFile.exists()) return
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(checkpointFile))).use { input ->
+                if (input.readInt() != CHECKPOINT_MAGIC || input.readInt() != CHECKPOINT_VERSION) return
+                if (input.readInt() != types.size) return // El enum cambió; el modelo no es compatible
+                sectors.read(input)
+                regions.read(input)
+                val count = input.readInt()
+                ensureCapacity(count)
+                for (slot in 0 until count) {
+                    seriesKey[slot] = input.readLong()
+                    level[slot] = input.readDouble()
+                    trend[slot] = input.readDouble()
+                    for (h in 0 until SEASON_LENGTH) seasonal[slot * SEASON_LENGTH + h] = input.readDouble()
+                    currentBucket[slot] = input.readLong()
+                    currentCount[slot] = input.readInt()
+                    observedBuckets[slot] = input.readInt()
+                    slotBySeries[seriesKey[slot]] = slot
+                }
+                slotCount = count
+            }
+        } catch (e: Exception) {
+            // Un checkpoint dañado se descarta y el modelo vuelve a aprender
+            sectors.clear()
+            regions.clear()
+            slotBySeries.clear()
+            slotCount = 0
+        }
+    }
+
+    private fun slotFor(type: ThreatIntelligenceEngine.ThreatUpdateType, sectorId: Int, regionId: Int, bucket: Long): Int? {
+        val key = seriesKeyOf(type.ordinal, sectorId, regionId)
+        slotBySeries[key]?.let { return it }
+        if (slotCount >= maxSeries) return null
+
+        ensureCapacity(slotCount + 1)
+        val slot = slotCount++
+        seriesKey[slot] = key
+        level[slot] = 0.0
+        trend[slot] = 0.0
+        seasonal.fill(0.0, slot * SEASON_LENGTH, (slot + 1) * SEASON_LENGTH)
+        currentBucket[slot] = bucket
+        currentCount[slot] = 0
+        observedBuckets[slot] = 0
+        slotBySeries[key] = slot
+        return slot
+    }
+
+    /**
+     * Cierra los buckets desde el abierto hasta [newBucket] aplicando Holt-Winters
+     */
+    private fun closeBuckets(slot: Int, newBucket: Long) {
+        var bucket = currentBucket[slot]
+        var observation = currentCount[slot].toDouble()
+        val gap = newBucket - bucket
+
+        // Tras una inactividad larga sólo se reproduce la última semana de buckets vacíos
+        if (gap > MAX_CATCH_UP_BUCKETS) {
+            update(slot, bucket, observation)
+            bucket = newBucket - MAX_CATCH_UP_BUCKETS
+            observation = 0.0
+        }
+
+        while (bucket < newBucket) {
+            update(slot, bucket, observation)
+            observation = 0.0
+            bucket++
+        }
+        currentBucket[slot] = newBucket
+    }
+
+    private fun update(slot: Int, bucket: Long, observation: Double) {
+        val seasonIndex = slot * SEASON_LENGTH + (bucket % SEASON_LENGTH).toInt()
+
+        if (observedBuckets[slot] == 0) {
+            level[slot] = observation
+        } else {
+            val previousLevel = level[slot]
+            val newLevel = alpha * (observation - seasonal[seasonIndex]) + (1 - alpha) * (previousLevel + trend[slot])
+            trend[slot] = beta * (newLevel - previousLevel) + (1 - beta) * trend[slot]
+            level[slot] = newLevel
+        }
+        seasonal[seasonIndex] = gamma * (observation - level[slot]) + (1 - gamma) * seasonal[seasonIndex]
+        observedBuckets[slot]++
+    }
+
+    /**
+     * Suma en forma cerrada de nivel + k·tendencia + estacionalidad para k = 1..H
+     */
+    private fun forecastSlot(slot: Int, horizonMs: Long, nowBucket: Long): Double {
+        val horizon = max(1L, (horizonMs + BUCKET_MS - 1) / BUCKET_MS)
+        // Los buckets transcurridos sin eventos aún no se han cerrado; se proyecta desde el último
+        val offset = (nowBucket - currentBucket[slot]).coerceAtLeast(0L)
+        val base = slot * SEASON_LENGTH
+
+        val levelPart = horizon * level[slot]
+        val trendPart = trend[slot] * (horizon * (2 * offset + horizon + 1) / 2.0)
+
+        var seasonSum = 0.0
+        for (h in 0 until SEASON_LENGTH) seasonSum += seasonal[base + h]
+        val fullCycles = horizon / SEASON_LENGTH
+        val remainder = (horizon % SEASON_LENGTH).toInt()
+        var seasonalPart = fullCycles * seasonSum
+        var index = ((currentBucket[slot] + offset + 1) % SEASON_LENGTH).toInt()
+        for (k in 0 until remainder) {
+            seasonalPart += seasonal[base + index]
+            index = if (index == SEASON_LENGTH - 1) 0 else index + 1
+        }
+
+        return max(0.0, levelPart + trendPart + seasonalPart)
+    }
+
+    private fun seriesKeyOf(type: Int, sectorId: Int, regionId: Int): Long =
+        (type.toLong() shl 40) or (sectorId.toLong() shl 20) or regionId.toLong()
+
+    private fun ensureCapacity(required: Int) {
+        if (required <= seriesKey.size) return
+        val newSize = maxOf(required, seriesKey.size * 2)
+        seriesKey = seriesKey.copyOf(newSize)
+        level = level.copyOf(newSize)
+        trend = trend.copyOf(newSize)
+        seasonal = seasonal.copyOf(newSize * SEASON_LENGTH)
+        currentBucket = currentBucket.copyOf(newSize)
+        currentCount = currentCount.copyOf(newSize)
+        observedBuckets = observedBuckets.copyOf(newSize)
+    }
+
+    /**
+     * Diccionario acotado de sectores o regiones; el id 0 agrupa lo desconocido
+     */
+    private class Dictionary {
+        private val ids = HashMap<String, Int>()
+        private val names = ArrayList<String>()
+
+        init {
+            clear()
+        }
+
+        fun idOf(name: String?, maxSize: Int): Int {
+            val normalized = name?.trim()?.lowercase()?.takeIf { it.isNotEmpty() } ?: return 0
+            ids[normalized]?.let { return it }
+            if (names.size >= maxSize) return 0
+            names.add(normalized)
+            ids[normalized] = names.size - 1
+            return names.size - 1
+        }
+
+        fun lookup(name: String?): Int = name?.trim()?.lowercase()?.let { ids[it] } ?: 0
+
+        fun nameOf(id: Int): String = names.getOrElse(id) { UNKNOWN }
+
+        fun clear() {
+            ids.clear()
+            names.clear()
+            names.add(UNKNOWN)
+            ids[UNKNOWN] = 0
+        }
+
+        fun write(out: DataOutputStream) {
+            out.writeInt(names.size)
+            names.forEach { out.writeUTF(it) }
+        }
+
+        fun read(input: DataInputStream) {
+            clear()
+            val count = input.readInt()
+            for (i in 0 until count) {
+                val name = input.readUTF()
+                if (i == 0) continue // El id 0 siempre es UNKNOWN
+                names.add(name)
+                ids[name] = names.size - 1
+            }
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package com.guardianai.security.quantum_encryption
 
 import android.content.Context
+import com.guardianai.managers.TimingWheelExpiryService
 import kotlinx.coroutines.*
-import java.security.SecureRandom
+import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.SeekableByteChannel
+import java.nio.channels.WritableByteChannel
+import java.security.GeneralSecurityException
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
 import kotlin.math.*
 import kotlin.random.Random
 
@@ -27,13 +39,117 @@ class QuantumEncryptionEngine(private val context: Context) {
         val isStable: Boolean = true
     )
     
-    data class QuantumKey(
+    /**
+     * Clave cuántica en formato empaquetado
+     * - amplitudes: parte real e imaginaria intercaladas por qubit
+     * - bases y estados de Bell: 2 bits por elemento en arreglos long
+     * - keyMaterial: bits de clave medidos
+     * Las listas de objetos sólo se construyen bajo demanda para UI y depuración
+     */
+    class QuantumKey(
         val keyId: String,
-        val quantumBits: List<QuBit>,
-        val entanglementPairs: List<EntanglementPair>,
+        val length: Int,
+        val amplitudes: DoubleArray,
+        val bases: LongArray,
+        val bellStates: LongArray,
+        val entanglementStrength: Float,
+        val keyMaterial: ByteArray,
         val creationTime: Long,
         val expirationTime: Long,
         val securityLevel: QuantumSecurityLevel
+    ) {
+        val pairCount: Int
+            get() = length / 2
+        
+        fun basisAt(index: Int): QuantumBasis = QUANTUM_BASES[unpack2(bases, index)]
+        fun bellStateAt(pair: Int): BellState = BELL_STATES[unpack2(bellStates, pair)]
+        fun realAt(index: Int): Double = amplitudes[index * 2]
+        fun imaginaryAt(index: Int): Double = amplitudes[index * 2 + 1]
+        
+        val quantumBits: List<QuBit> by lazy {
+            List(length) { i ->
+                QuBit(
+                    state = ComplexNumber(realAt(i), imaginaryAt(i)),
+                    basis = basisAt(i),
+                    measurementHistory = emptyList(),
+                    entanglementPartner = if (i / 2 < pairCount) qubitId(i xor 1) else null
+                )
+            }
+        }
+        
+        val entanglementPairs: List<EntanglementPair> by lazy {
+            List(pairCount) { p ->
+                EntanglementPair(
+                    qubit1Id = qubitId(p * 2),
+                    qubit2Id = qubitId(p * 2 + 1),
+                    entanglementStrength = entanglementStrength,
+                    bellState = bellStateAt(p)
+                )
+            }
+        }
+        
+        private fun qubitId(index: Int): String = "${keyId}_QB_$index"
+        
+        // Uso acumulado para la política de rotación de claves de sesión
+        internal val messagesIssued = AtomicLong(0)
+        internal val bytesProtected = AtomicLong(0)
+        
+        @Volatile
+        var isDestroyed = false
+            private set
+        
+        @Volatile
+        private var pseudoRandomKey: ByteArray? = null
+        
+        /**
+         * Subclave de mensaje derivada por HKDF; el extract se calcula una sola vez por clave
+         */
+        fun deriveMessageKey(messageIndex: Long, length: Int = MESSAGE_KEY_LENGTH): ByteArray =
+            deriveKey(MESSAGE_KEY_INFO, messageIndex, length)
+        
+        /**
+         * Clave de firma de raíces de lotes de Merkle
+         */
+        fun deriveSigningKey(): ByteArray = deriveKey(SIGNATURE_INFO, 0, MESSAGE_KEY_LENGTH)
+        
+        /**
+         * Secreto de reanudación de túnel, separado de las subclaves de mensaje por su etiqueta
+         */
+        fun deriveResumptionSecret(counter: Long): ByteArray =
+            deriveKey(RESUMPTION_INFO, counter, MESSAGE_KEY_LENGTH)
+        
+        private fun deriveKey(label: ByteArray, index: Long, length: Int): ByteArray {
+            if (isDestroyed) throw QuantumDecryptionException("Clave cuántica destruida: $keyId")
+            val prk = pseudoRandomKey ?: Hkdf.extract(keyId.toByteArray(Charsets.UTF_8), keyMaterial).also {
+                pseudoRandomKey = it
+            }
+            val info = ByteArray(label.size + 8)
+            System.arraycopy(label, 0, info, 0, label.size)
+            for (i in 0 until 8) {
+                info[label.size + i] = (index ushr (56 - i * 8)).toByte()
+            }
+            return Hkdf.expand(prk, info, length)
+        }
+        
+        /**
+         * Pone a cero el material de clave; se invoca al expulsarla o caducar
+         */
+        fun destroy() {
+            isDestroyed = true
+            keyMaterial.fill(0)
+            amplitudes.fill(0.0)
+            pseudoRandomKey?.fill(0)
+            pseudoRandomKey = null
+        }
+    }
+    
+    /**
+     * Política de rotación de la clave de sesión: lo primero que se cumpla
+     */
+    data class SessionKeyPolicy(
+        val maxAgeMs: Long = 600000L,              // 10 minutos
+        val maxBytes: Long = 64L * 1024 * 1024,    // 64 MB protegidos
+        val maxMessages: Long = 100000L
     )
     
     data class QuBit(
@@ -74,10 +190,20 @@ class QuantumEncryptionEngine(private val context: Context) {
         val encryptedData: ByteArray,
         val quantumSignature: QuantumSignature,
         val keyId: String,
+        val messageIndex: Long,
         val encryptionTime: Long,
         val securityMetrics: SecurityMetrics
     )
     
+    data class StreamEncryptionResult(
+        val keyId: String,
+        val messageIndex: Long,
+        val plaintextBytes: Long,
+        val segments: Long,
+        val elapsedMs: Long,
+        val throughputMBps: Double
+    )
+    
     data class QuantumSignature(
         val signature: ByteArray,
         val quantumProof: QuantumProof,
@@ -97,9 +223,96 @@ class QuantumEncryptionEngine(private val context: Context) {
         val estimatedBreakingTime: Long // en años
     )
     
-    private var currentQuantumState = QuantumState()
-    private val activeKeys = mutableMapOf<String, QuantumKey>()
-    private val quantumTunnels = mutableMapOf<String, QuantumTunnel>()
+    companion object {
+        private val QUANTUM_BASES = QuantumBasis.values()
+        private val BELL_STATES = BellState.values()
+        private const val ANGLE_SCALE = 1.0 / 65536.0
+        private const val MESSAGE_KEY_LENGTH = 32
+        private const val PARALLEL_THRESHOLD = 4 * SegmentedAesGcm.DEFAULT_SEGMENT_SIZE
+        const val DEFAULT_STATE_SAMPLE_INTERVAL = 100L // 10 Hz
+        private val MESSAGE_KEY_INFO = "GuardianQE message key".toByteArray(Charsets.UTF_8)
+        private val RESUMPTION_INFO = "GuardianQE tunnel resumption".toByteArray(Charsets.UTF_8)
+        private val SIGNATURE_INFO = "GuardianQE batch signature".toByteArray(Charsets.UTF_8)
+        private val RESUMED_KEY_INFO = "GuardianQE resumed tunnel key".toByteArray(Charsets.UTF_8)
+        private const val RESUMPTION_NONCE_LENGTH = 32
+        private const val BATCH_SIGNATURE_LIFETIME = 30L * 24 * 3600000 // 30 días verificables
+        private const val MAX_ACTIVE_TUNNELS = 128
+        
+        private fun unpack2(words: LongArray, index: Int): Int =
+            ((words[index ushr 5] ushr ((index and 31) * 2)) and 3L).toInt()
+        
+        private fun pack2(words: LongArray, index: Int, value: Int) {
+            val shift = (index and 31) * 2
+            val word = index ushr 5
+            words[word] = (words[word] and (3L shl shift).inv()) or (value.toLong() shl shift)
+        }
+    }
+    
+    @Volatile private var currentQuantumState = QuantumState()
+    private val stateScope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    
+    /**
+     * Intervalo de muestreo del estado cuántico mientras haya suscriptores
+     */
+    @Volatile var quantumStateSampleIntervalMs = DEFAULT_STATE_SAMPLE_INTERVAL
+    
+    /**
+     * Estado cuántico compartido: sólo se mide mientras haya colectores y
+     * el muestreo se detiene al cancelarse la última suscripción
+     */
+    val quantumState: StateFlow<QuantumState> = flow {
+        while (true) {
+            val newState = measureQuantumState()
+            
+            if (hasStateChanged(currentQuantumState, newState)) {
+                currentQuantumState = newState
+                
+                // Ajustar parámetros si es necesario
+                if (newState.coherence < 0.5f) {
+                    recalibrateQuantumSystem()
+                }
+            }
+            emit(currentQuantumState)
+            
+            delay(quantumStateSampleIntervalMs)
+        }
+    }.stateIn(stateScope, SharingStarted.WhileSubscribed(), currentQuantumState)
+    private val activeKeys = QuantumKeyStore(QuantumKeyStore.DEFAULT_MAX_KEYS, TimingWheelExpiryService.shared)
+    
+    // Clave de sesión para mensajes sin keyId explícito
+    private val sessionKeyPolicy = SessionKeyPolicy()
+    private val sessionKeyMutex = Mutex()
+    @Volatile private var sessionKey: QuantumKey? = null
+    
+    private val segmentedCipher = SegmentedAesGcm()
+    
+    /**
+     * Reparte los segmentos de cargas grandes entre núcleos; false fuerza un solo hilo
+     */
+    @Volatile var parallelEncryptionEnabled = true
+    
+    // Túneles activos acotados; los más antiguos salen primero
+    private val quantumTunnels = object : LinkedHashMap<String, QuantumTunnel>(MAX_ACTIVE_TUNNELS * 2, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, QuantumTunnel>): Boolean {
+            if (size <= MAX_ACTIVE_TUNNELS) return false
+            releaseTunnelKeys(eldest.value)
+            return true
+        }
+    }
+    private val tunnelSessions = TunnelSessionCache(onDiscard = { tunnel -> activeKeys.release(tunnel.localKey) })
+    
+    // Claves de firma de raíces por keyId: la verificación no depende de que la clave de sesión
+    // siga en el almacén tras rotar o ser expulsada. Se ponen a cero al vencer sus firmas
+    private val rootSigningKeys = ConcurrentHashMap<String, ByteArray>()
+    
+    // Firma por lotes para telemetría y evidencias de alto volumen
+    @Volatile private var batchSigner = createBatchSigner(
+        MerkleBatchSigner.DEFAULT_MAX_BATCH_SIZE,
+        MerkleBatchSigner.DEFAULT_MAX_DELAY
+    )
+    
+    // Las métricas sólo dependen del nivel de seguridad de la clave
+    private val securityMetricsCache = ConcurrentHashMap<QuantumSecurityLevel, SecurityMetrics>()
     
     /**
      * Inicializa el motor de encriptación cuántica
@@ -117,40 +330,47 @@ class QuantumEncryptionEngine(private val context: Context) {
     suspend fun generateQuantumKey(
         length: Int = 256,
         securityLevel: QuantumSecurityLevel = QuantumSecurityLevel.HIGH
+    ): QuantumKey = createQuantumKey(length, securityLevel, pinned = false)
+    
+    /**
+     * Genera y registra la clave; pinned = true la entrega ya fijada para que no se expulse antes de usarla
+     */
+    private suspend fun createQuantumKey(
+        length: Int = 256,
+        securityLevel: QuantumSecurityLevel,
+        pinned: Boolean
     ): QuantumKey {
         
         val keyId = generateKeyId()
-        val quantumBits = mutableListOf<QuBit>()
-        val entanglementPairs = mutableListOf<EntanglementPair>()
+        val amplitudes = DoubleArray(length * 2)
+        val bases = LongArray((length + 31) / 32)
+        val bellStates = LongArray((length / 2 + 31) / 32)
         
         // Generar qubits usando superposición cuántica
-        for (i in 0 until length) {
-            val qubit = generateSuperpositionQubit()
-            quantumBits.add(qubit)
-        }
+        generateSuperpositionQubits(length, amplitudes, bases)
         
         // Crear pares entrelazados para mayor seguridad
-        for (i in 0 until length step 2) {
-            if (i + 1 < length) {
-                val pair = createEntanglementPair(
-                    quantumBits[i], 
-                    quantumBits[i + 1],
-                    securityLevel
-                )
-                entanglementPairs.add(pair)
-            }
+        for (pair in 0 until length / 2) {
+            pack2(bellStates, pair, generateBellState().ordinal)
         }
         
+        val keyMaterial = ByteArray((length + 7) / 8).also { quantumRandomGenerator.nextBytes(it) }
+        
+        val creationTime = System.currentTimeMillis()
         val quantumKey = QuantumKey(
             keyId = keyId,
-            quantumBits = quantumBits,
-            entanglementPairs = entanglementPairs,
-            creationTime = System.currentTimeMillis(),
-            expirationTime = System.currentTimeMillis() + getKeyLifetime(securityLevel),
+            length = length,
+            amplitudes = amplitudes,
+            bases = bases,
+            bellStates = bellStates,
+            entanglementStrength = getEntanglementStrength(securityLevel),
+            keyMaterial = keyMaterial,
+            creationTime = creationTime,
+            expirationTime = creationTime + getKeyLifetime(securityLevel),
             securityLevel = securityLevel
         )
         
-        activeKeys[keyId] = quantumKey
+        activeKeys.put(quantumKey, pinned)
         
         // Verificar integridad cuántica
         verifyQuantumIntegrity(quantumKey)
@@ -158,6 +378,33 @@ class QuantumEncryptionEngine(private val context: Context) {
         return quantumKey
     }
     
+    /**
+     * Clave de un túnel reanudado: material derivado del ticket sobre una copia del estado cuántico
+     * de la sesión, sin generar qubits ni pares de Bell. Se entrega fijada; null si la sesión ya no está viva
+     */
+    private fun resumeQuantumKey(template: QuantumKey, keyMaterial: ByteArray): QuantumKey? {
+        if (!activeKeys.pin(template)) return null
+        val quantumKey = try {
+            val creationTime = System.currentTimeMillis()
+            QuantumKey(
+                keyId = generateKeyId(),
+                length = template.length,
+                amplitudes = template.amplitudes.copyOf(),
+                bases = template.bases.copyOf(),
+                bellStates = template.bellStates.copyOf(),
+                entanglementStrength = template.entanglementStrength,
+                keyMaterial = keyMaterial,
+                creationTime = creationTime,
+                expirationTime = creationTime + getKeyLifetime(template.securityLevel),
+                securityLevel = template.securityLevel
+            )
+        } finally {
+            activeKeys.release(template)
+        }
+        activeKeys.put(quantumKey, pinned = true)
+        return quantumKey
+    }
+    
     /**
      * Encripta datos usando criptografía cuántica
      */
@@ -168,34 +415,47 @@ class QuantumEncryptionEngine(private val context: Context) {
         
         val startTime = System.currentTimeMillis()
         
-        // Obtener o generar clave cuántica
-        val quantumKey = keyId?.let { activeKeys[it] } 
-            ?: generateQuantumKey(securityLevel = QuantumSecurityLevel.HIGH)
-        
-        // Preparar datos para encriptación cuántica
-        val quantumData = prepareQuantumData(data)
-        
-        // Aplicar transformaciones cuánticas
-        val transformedData = applyQuantumTransformations(quantumData, quantumKey)
-        
-        // Encriptación híbrida (cuántica + post-cuántica)
-        val encryptedData = hybridQuantumEncryption(transformedData, quantumKey)
-        
-        // Generar firma cuántica
-        val quantumSignature = generateQuantumSignature(encryptedData, quantumKey)
-        
-        // Calcular métricas de seguridad
-        val securityMetrics = calculateSecurityMetrics(quantumKey, data.size)
-        
-        val encryptionTime = System.currentTimeMillis() - startTime
+        // Obtener la clave indicada o la clave de sesión vigente, fijada mientras se usa
+        val quantumKey = keyId?.let { activeKeys.acquire(it) } 
+            ?: acquireSessionKey(data.size)
         
-        return QuantumEncryptionResult(
-            encryptedData = encryptedData,
-            quantumSignature = quantumSignature,
-            keyId = quantumKey.keyId,
-            encryptionTime = encryptionTime,
-            securityMetrics = securityMetrics
-        )
+        try {
+            // Subclave por mensaje derivada por HKDF, sin generar una clave cuántica nueva
+            val messageIndex = quantumKey.messagesIssued.getAndIncrement()
+            quantumKey.bytesProtected.addAndGet(data.size.toLong())
+            val messageKey = quantumKey.deriveMessageKey(messageIndex)
+            
+            // Preparar datos para encriptación cuántica
+            val quantumData = prepareQuantumData(data)
+            
+            // Aplicar transformaciones cuánticas
+            val transformedData = applyQuantumTransformations(quantumData, quantumKey)
+            
+            // Encriptación híbrida (cuántica + post-cuántica)
+            val encryptedData = hybridQuantumEncryption(transformedData, messageKey)
+            messageKey.fill(0)
+            
+            // Generar firma cuántica
+            val quantumSignature = generateQuantumSignature(encryptedData, quantumKey)
+            
+            // Calcular métricas de seguridad
+            val securityMetrics = securityMetricsCache.getOrPut(quantumKey.securityLevel) {
+                calculateSecurityMetrics(quantumKey, data.size)
+            }
+            
+            val encryptionTime = System.currentTimeMillis() - startTime
+            
+            return QuantumEncryptionResult(
+                encryptedData = encryptedData,
+                quantumSignature = quantumSignature,
+                keyId = quantumKey.keyId,
+                messageIndex = messageIndex,
+                encryptionTime = encryptionTime,
+                securityMetrics = securityMetrics
+            )
+        } finally {
+            activeKeys.release(quantumKey)
+        }
     }
     
     /**
@@ -204,30 +464,163 @@ class QuantumEncryptionEngine(private val context: Context) {
     suspend fun quantumDecrypt(
         encryptedData: ByteArray,
         keyId: String,
-        quantumSignature: QuantumSignature
+        quantumSignature: QuantumSignature,
+        messageIndex: Long = 0
     ): ByteArray {
         
-        val quantumKey = activeKeys[keyId] 
-            ?: throw QuantumDecryptionException("Clave cuántica no encontrada: $keyId")
+        val quantumKey = requireKey(keyId)
         
-        // Verificar firma cuántica
-        if (!verifyQuantumSignature(encryptedData, quantumSignature, quantumKey)) {
-            throw QuantumDecryptionException("Firma cuántica inválida")
+        try {
+            // Verificar firma cuántica
+            if (!verifyQuantumSignature(encryptedData, quantumSignature, quantumKey)) {
+                throw QuantumDecryptionException("Firma cuántica inválida")
+            }
+            
+            // Verificar integridad del entrelazamiento
+            if (!verifyEntanglementIntegrity(quantumKey)) {
+                throw QuantumDecryptionException("Integridad del entrelazamiento comprometida")
+            }
+            
+            // Desencriptación híbrida con la subclave del mensaje
+            val messageKey = quantumKey.deriveMessageKey(messageIndex)
+            val transformedData = hybridQuantumDecryption(encryptedData, messageKey)
+            messageKey.fill(0)
+            
+            // Aplicar transformaciones cuánticas inversas
+            val quantumData = applyInverseQuantumTransformations(transformedData, quantumKey)
+            
+            // Extraer datos originales
+            return extractOriginalData(quantumData)
+        } finally {
+            activeKeys.release(quantumKey)
         }
+    }
+    
+    /**
+     * Cifra un flujo de tamaño arbitrario en memoria constante con AES-GCM por segmentos
+     */
+    suspend fun encryptStream(
+        source: ReadableByteChannel,
+        sink: WritableByteChannel,
+        keyId: String? = null
+    ): StreamEncryptionResult = withContext(Dispatchers.IO) {
+        val quantumKey = keyId?.let { activeKeys.acquire(it) } ?: acquireSessionKey(0)
+        val messageIndex = quantumKey.messagesIssued.getAndIncrement()
+        val messageKey = usingKey(quantumKey) { it.deriveMessageKey(messageIndex) }
         
-        // Verificar integridad del entrelazamiento
-        if (!verifyEntanglementIntegrity(quantumKey)) {
-            throw QuantumDecryptionException("Integridad del entrelazamiento comprometida")
+        try {
+            val stats = if (parallelEncryptionEnabled) {
+                segmentedCipher.encryptParallel(messageKey, source, sink)
+            } else {
+                segmentedCipher.encrypt(messageKey, source, sink)
+            }
+            quantumKey.bytesProtected.addAndGet(stats.plaintextBytes)
+            toStreamResult(quantumKey.keyId, messageIndex, stats)
+        } finally {
+            messageKey.fill(0)
         }
+    }
+    
+    /**
+     * Descifra y autentica un flujo completo, incluido su final
+     */
+    suspend fun decryptStream(
+        source: ReadableByteChannel,
+        sink: WritableByteChannel,
+        keyId: String,
+        messageIndex: Long
+    ): StreamEncryptionResult = withContext(Dispatchers.IO) {
+        val messageKey = usingKey(requireKey(keyId)) { it.deriveMessageKey(messageIndex) }
+        try {
+            val stats = if (parallelEncryptionEnabled) {
+                segmentedCipher.decryptParallel(messageKey, source, sink)
+            } else {
+                segmentedCipher.decrypt(messageKey, source, sink)
+            }
+            toStreamResult(keyId, messageIndex, stats)
+        } catch (e: GeneralSecurityException) {
+            throw QuantumDecryptionException("Flujo cifrado inválido: ${e.message}")
+        } finally {
+            messageKey.fill(0)
+        }
+    }
+    
+    /**
+     * Descifra un único segmento de un flujo cifrado (acceso aleatorio)
+     */
+    suspend fun decryptStreamSegment(
+        channel: SeekableByteChannel,
+        keyId: String,
+        messageIndex: Long,
+        segmentIndex: Long
+    ): ByteArray = withContext(Dispatchers.IO) {
+        val messageKey = usingKey(requireKey(keyId)) { it.deriveMessageKey(messageIndex) }
+        try {
+            segmentedCipher.decryptSegment(messageKey, channel, segmentIndex)
+        } catch (e: GeneralSecurityException) {
+            throw QuantumDecryptionException("Segmento $segmentIndex inválido: ${e.message}")
+        } finally {
+            messageKey.fill(0)
+        }
+    }
+    
+    /**
+     * Bytes servidos y latencia de resiembra del servicio de entropía
+     */
+    fun getEntropyStats(): EntropyPool.EntropyStats = quantumRandomGenerator.getStats()
+    
+    /**
+     * Clave fijada para el llamador; debe liberarse con activeKeys.release
+     */
+    private fun requireKey(keyId: String): QuantumKey =
+        activeKeys.acquire(keyId) ?: throw QuantumDecryptionException("Clave cuántica no encontrada: $keyId")
+    
+    private inline fun <T> usingKey(key: QuantumKey, block: (QuantumKey) -> T): T =
+        try {
+            block(key)
+        } finally {
+            activeKeys.release(key)
+        }
+    
+    private fun toStreamResult(keyId: String, messageIndex: Long, stats: SegmentedAesGcm.StreamStats) =
+        StreamEncryptionResult(
+            keyId = keyId,
+            messageIndex = messageIndex,
+            plaintextBytes = stats.plaintextBytes,
+            segments = stats.segments,
+            elapsedMs = stats.elapsedMs,
+            throughputMBps = stats.throughputMBps
+        )
+    
+    /**
+     * Devuelve la clave de sesión fijada para el llamador, rotándola por antigüedad, volumen o número de mensajes
+     * La clave vigente conserva además su propia fijación hasta que se rota
+     */
+    private suspend fun acquireSessionKey(messageSize: Int): QuantumKey {
+        sessionKey?.let { if (!needsRotation(it, messageSize) && activeKeys.pin(it)) return it }
         
-        // Desencriptación híbrida
-        val transformedData = hybridQuantumDecryption(encryptedData, quantumKey)
-        
-        // Aplicar transformaciones cuánticas inversas
-        val quantumData = applyInverseQuantumTransformations(transformedData, quantumKey)
-        
-        // Extraer datos originales
-        return extractOriginalData(quantumData)
+        return sessionKeyMutex.withLock {
+            sessionKey?.takeIf { !needsRotation(it, messageSize) && activeKeys.pin(it) }
+                ?: rotateSessionKey()
+        }
+    }
+    
+    private suspend fun rotateSessionKey(): QuantumKey {
+        val previous = sessionKey
+        val key = createQuantumKey(securityLevel = QuantumSecurityLevel.HIGH, pinned = true)
+        activeKeys.pin(key) // Una fijación como clave vigente y otra para el llamador
+        sessionKey = key
+        previous?.let { activeKeys.release(it) }
+        return key
+    }
+    
+    private fun needsRotation(key: QuantumKey, messageSize: Int): Boolean {
+        val now = System.currentTimeMillis()
+        return key.isDestroyed ||
+            now - key.creationTime >= sessionKeyPolicy.maxAgeMs ||
+            now >= key.expirationTime ||
+            key.bytesProtected.get() + messageSize > sessionKeyPolicy.maxBytes ||
+            key.messagesIssued.get() >= sessionKeyPolicy.maxMessages
     }
     
     /**
@@ -235,112 +628,239 @@ class QuantumEncryptionEngine(private val context: Context) {
      */
     suspend fun establishQuantumTunnel(
         remoteEndpoint: String,
-        securityLevel: QuantumSecurityLevel = QuantumSecurityLevel.HIGH
+        securityLevel: QuantumSecurityLevel = QuantumSecurityLevel.HIGH,
+        allowResumption: Boolean = true
     ): QuantumTunnel {
         
+        val startTime = System.nanoTime()
         val tunnelId = generateTunnelId()
         
-        // Generar par de claves entrelazadas
-        val localKey = generateQuantumKey(securityLevel = securityLevel)
-        val remoteKey = generateEntangledKey(localKey)
-        
-        // Establecer protocolo de distribución cuántica de claves
-        val qkdProtocol = establishQKDProtocol(remoteEndpoint, localKey, remoteKey)
-        
-        // Crear túnel cuántico
-        val tunnel = QuantumTunnel(
-            tunnelId = tunnelId,
-            localEndpoint = getLocalEndpoint(),
-            remoteEndpoint = remoteEndpoint,
-            localKey = localKey,
-            remoteKey = remoteKey,
-            qkdProtocol = qkdProtocol,
-            establishedTime = System.currentTimeMillis(),
-            securityLevel = securityLevel
-        )
+        // Reconexión: reanudar con el ticket vigente sin generar claves ni ejecutar el protocolo QKD.
+        // Las claves del túnel reanudado son nuevas, derivadas del secreto del ticket y un nonce propio;
+        // si la sesión ya no está viva se cae al handshake completo
+        if (allowResumption) {
+            tunnelSessions.lookup(remoteEndpoint, securityLevel)?.let { (ticket, session) ->
+                val nonce = ByteArray(RESUMPTION_NONCE_LENGTH)
+                quantumRandomGenerator.nextBytes(nonce)
+                val keyMaterial = deriveResumedKeyMaterial(ticket.resumptionSecret, nonce, session.localKey.length)
+                ticket.resumptionSecret.fill(0)
+                
+                val localKey = resumeQuantumKey(session.localKey, keyMaterial)
+                if (localKey == null) {
+                    keyMaterial.fill(0)
+                    tunnelSessions.invalidate(remoteEndpoint)
+                } else {
+                    try {
+                        // El par deriva la misma clave del ticket y el nonce: no hay par entrelazado que generar
+                        val tunnel = session.copy(
+                            tunnelId = tunnelId,
+                            localKey = localKey,
+                            remoteKey = localKey,
+                            establishedTime = System.currentTimeMillis(),
+                            resumedFromTicket = ticket.ticketId,
+                            resumptionNonce = nonce
+                        )
+                        if (registerTunnel(tunnel)) {
+                            tunnelSessions.recordHandshake(resumed = true, elapsedNs = System.nanoTime() - startTime)
+                            return tunnel
+                        }
+                    } finally {
+                        activeKeys.release(localKey)
+                    }
+                }
+            }
+        }
         
-        quantumTunnels[tunnelId] = tunnel
+        // Generar par de claves entrelazadas; la clave local queda fijada durante el handshake
+        val localKey = createQuantumKey(securityLevel = securityLevel, pinned = true)
+        try {
+            val remoteKey = generateEntangledKey(localKey)
+            
+            // Establecer protocolo de distribución cuántica de claves
+            val qkdProtocol = establishQKDProtocol(remoteEndpoint, localKey, remoteKey)
+            
+            // Crear túnel cuántico
+            val tunnel = QuantumTunnel(
+                tunnelId = tunnelId,
+                localEndpoint = getLocalEndpoint(),
+                remoteEndpoint = remoteEndpoint,
+                localKey = localKey,
+                remoteKey = remoteKey,
+                qkdProtocol = qkdProtocol,
+                establishedTime = System.currentTimeMillis(),
+                securityLevel = securityLevel
+            )
+            
+            if (!registerTunnel(tunnel)) {
+                throw QuantumDecryptionException("Clave remota del túnel expulsada durante el handshake")
+            }
+            // La caché mantiene fijada la clave local: las reanudaciones copian su estado cuántico
+            if (activeKeys.pin(localKey)) {
+                tunnelSessions.store(remoteEndpoint, tunnel, localKey.deriveResumptionSecret(localKey.messagesIssued.getAndIncrement()))
+            }
+            tunnelSessions.recordHandshake(resumed = false, elapsedNs = System.nanoTime() - startTime)
+            
+            return tunnel
+        } finally {
+            activeKeys.release(localKey)
+        }
+    }
+    
+    /**
+     * Material de clave de un túnel reanudado: HKDF del secreto del ticket con el nonce como sal,
+     * de modo que cada reanudación obtiene claves distintas de las del handshake y entre sí
+     */
+    private fun deriveResumedKeyMaterial(resumptionSecret: ByteArray, nonce: ByteArray, length: Int): ByteArray {
+        val prk = Hkdf.extract(nonce, resumptionSecret)
+        val keyMaterial = Hkdf.expand(prk, RESUMED_KEY_INFO, (length + 7) / 8)
+        prk.fill(0)
+        return keyMaterial
+    }
+    
+    /**
+     * Firma el mensaje dentro de un lote de Merkle: sólo se firma la raíz y el
+     * mensaje recibe su prueba de inclusión
+     */
+    suspend fun signBatched(data: ByteArray): MerkleBatchSigner.BatchSignature = batchSigner.sign(data)
+    
+    /**
+     * Verifica un mensaje individual de un lote en O(log n)
+     */
+    fun verifyBatchedSignature(data: ByteArray, signature: MerkleBatchSigner.BatchSignature): Boolean {
+        val root = MerkleBatchSigner.computeRoot(
+            MerkleBatchSigner.leafHash(data),
+            signature.leafIndex,
+            signature.batchSize,
+            signature.proof
+        ) ?: return false
+        if (!MessageDigest.isEqual(root, signature.root)) return false
+        
+        val signingKey = rootSigningKeys[signature.keyId] ?: return false
+        return MessageDigest.isEqual(signRootWith(signingKey, root), signature.rootSignature)
+    }
+    
+    /**
+     * Ajusta el compromiso latencia/rendimiento de la firma por lotes
+     */
+    fun configureBatchSigning(maxBatchSize: Int, maxDelayMs: Long) {
+        val previous = batchSigner
+        batchSigner = createBatchSigner(maxBatchSize, maxDelayMs)
+        previous.close()
+    }
+    
+    fun getBatchSigningStats(): MerkleBatchSigner.BatchStats = batchSigner.getStats()
+    
+    private fun createBatchSigner(maxBatchSize: Int, maxDelayMs: Long) =
+        MerkleBatchSigner(maxBatchSize, maxDelayMs) { root ->
+            val key = acquireSessionKey(0)
+            val signingKey = usingKey(key) { rootSigningKey(it) }
+            MerkleBatchSigner.SignedRoot(key.keyId, signRootWith(signingKey, root))
+        }
+    
+    /**
+     * Clave de firma de raíces de la clave de sesión, retenida hasta que vencen las firmas hechas con ella
+     */
+    private fun rootSigningKey(key: QuantumKey): ByteArray {
+        rootSigningKeys[key.keyId]?.let { return it }
+        
+        val derived = key.deriveSigningKey()
+        val existing = rootSigningKeys.putIfAbsent(key.keyId, derived)
+        if (existing != null) {
+            derived.fill(0)
+            return existing
+        }
+        TimingWheelExpiryService.shared.scheduleAt(key.expirationTime + BATCH_SIGNATURE_LIFETIME) {
+            rootSigningKeys.remove(key.keyId)?.fill(0)
+        }
+        return derived
+    }
+    
+    private fun signRootWith(signingKey: ByteArray, root: ByteArray): ByteArray {
+        val mac = Mac.getInstance("HmacSHA256")
+        mac.init(SecretKeySpec(signingKey, "HmacSHA256"))
+        return mac.doFinal(root)
+    }
+    
+    /**
+     * Descarta el ticket del endpoint; la siguiente conexión hará el handshake completo
+     */
+    fun invalidateTunnelSession(remoteEndpoint: String) {
+        tunnelSessions.invalidate(remoteEndpoint)
+    }
+    
+    /**
+     * Reanudaciones frente a handshakes completos y su latencia media
+     */
+    fun getTunnelSessionStats(): TunnelSessionCache.TunnelSessionStats = tunnelSessions.getStats()
+    
+    /**
+     * Registra el túnel fijando sus claves mientras siga activo; false si alguna ya salió del almacén
+     */
+    private fun registerTunnel(tunnel: QuantumTunnel): Boolean {
+        if (!activeKeys.pin(tunnel.localKey)) return false
+        if (tunnel.remoteKey !== tunnel.localKey && !activeKeys.pin(tunnel.remoteKey)) {
+            activeKeys.release(tunnel.localKey)
+            return false
+        }
+        synchronized(quantumTunnels) {
+            quantumTunnels[tunnel.tunnelId] = tunnel
+        }
         
         // Iniciar monitoreo de integridad del túnel
         startTunnelIntegrityMonitoring(tunnel)
-        
-        return tunnel
+        return true
+    }
+    
+    private fun releaseTunnelKeys(tunnel: QuantumTunnel) {
+        activeKeys.release(tunnel.localKey)
+        if (tunnel.remoteKey !== tunnel.localKey) activeKeys.release(tunnel.remoteKey)
     }
     
     /**
      * Monitorea el estado cuántico en tiempo real
      */
-    fun startQuantumStateMonitoring(callback: (QuantumState) -> Unit) {
-        CoroutineScope(Dispatchers.IO).launch {
-            while (true) {
-                val newState = measureQuantumState()
-                
-                if (hasStateChanged(currentQuantumState, newState)) {
-                    currentQuantumState = newState
-                    callback(newState)
-                    
-                    // Ajustar parámetros si es necesario
-                    if (newState.coherence < 0.5f) {
-                        recalibrateQuantumSystem()
-                    }
-                }
-                
-                delay(100) // Monitoreo cada 100ms
-            }
+    fun startQuantumStateMonitoring(callback: (QuantumState) -> Unit): Job {
+        // Cancelar el Job devuelto libera la suscripción y, si era la última, detiene el muestreo
+        return stateScope.launch {
+            quantumState.drop(1).collect { callback(it) }
         }
     }
     
     /**
-     * Genera un qubit en superposición
+     * Detiene el muestreo y todas las suscripciones del motor
      */
-    private fun generateSuperpositionQubit(): QuBit {
-        val theta = quantumRandomGenerator.generateQuantumRandom() * PI
-        val phi = quantumRandomGenerator.generateQuantumRandom() * 2 * PI
-        
-        val alpha = ComplexNumber(cos(theta / 2), 0.0)
-        val beta = ComplexNumber(
-            sin(theta / 2) * cos(phi),
-            sin(theta / 2) * sin(phi)
-        )
-        
-        // Estado de superposición: α|0⟩ + β|1⟩
-        val state = ComplexNumber(
-            alpha.real + beta.real,
-            alpha.imaginary + beta.imaginary
-        )
-        
-        return QuBit(
-            state = state,
-            basis = QuantumBasis.COMPUTATIONAL,
-            measurementHistory = emptyList()
-        )
+    fun shutdown() {
+        stateScope.cancel()
     }
     
     /**
-     * Crea un par entrelazado de qubits
+     * Genera qubits en superposición directamente sobre el arreglo de amplitudes
+     * Un único bloque aleatorio aporta los ángulos θ y φ de 16 bits de cada qubit
      */
-    private fun createEntanglementPair(
-        qubit1: QuBit,
-        qubit2: QuBit,
-        securityLevel: QuantumSecurityLevel
-    ): EntanglementPair {
+    private fun generateSuperpositionQubits(length: Int, amplitudes: DoubleArray, bases: LongArray) {
+        val random = ByteArray(length * 4)
+        quantumRandomGenerator.nextBytes(random)
         
-        val entanglementStrength = when (securityLevel) {
+        for (i in 0 until length) {
+            val offset = i * 4
+            val theta = (((random[offset].toInt() and 0xFF) shl 8) or (random[offset + 1].toInt() and 0xFF)) * ANGLE_SCALE * PI
+            val phi = (((random[offset + 2].toInt() and 0xFF) shl 8) or (random[offset + 3].toInt() and 0xFF)) * ANGLE_SCALE * 2 * PI
+            
+            // Estado de superposición: α|0⟩ + β|1⟩ con α = cos(θ/2), β = sin(θ/2)·e^{iφ}
+            val sinHalf = sin(theta / 2)
+            amplitudes[i * 2] = cos(theta / 2) + sinHalf * cos(phi)
+            amplitudes[i * 2 + 1] = sinHalf * sin(phi)
+            pack2(bases, i, QuantumBasis.COMPUTATIONAL.ordinal)
+        }
+    }
+    
+    private fun getEntanglementStrength(securityLevel: QuantumSecurityLevel): Float {
+        return when (securityLevel) {
             QuantumSecurityLevel.STANDARD -> 0.8f
             QuantumSecurityLevel.HIGH -> 0.9f
             QuantumSecurityLevel.ULTRA -> 0.95f
             QuantumSecurityLevel.QUANTUM_SUPREME -> 0.99f
         }
-        
-        // Aplicar operación de entrelazamiento (CNOT + Hadamard)
-        val bellState = generateBellState()
-        
-        return EntanglementPair(
-            qubit1Id = generateQubitId(),
-            qubit2Id = generateQubitId(),
-            entanglementStrength = entanglementStrength,
-            bellState = bellState
-        )
     }
     
     /**
@@ -445,7 +965,6 @@ class QuantumEncryptionEngine(private val context: Context) {
     
     private fun generateKeyId(): String = "QK_${System.currentTimeMillis()}_${Random.nextInt(1000, 9999)}"
     private fun generateTunnelId(): String = "QT_${System.currentTimeMillis()}_${Random.nextInt(1000, 9999)}"
-    private fun generateQubitId(): String = "QB_${System.currentTimeMillis()}_${Random.nextInt(100, 999)}"
     
     private fun getKeyLifetime(securityLevel: QuantumSecurityLevel): Long {
         return when (securityLevel) {
@@ -457,8 +976,27 @@ class QuantumEncryptionEngine(private val context: Context) {
     }
     
     private fun prepareQuantumData(data: ByteArray): ByteArray = data
-    private fun hybridQuantumEncryption(data: ByteArray, key: QuantumKey): ByteArray = data
-    private fun hybridQuantumDecryption(data: ByteArray, key: QuantumKey): ByteArray = data
+    
+    private suspend fun hybridQuantumEncryption(data: ByteArray, messageKey: ByteArray): ByteArray {
+        return if (parallelEncryptionEnabled && data.size >= PARALLEL_THRESHOLD) {
+            segmentedCipher.encryptParallel(messageKey, data)
+        } else {
+            segmentedCipher.encrypt(messageKey, data)
+        }
+    }
+    
+    private suspend fun hybridQuantumDecryption(data: ByteArray, messageKey: ByteArray): ByteArray {
+        return try {
+            if (parallelEncryptionEnabled && data.size >= PARALLEL_THRESHOLD) {
+                segmentedCipher.decryptParallel(messageKey, data)
+            } else {
+                segmentedCipher.decrypt(messageKey, data)
+            }
+        } catch (e: GeneralSecurityException) {
+            throw QuantumDecryptionException("Datos cifrados inválidos: ${e.message}")
+        }
+    }
+    
     private fun applyInverseQuantumTransformations(data: ByteArray, key: QuantumKey): ByteArray = data
     private fun extractOriginalData(data: ByteArray): ByteArray = data
     
@@ -499,7 +1037,9 @@ class QuantumEncryptionEngine(private val context: Context) {
         val remoteKey: QuantumKey,
         val qkdProtocol: QKDProtocol,
         val establishedTime: Long,
-        val securityLevel: QuantumSecurityLevel
+        val securityLevel: QuantumSecurityLevel,
+        val resumedFromTicket: String? = null,
+        val resumptionNonce: ByteArray? = null // Se presenta al par para que derive las mismas claves
     )
     
     class QKDProtocol
@@ -530,10 +1070,17 @@ class PostQuantumCryptography {
 /**
  * Generador de números aleatorios cuánticos
  */
-class QuantumRandomGenerator {
+class QuantumRandomGenerator(private val entropyPool: EntropyPool = EntropyPool.shared) {
+    
     fun generateQuantumRandom(): Double {
-        // Generar número aleatorio cuántico verdadero
-        return SecureRandom().nextDouble()
+        // Generar número aleatorio desde el DRBG del hilo actual
+        return entropyPool.nextDouble()
     }
+    
+    fun nextBytes(bytes: ByteArray) {
+        entropyPool.nextBytes(bytes)
+    }
+    
+    fun getStats(): EntropyPool.EntropyStats = entropyPool.getStats()
 }
 
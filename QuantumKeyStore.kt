@@ -0,0 +1,188 @@
+package com.guardianai.security.quantum_encryption
+
+import com.guardianai.managers.TimingWheelExpiryService
+import java.util.IdentityHashMap
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Almacén acotado de claves cuánticas activas
+ * - Capacidad máxima con expulsión LRU
+ * - Expiración por la rueda de tiempo compartida
+ * - Las claves en uso se fijan con un contador de portadores: no se expulsan y, si
+ *   caducan o se eliminan, su destrucción espera a que el último portador las libere
+ * - El material de toda clave expulsada, caducada o eliminada se pone a cero
+ */
+class QuantumKeyStore(
+    private val maxKeys: Int = DEFAULT_MAX_KEYS,
+    private val expiryService: TimingWheelExpiryService = TimingWheelExpiryService.shared
+) {
+
+    companion object {
+        const val DEFAULT_MAX_KEYS = 256
+    }
+
+    private class Entry(val key: QuantumEncryptionEngine.QuantumKey) {
+        var handle: TimingWheelExpiryService.ExpiryHandle? = null
+        var pins = 0
+    }
+
+    private val keys = LinkedHashMap<String, Entry>(maxKeys * 2, 0.75f, true)
+    // Claves ya fuera del almacén que algún portador sigue usando
+    private val retired = IdentityHashMap<QuantumEncryptionEngine.QuantumKey, Entry>()
+    private val lock = Any()
+
+    operator fun get(keyId: String): QuantumEncryptionEngine.QuantumKey? = synchronized(lock) {
+        keys[keyId]?.key
+    }
+
+    /**
+     * Inserta la clave; con pinned = true queda fijada para el llamador en la misma operación
+     */
+    fun put(key: QuantumEncryptionEngine.QuantumKey, pinned: Boolean = false) {
+        val entry = Entry(key)
+        if (pinned) entry.pins = 1
+        val discarded = ArrayList<Entry>(1)
+
+        synchronized(lock) {
+            keys.put(key.keyId, entry)?.let { previous ->
+                if (previous.key === key) {
+                    previous.handle?.cancel()
+                    entry.pins += previous.pins
+                } else {
+                    retire(previous, discarded)
+                }
+            }
+            evictOverflow(discarded)
+            entry.handle = expiryService.scheduleAt(key.expirationTime) { remove(key.keyId, key) }
+        }
+
+        discarded.forEach { discard(it) }
+    }
+
+    /**
+     * Busca y fija la clave; el llamador debe liberarla con release()
+     */
+    fun acquire(keyId: String): QuantumEncryptionEngine.QuantumKey? = synchronized(lock) {
+        keys[keyId]?.let { entry ->
+            entry.pins++
+            entry.key
+        }
+    }
+
+    /**
+     * Fija una clave ya conocida; false si salió del almacén y no debe usarse
+     */
+    fun pin(key: QuantumEncryptionEngine.QuantumKey): Boolean = synchronized(lock) {
+        val entry = keys[key.keyId]
+        if (entry?.key !== key) return false
+        entry.pins++
+        true
+    }
+
+    /**
+     * Suelta una fijación; la clave retirada se destruye al soltar la última
+     */
+    fun release(key: QuantumEncryptionEngine.QuantumKey) {
+        val entry = synchronized(lock) {
+            val live = keys[key.keyId]
+            if (live?.key === key) {
+                if (live.pins > 0) live.pins--
+                return
+            }
+            val entry = retired[key] ?: return
+            if (--entry.pins > 0) return
+            retired.remove(key)
+        } ?: return
+        discard(entry)
+    }
+
+    fun remove(keyId: String): Boolean {
+        val discarded = ArrayList<Entry>(1)
+        synchronized(lock) {
+            val entry = keys.remove(keyId) ?: return false
+            retire(entry, discarded)
+        }
+        discarded.forEach { discard(it) }
+        return true
+    }
+
+    val size: Int
+        get() = synchronized(lock) { keys.size }
+
+    private fun remove(keyId: String, key: QuantumEncryptionEngine.QuantumKey) {
+        val discarded = ArrayList<Entry>(1)
+        synchronized(lock) {
+            val current = keys[keyId]
+            if (current?.key !== key) return
+            keys.remove(keyId)
+            retire(current, discarded)
+        }
+        discarded.forEach { discard(it) }
+    }
+
+    /**
+     * Expulsa las menos usadas recientemente saltando las fijadas; si todas lo están,
+     * el almacén supera la capacidad hasta que se liberen. Se llama bajo el lock
+     */
+    private fun evictOverflow(discarded: MutableList<Entry>) {
+        val iterator = keys.values.iterator()
+        while (keys.size > maxKeys && iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.pins > 0) continue
+            iterator.remove()
+            retire(entry, discarded)
+        }
+    }
+
+    /**
+     * Saca la entrada del almacén; sólo se destruye ya si nadie la usa. Se llama bajo el lock
+     */
+    private fun retire(entry: Entry, discarded: MutableList<Entry>) {
+        entry.handle?.cancel()
+        if (entry.pins > 0) retired[entry.key] = entry else discarded.add(entry)
+    }
+
+    private fun discard(entry: Entry) {
+        entry.handle?.cancel()
+        entry.key.destroy()
+    }
+}
+
+/**
+ * Derivación de claves HKDF-SHA256 (RFC 5869)
+ */
+object Hkdf {
+
+    private const val HASH_LENGTH = 32
+    private val hmac = ThreadLocal.withInitial { Mac.getInstance("HmacSHA256") }
+
+    fun extract(salt: ByteArray, inputKeyMaterial: ByteArray): ByteArray {
+        val mac = hmac.get()
+        mac.init(SecretKeySpec(if (salt.isEmpty()) ByteArray(HASH_LENGTH) else salt, "HmacSHA256"))
+        return mac.doFinal(inputKeyMaterial)
+    }
+
+    fun expand(pseudoRandomKey: ByteArray, info: ByteArray, length: Int): ByteArray {
+        require(length <= 255 * HASH_LENGTH) { "Longitud HKDF excesiva: $length" }
+        val mac = hmac.get()
+        mac.init(SecretKeySpec(pseudoRandomKey, "HmacSHA256"))
+
+        val output = ByteArray(length)
+        var previous = ByteArray(0)
+        var offset = 0
+        var counter = 1
+        while (offset < length) {
+            mac.update(previous)
+            mac.update(info)
+            mac.update(counter.toByte())
+            previous = mac.doFinal()
+            val chunk = minOf(HASH_LENGTH, length - offset)
+            System.arraycopy(previous, 0, output, offset, chunk)
+            offset += chunk
+            counter++
+        }
+        previous.fill(0)
+        return output
+    }
+}
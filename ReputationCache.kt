@@ -0,0 +1,243 @@
+package com.guardianai.communication.real_time
+
+import kotlinx.coroutines.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caché acotada de reputación con admisión estilo W-TinyLFU
+ * - Ventana LRU pequeña para ráfagas nuevas y región principal LRU protegida
+ *   por un sketch de frecuencias: sólo entra quien es más frecuente que la víctima
+ * - Expiración por TTL, con TTL propio para resultados negativos (limpios)
+ * - Stale-while-revalidate: sirve el valor vencido mientras una única
+ *   recarga coalescida se ejecuta en segundo plano
+ */
+class ReputationCache<K : Any, V : Any>(
+    private val maximumSize: Int = DEFAULT_MAXIMUM_SIZE,
+    private val positiveTtlMs: Long = DEFAULT_POSITIVE_TTL,
+    private val negativeTtlMs: Long = DEFAULT_NEGATIVE_TTL,
+    private val staleWindowMs: Long = DEFAULT_STALE_WINDOW,
+    private val isNegative: (V) -> Boolean,
+    private val loader: suspend (K) -> V
+) {
+
+    companion object {
+        const val DEFAULT_MAXIMUM_SIZE = 10000
+        const val DEFAULT_POSITIVE_TTL = 3600000L  // 1 hora para resultados maliciosos
+        const val DEFAULT_NEGATIVE_TTL = 900000L   // 15 minutos para resultados limpios
+        const val DEFAULT_STALE_WINDOW = 3600000L  // Margen en el que se sirve el valor vencido
+    }
+
+    data class CacheStats(
+        val requests: Long,
+        val hits: Long,
+        val staleHits: Long,
+        val misses: Long,
+        val negativeHits: Long,
+        val loads: Long,
+        val loadFailures: Long,
+        val averageLoadMs: Double,
+        val latencySavedMs: Long,
+        val size: Int
+    ) {
+        val hitRatio: Double
+            get() = if (requests > 0) (hits + staleHits).toDouble() / requests else 0.0
+    }
+
+    private class Entry<V>(val value: V, val expiresAt: Long, val negative: Boolean)
+
+    private val windowSize = maxOf(1, maximumSize / 100)
+    private val mainSize = maxOf(1, maximumSize - windowSize)
+    private val window = LinkedHashMap<K, Entry<V>>(windowSize * 2, 0.75f, true)
+    private val main = LinkedHashMap<K, Entry<V>>(mainSize * 2, 0.75f, true)
+    private val sketch = FrequencySketch(maximumSize)
+    private val lock = Any()
+
+    private val inFlight = ConcurrentHashMap<K, Deferred<V>>()
+    private val refreshScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    private val requests = AtomicLong(0)
+    private val hits = AtomicLong(0)
+    private val staleHits = AtomicLong(0)
+    private val misses = AtomicLong(0)
+    private val negativeHits = AtomicLong(0)
+    private val loads = AtomicLong(0)
+    private val loadFailures = AtomicLong(0)
+    private val loadTimeNs = AtomicLong(0)
+
+    /**
+     * Obtiene el valor: fresco desde caché, vencido con recarga en segundo plano, o cargado
+     */
+    suspend fun get(key: K): V {
+        requests.incrementAndGet()
+        val now = System.currentTimeMillis()
+        val entry = synchronized(lock) {
+            sketch.increment(key)
+            window[key] ?: main[key]
+        }
+
+        if (entry != null) {
+            if (now < entry.expiresAt) {
+                hits.incrementAndGet()
+                if (entry.negative) negativeHits.incrementAndGet()
+                return entry.value
+            }
+            if (now < entry.expiresAt + staleWindowMs) {
+                staleHits.incrementAndGet()
+                refreshScope.launch {
+                    try {
+                        load(key)
+                    } catch (e: Exception) {
+                        // Se sigue sirviendo el valor vencido hasta la próxima solicitud
+                    }
+                }
+                return entry.value
+            }
+        }
+
+        misses.incrementAndGet()
+        return load(key)
+    }
+
+    fun invalidate(key: K) {
+        synchronized(lock) {
+            window.remove(key)
+            main.remove(key)
+        }
+    }
+
+    fun getStats(): CacheStats {
+        val loadCount = loads.get()
+        val averageLoadMs = if (loadCount > 0) loadTimeNs.get() / 1_000_000.0 / loadCount else 0.0
+        return CacheStats(
+            requests = requests.get(),
+            hits = hits.get(),
+            staleHits = staleHits.get(),
+            misses = misses.get(),
+            negativeHits = negativeHits.get(),
+            loads = loadCount,
+            loadFailures = loadFailures.get(),
+            averageLoadMs = averageLoadMs,
+            latencySavedMs = ((hits.get() + staleHits.get()) * averageLoadMs).toLong(),
+            size = synchronized(lock) { window.size + main.size }
+        )
+    }
+
+    /**
+     * Carga coalescida: solicitudes concurrentes de la misma clave comparten una sola consulta
+     */
+    private suspend fun load(key: K): V {
+        val deferred = inFlight.computeIfAbsent(key) {
+            refreshScope.async(start = CoroutineStart.LAZY) {
+                val start = System.nanoTime()
+                try {
+                    val value = loader(key)
+                    loads.incrementAndGet()
+                    loadTimeNs.addAndGet(System.nanoTime() - start)
+                    put(key, value)
+                    value
+                } catch (e: Exception) {
+                    loadFailures.incrementAndGet()
+                    throw e
+                } finally {
+                    inFlight.remove(key)
+                }
+            }
+        }
+        deferred.start()
+        return deferred.await()
+    }
+
+    private fun put(key: K, value: V) {
+        val now = System.currentTimeMillis()
+        val negative = isNegative(value)
+        val entry = Entry(value, now + if (negative) negativeTtlMs else positiveTtlMs, negative)
+
+        synchronized(lock) {
+            if (main.containsKey(key)) {
+                main[key] = entry
+                return
+            }
+            window[key] = entry
+            if (window.size <= windowSize) return
+
+            // El candidato expulsado de la ventana compite con la víctima de la región principal
+            val candidate = window.entries.iterator().next()
+            window.remove(candidate.key)
+
+            if (main.size < mainSize) {
+                main[candidate.key] = candidate.value
+                return
+            }
+
+            val victim = main.entries.iterator().next()
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                main.remove(victim.key)
+                main[candidate.key] = candidate.value
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch de 4 filas con contadores de 4 bits y envejecimiento periódico
+     */
+    private class FrequencySketch(maximumSize: Int) {
+        private val width = Integer.highestOneBit(maxOf(16, maximumSize) * 2)
+        private val table = LongArray(width) // 16 contadores de 4 bits por palabra
+        private val sampleSize = 10 * maxOf(16, maximumSize)
+        private var additions = 0
+
+        fun increment(key: Any) {
+            val hash = spread(key.hashCode())
+            var added = false
+            for (row in 0 until 4) {
+                added = incrementAt(indexOf(hash, row), counterShift(hash, row)) or added
+            }
+            if (added && ++additions >= sampleSize) reset()
+        }
+
+        fun frequency(key: Any): Int {
+            val hash = spread(key.hashCode())
+            var min = 15
+            for (row in 0 until 4) {
+                val index = indexOf(hash, row)
+                val counter = ((table[index] ushr counterShift(hash, row)) and 0xF).toInt()
+                if (counter < min) min = counter
+            }
+            return min
+        }
+
+        private fun incrementAt(index: Int, shift: Int): Boolean {
+            val counter = (table[index] ushr shift) and 0xF
+            if (counter == 0xFL) return false
+            table[index] += 1L shl shift
+            return true
+        }
+
+        private fun reset() {
+            // Divide todas las frecuencias a la mitad para olvidar la popularidad antigua
+            for (i in table.indices) {
+                table[i] = (table[i] ushr 1) and 0x7777777777777777L
+            }
+            additions /= 2
+        }
+
+        private fun indexOf(hash: Int, row: Int): Int {
+            var h = (hash + SEEDS[row]) * -0x61c88647
+            h += h ushr 16
+            return h and (width - 1)
+        }
+
+        private fun counterShift(value: Int, row: Int): Int = (((value ushr (row * 4)) and 3) * 16 + row * 4) and 63
+
+        private fun spread(x: Int): Int {
+            var h = x * -0x3361d2af
+            h = h xor (h ushr 17)
+            return h * 0x27d4eb2f
+        }
+
+        companion object {
+            private val SEEDS = intArrayOf(0x2f0b3a49, 0x6ac2a3b1, 0x1d8e4e27, 0x5c3b8f93)
+        }
+    }
+}
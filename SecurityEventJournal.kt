@@ -0,0 +1,713 @@
+package com.guardianai.managers
+
+import android.content.Context
+import android.util.Log
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.TreeMap
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.Inflater
+
+/**
+ * Diario persistente de sólo-anexado para eventos y alertas de seguridad
+ * Registros binarios compactos (longitud, CRC32, timestamp, tipo, carga) en segmentos de
+ * tamaño fijo. Anexar nunca bloquea: los registros se encolan y un único escritor los
+ * confirma por lotes con un solo fsync (group commit). Cada segmento lleva un índice
+ * disperso de bloques con la marca de agua de timestamp, así que la reproducción salta
+ * directamente al primer bloque útil. Al rotar, el segmento se comprime por bloques
+ * independientes para seguir siendo direccionable.
+ */
+class SecurityEventJournal(
+    private val directory: File,
+    private val segmentSize: Int = DEFAULT_SEGMENT_SIZE,
+    private val blockSize: Int = DEFAULT_BLOCK_SIZE,
+    private val maxSegments: Int = DEFAULT_MAX_SEGMENTS,
+    queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+    private val metrics: MetricsRegistry = MetricsRegistry.shared
+) {
+
+    companion object {
+        private const val TAG = "SecurityEventJournal"
+        const val DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024
+        const val DEFAULT_BLOCK_SIZE = 64 * 1024
+        const val DEFAULT_MAX_SEGMENTS = 32
+        const val DEFAULT_QUEUE_CAPACITY = 8192
+        const val MAX_PAYLOAD_BYTES = 64 * 1024
+        private const val MAX_BATCH_SIZE = 512
+        private const val SEGMENT_PREFIX = "journal_"
+        private const val LOG_SUFFIX = ".log"
+        private const val COMPRESSED_SUFFIX = ".z"
+        private const val INDEX_SUFFIX = ".idx"
+        private const val RECORD_HEADER_BYTES = 4 + 4 + 8 + 1 // longitud, CRC, timestamp, tipo
+        private const val CRC_OFFSET = 8 // El CRC cubre timestamp, tipo y carga
+        private const val INDEX_MAGIC = 0x474A4931 // "GJI1"
+        private const val DIRECTORY_NAME = "security_journal"
+
+        @Volatile
+        private var sharedInstance: SecurityEventJournal? = null
+
+        /**
+         * Diario único del proceso: dos instancias sobre el mismo directorio se pisarían
+         * las posiciones de escritura, la rotación, la compresión y la retención
+         */
+        fun shared(context: Context): SecurityEventJournal =
+            sharedInstance ?: synchronized(this) {
+                sharedInstance ?: SecurityEventJournal(File(context.applicationContext.filesDir, DIRECTORY_NAME))
+                    .also { sharedInstance = it }
+            }
+    }
+
+    class JournalRecord(val timestamp: Long, val kind: Int, val payload: ByteArray)
+
+    data class JournalStats(
+        val segments: Int,
+        val compressedSegments: Int,
+        val records: Long,
+        val rawBytes: Long,
+        val diskBytes: Long,
+        val appended: Long,
+        val dropped: Long,
+        val written: Long,
+        val commits: Long,
+        val corruptRecords: Long,
+        val fsyncP99Ms: Long
+    ) {
+        val averageBatchSize: Double
+            get() = if (commits > 0) written.toDouble() / commits else 0.0
+
+        val compressionRatio: Double
+            get() = if (diskBytes > 0) rawBytes.toDouble() / diskBytes else 1.0
+    }
+
+    /**
+     * Estado de un segmento; los campos sólo cambian bajo lock y tras confirmarse en disco
+     */
+    private class Segment(val sequence: Long) {
+        var length = 0L
+        var recordCount = 0
+        var maxTimestamp = Long.MIN_VALUE
+        var compressed = false
+        var compressedLength = 0L
+
+        // Índice disperso: por bloque, máximo timestamp anterior a él y offsets sin comprimir / comprimido
+        var blockWatermarks = LongArray(16)
+        var blockOffsets = LongArray(16)
+        var blockCompressedOffsets = LongArray(0)
+        var blockCount = 0
+
+        fun addBlock(watermark: Long, offset: Long) {
+            if (blockCount == blockOffsets.size) {
+                blockWatermarks = blockWatermarks.copyOf(blockCount * 2)
+                blockOffsets = blockOffsets.copyOf(blockCount * 2)
+            }
+            blockWatermarks[blockCount] = watermark
+            blockOffsets[blockCount] = offset
+            blockCount++
+        }
+
+        /**
+         * Último bloque cuyo contenido previo es todo anterior a from; las marcas de agua no decrecen
+         */
+        fun firstBlockFor(from: Long): Int {
+            var low = 0
+            var high = blockCount - 1
+            while (low < high) {
+                val mid = (low + high + 1) ushr 1
+                if (blockWatermarks[mid] < from) low = mid else high = mid - 1
+            }
+            return low
+        }
+    }
+
+    /**
+     * Copia de lectura de un segmento con su fichero ya abierto
+     */
+    private class SegmentView(
+        val file: RandomAccessFile,
+        val compressed: Boolean,
+        val offsets: LongArray,
+        val compressedOffsets: LongArray,
+        val length: Long,
+        val compressedLength: Long
+    )
+
+    private class Pending(val timestamp: Long, val kind: Int, val payload: ByteArray)
+
+    private val lock = Any()
+    private val segments = TreeMap<Long, Segment>()
+    private val queue = Channel<Pending>(queueCapacity)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val ready = CompletableDeferred<Unit>()
+    private val writerJob: Job
+
+    // Estado del escritor: sólo lo toca la corrutina escritora
+    private var active: Segment? = null
+    private var activeChannel: FileChannel? = null
+    private var buffer = ByteBuffer.allocate(blockSize)
+    private var stagedRecords = 0
+    private var stagedWatermark = Long.MIN_VALUE
+    private val stagedBlocks = ArrayList<Long>() // pares (marca de agua, offset)
+    private var lastBlockOffset = 0L
+    private val writeCrc = CRC32()
+
+    private val appended = metrics.counter("journal.appended")
+    private val dropped = metrics.counter("journal.dropped")
+    private val written = metrics.counter("journal.written")
+    private val commits = metrics.counter("journal.commits")
+    private val corrupt = metrics.counter("journal.corrupt_records")
+    private val bytesWritten = metrics.counter("journal.bytes_written")
+    private val fsyncTime = metrics.histogram("journal.fsync_ms")
+    private val batchSize = metrics.histogram("journal.batch_size", longArrayOf(1, 2, 4, 8, 16, 32, 64, 128, 256, 512))
+
+    init {
+        if (!directory.exists()) directory.mkdirs()
+        writerJob = scope.launch {
+            try {
+                recover()
+            } catch (e: Exception) {
+                Log.e(TAG, "Journal recovery failed", e)
+            } finally {
+                ready.complete(Unit)
+            }
+            runWriter()
+        }
+    }
+
+    /**
+     * Encola el registro sin bloquear; false si la cola está llena o la carga es demasiado grande
+     */
+    fun append(timestamp: Long, kind: Int, payload: ByteArray): Boolean {
+        if (payload.size > MAX_PAYLOAD_BYTES || !queue.trySend(Pending(timestamp, kind, payload)).isSuccess) {
+            dropped.increment()
+            return false
+        }
+        appended.increment()
+        return true
+    }
+
+    /**
+     * Reproduce en orden de escritura los registros confirmados con timestamp en [from, to].
+     * Omite los segmentos anteriores a from y, dentro de cada uno, salta al primer bloque útil.
+     */
+    suspend fun replay(
+        from: Long,
+        to: Long = Long.MAX_VALUE,
+        kinds: Set<Int> = emptySet(),
+        consumer: suspend (JournalRecord) -> Unit
+    ) {
+        ready.await()
+        val sequences = synchronized(lock) {
+            segments.values.filter { it.recordCount > 0 && it.maxTimestamp >= from }.map { it.sequence }
+        }
+        val crc = CRC32()
+
+        for (sequence in sequences) {
+            val view = openView(sequence, from) ?: continue
+            view.file.use { file ->
+                for (block in view.offsets.indices) {
+                    currentCoroutineContext().ensureActive()
+                    val rawEnd = if (block + 1 < view.offsets.size) view.offsets[block + 1] else view.length
+                    val raw = readBlock(file, view, block, (rawEnd - view.offsets[block]).toInt())
+                    if (!parseBlock(raw, crc, from, to, kinds, consumer)) break
+                }
+            }
+        }
+    }
+
+    fun getStats(): JournalStats {
+        val (count, compressedCount, records, rawBytes, diskBytes) = synchronized(lock) {
+            val values = segments.values
+            listOf(
+                values.size.toLong(),
+                values.count { it.compressed }.toLong(),
+                values.sumOf { it.recordCount.toLong() },
+                values.sumOf { it.length },
+                values.sumOf { if (it.compressed) it.compressedLength else it.length }
+            )
+        }
+        return JournalStats(
+            segments = count.toInt(),
+            compressedSegments = compressedCount.toInt(),
+            records = records,
+            rawBytes = rawBytes,
+            diskBytes = diskBytes,
+            appended = appended.sum(),
+            dropped = dropped.sum(),
+            written = written.sum(),
+            commits = commits.sum(),
+            corruptRecords = corrupt.sum(),
+            fsyncP99Ms = fsyncTime.snapshot().percentile(0.99)
+        )
+    }
+
+    /**
+     * Deja de aceptar registros, confirma los pendientes y cierra el segmento activo
+     */
+    suspend fun close() {
+        queue.close()
+        writerJob.join()
+        withContext(Dispatchers.IO) {
+            activeChannel?.close()
+            activeChannel = null
+        }
+        scope.cancel()
+    }
+
+    // ============== ESCRITURA ==============
+
+    private suspend fun runWriter() {
+        val batch = ArrayList<Pending>(MAX_BATCH_SIZE)
+        for (first in queue) {
+            batch.add(first)
+            // Lo acumulado mientras duraba el fsync anterior entra en el mismo lote
+            while (batch.size < MAX_BATCH_SIZE) batch.add(queue.tryReceive().getOrNull() ?: break)
+            try {
+                commit(batch)
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to commit ${batch.size} journal records", e)
+                resetStaging()
+            }
+            batch.clear()
+        }
+    }
+
+    private fun commit(batch: List<Pending>) {
+        if (active == null) openSegment(synchronized(lock) { segments.lastEntry()?.key?.plus(1) } ?: 0L)
+
+        for (record in batch) {
+            val size = RECORD_HEADER_BYTES + record.payload.size
+            val segment = active!!
+            val offset = segment.length + buffer.position()
+
+            // Rotar antes de superar el tamaño fijo; un segmento vacío acepta cualquier registro
+            if (offset > 0 && offset + size > segmentSize) {
+                flush()
+                roll()
+                stage(record, size, 0L)
+            } else {
+                stage(record, size, offset)
+            }
+        }
+        flush()
+        batchSize.record(batch.size.toLong())
+    }
+
+    private fun stage(record: Pending, size: Int, offset: Long) {
+        if (offset == 0L || offset - lastBlockOffset >= blockSize) {
+            stagedBlocks.add(stagedWatermark)
+            stagedBlocks.add(offset)
+            lastBlockOffset = offset
+        }
+        if (buffer.remaining() < size) {
+            val grown = ByteBuffer.allocate(maxOf(buffer.capacity() * 2, buffer.position() + size))
+            buffer.flip()
+            grown.put(buffer)
+            buffer = grown
+        }
+
+        val start = buffer.position()
+        buffer.putInt(record.payload.size)
+        buffer.putInt(0)
+        buffer.putLong(record.timestamp)
+        buffer.put(record.kind.toByte())
+        buffer.put(record.payload)
+        writeCrc.reset()
+        writeCrc.update(buffer.array(), start + CRC_OFFSET, size - CRC_OFFSET)
+        buffer.putInt(start + 4, writeCrc.value.toInt())
+
+        stagedRecords++
+        if (record.timestamp > stagedWatermark) stagedWatermark = record.timestamp
+    }
+
+    /**
+     * Escribe el lote con un único fsync y sólo entonces lo hace visible a los lectores
+     */
+    private fun flush() {
+        val segment = active ?: return
+        if (buffer.position() == 0) return
+        val channel = activeChannel ?: return
+
+        buffer.flip()
+        val bytes = buffer.remaining()
+        while (buffer.hasRemaining()) channel.write(buffer)
+        val start = System.nanoTime()
+        channel.force(false)
+        fsyncTime.record((System.nanoTime() - start) / 1_000_000)
+
+        synchronized(lock) {
+            for (i in stagedBlocks.indices step 2) segment.addBlock(stagedBlocks[i], stagedBlocks[i + 1])
+            segment.length += bytes
+            segment.recordCount += stagedRecords
+            segment.maxTimestamp = maxOf(segment.maxTimestamp, stagedWatermark)
+        }
+        commits.increment()
+        written.add(stagedRecords.toLong())
+        bytesWritten.add(bytes.toLong())
+
+        buffer.clear()
+        stagedBlocks.clear()
+        stagedRecords = 0
+    }
+
+    private fun roll() {
+        val sealed = active ?: return
+        activeChannel?.close()
+        activeChannel = null
+        active = null
+        scope.launch { compress(sealed) }
+        openSegment(sealed.sequence + 1)
+        applyRetention()
+    }
+
+    private fun openSegment(sequence: Long) {
+        val segment = Segment(sequence)
+        activeChannel = RandomAccessFile(logFile(sequence), "rw").channel
+        synchronized(lock) { segments[sequence] = segment }
+        active = segment
+        stagedWatermark = Long.MIN_VALUE
+        lastBlockOffset = 0L
+    }
+
+    /**
+     * Tras un fallo de escritura el lote se pierde; el segmento se trunca a lo confirmado
+     */
+    private fun resetStaging() {
+        buffer.clear()
+        stagedBlocks.clear()
+        stagedRecords = 0
+        val segment = active ?: return
+        try {
+            activeChannel?.truncate(segment.length)
+            activeChannel?.position(segment.length)
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to truncate journal segment ${segment.sequence}", e)
+        }
+        stagedWatermark = synchronized(lock) { segment.maxTimestamp }
+        lastBlockOffset = synchronized(lock) {
+            if (segment.blockCount > 0) segment.blockOffsets[segment.blockCount - 1] else 0L
+        }
+    }
+
+    private fun applyRetention() {
+        synchronized(lock) {
+            while (segments.size > maxSegments) {
+                val oldest = segments.pollFirstEntry()?.value ?: break
+                logFile(oldest.sequence).delete()
+                compressedFile(oldest.sequence).delete()
+                indexFile(oldest.sequence).delete()
+            }
+        }
+    }
+
+    // ============== COMPRESIÓN ==============
+
+    /**
+     * Reescribe un segmento sellado como bloques deflate independientes, uno por entrada del índice
+     */
+    private fun compress(segment: Segment) {
+        val sequence = segment.sequence
+        val offsets: LongArray
+        val length: Long
+        synchronized(lock) {
+            if (segment.compressed || segments[sequence] !== segment) return
+            offsets = segment.blockOffsets.copyOf(segment.blockCount)
+            length = segment.length
+        }
+        val compressedOffsets = LongArray(offsets.size)
+        val tmp = File(directory, "$SEGMENT_PREFIX$sequence$COMPRESSED_SUFFIX.tmp")
+        val deflater = Deflater(Deflater.BEST_SPEED)
+
+        try {
+            var position = 0L
+            RandomAccessFile(logFile(sequence), "r").use { input ->
+                FileOutputStream(tmp).use { out ->
+                    for (block in offsets.indices) {
+                        val end = if (block + 1 < offsets.size) offsets[block + 1] else length
+                        val raw = ByteArray((end - offsets[block]).toInt())
+                        input.seek(offsets[block])
+                        input.readFully(raw)
+
+                        val deflated = ByteArrayOutputStream(raw.size / 2)
+                        DeflaterOutputStream(deflated, deflater).use { it.write(raw) }
+                        deflater.reset()
+
+                        compressedOffsets[block] = position
+                        deflated.writeTo(out)
+                        position += deflated.size()
+                    }
+                    out.fd.sync()
+                }
+            }
+            tmp.renameTo(compressedFile(sequence))
+            writeIndex(segment, offsets, compressedOffsets, length, position)
+
+            val current = synchronized(lock) {
+                (segments[sequence] === segment).also { current ->
+                    if (current) {
+                        segment.blockCompressedOffsets = compressedOffsets
+                        segment.compressedLength = position
+                        segment.compressed = true
+                    }
+                }
+            }
+            if (!current) {
+                // La retención lo retiró mientras se comprimía
+                compressedFile(sequence).delete()
+                indexFile(sequence).delete()
+                return
+            }
+            // Los lectores que ya abrieron el fichero sin comprimir conservan su descriptor
+            logFile(sequence).delete()
+        } catch (e: IOException) {
+            Log.e(TAG, "Failed to compress journal segment $sequence", e)
+            tmp.delete()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private fun writeIndex(segment: Segment, offsets: LongArray, compressedOffsets: LongArray, length: Long, compressedLength: Long) {
+        val tmp = File(directory, "$SEGMENT_PREFIX${segment.sequence}$INDEX_SUFFIX.tmp")
+        DataOutputStream(FileOutputStream(tmp).buffered()).use { out ->
+            out.writeInt(INDEX_MAGIC)
+            out.writeInt(segment.recordCount)
+            out.writeLong(segment.maxTimestamp)
+            out.writeLong(length)
+            out.writeLong(compressedLength)
+            out.writeInt(offsets.size)
+            for (block in offsets.indices) {
+                out.writeLong(segment.blockWatermarks[block])
+                out.writeLong(offsets[block])
+                out.writeLong(compressedOffsets[block])
+            }
+        }
+        tmp.renameTo(indexFile(segment.sequence))
+    }
+
+    private fun readIndex(sequence: Long): Segment? {
+        val file = indexFile(sequence)
+        if (!file.exists() || !compressedFile(sequence).exists()) return null
+        return try {
+            DataInputStream(FileInputStream(file).buffered()).use { input ->
+                if (input.readInt() != INDEX_MAGIC) return null
+                val segment = Segment(sequence)
+                segment.recordCount = input.readInt()
+                segment.maxTimestamp = input.readLong()
+                segment.length = input.readLong()
+                segment.compressedLength = input.readLong()
+                val blocks = input.readInt()
+                val compressedOffsets = LongArray(blocks)
+                for (block in 0 until blocks) {
+                    segment.addBlock(input.readLong(), input.readLong())
+                    compressedOffsets[block] = input.readLong()
+                }
+                if (compressedFile(sequence).length() != segment.compressedLength) return null
+                segment.blockCompressedOffsets = compressedOffsets
+                segment.compressed = true
+                segment
+            }
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    // ============== RECUPERACIÓN ==============
+
+    /**
+     * Carga los índices de segmentos comprimidos y reconstruye los sin comprimir verificando CRC;
+     * un final incompleto o corrupto se trunca. El último segmento sigue siendo el activo.
+     */
+    private fun recover() {
+        val files = directory.listFiles { file -> file.name.startsWith(SEGMENT_PREFIX) } ?: return
+        val sequences = files.mapNotNull { file ->
+            file.name.removePrefix(SEGMENT_PREFIX).substringBefore('.').toLongOrNull()
+        }.toSortedSet()
+        files.filter { it.name.endsWith(".tmp") }.forEach { it.delete() }
+
+        val uncompressed = mutableListOf<Segment>()
+        for (sequence in sequences) {
+            val indexed = readIndex(sequence)
+            if (indexed != null) {
+                // La compresión terminó; el original pudo quedar si se interrumpió al borrarlo
+                logFile(sequence).delete()
+                synchronized(lock) { segments[sequence] = indexed }
+                continue
+            }
+            compressedFile(sequence).delete()
+            indexFile(sequence).delete()
+            if (!logFile(sequence).exists()) continue
+
+            val segment = rebuildSegment(sequence)
+            synchronized(lock) { segments[sequence] = segment }
+            uncompressed.add(segment)
+        }
+
+        val last = uncompressed.lastOrNull()
+        if (last != null && last.sequence == sequences.last()) {
+            uncompressed.removeAt(uncompressed.size - 1)
+            activeChannel = RandomAccessFile(logFile(last.sequence), "rw").channel.also { it.position(last.length) }
+            active = last
+            stagedWatermark = last.maxTimestamp
+            lastBlockOffset = if (last.blockCount > 0) last.blockOffsets[last.blockCount - 1] else 0L
+        }
+        uncompressed.forEach { segment -> scope.launch { compress(segment) } }
+        applyRetention()
+    }
+
+    private fun rebuildSegment(sequence: Long): Segment {
+        val segment = Segment(sequence)
+        val log = logFile(sequence)
+        val header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+        val crc = CRC32()
+        var lastBlock = 0L
+        var watermark = Long.MIN_VALUE
+
+        RandomAccessFile(log, "rw").use { file ->
+            val fileLength = file.length()
+            var position = 0L
+            while (position + RECORD_HEADER_BYTES <= fileLength) {
+                header.clear()
+                file.seek(position)
+                file.readFully(header.array())
+                val size = header.getInt(0)
+                if (size < 0 || size > MAX_PAYLOAD_BYTES || position + RECORD_HEADER_BYTES + size > fileLength) break
+                val payload = ByteArray(size)
+                file.readFully(payload)
+                crc.reset()
+                crc.update(header.array(), CRC_OFFSET, RECORD_HEADER_BYTES - CRC_OFFSET)
+                crc.update(payload)
+                if (crc.value.toInt() != header.getInt(4)) break
+
+                if (position == 0L || position - lastBlock >= blockSize) {
+                    segment.addBlock(watermark, position)
+                    lastBlock = position
+                }
+                val timestamp = header.getLong(8)
+                if (timestamp > watermark) watermark = timestamp
+                segment.recordCount++
+                position += RECORD_HEADER_BYTES + size
+            }
+            if (position < fileLength) {
+                Log.w(TAG, "Truncating journal segment $sequence at $position of $fileLength bytes")
+                corrupt.increment()
+                file.setLength(position)
+            }
+            segment.length = position
+        }
+        segment.maxTimestamp = watermark
+        return segment
+    }
+
+    // ============== LECTURA ==============
+
+    /**
+     * Copia el índice del segmento y abre su fichero actual bajo lock, para que una
+     * compresión o la retención no lo retiren entre ambos pasos
+     */
+    private fun openView(sequence: Long, from: Long): SegmentView? = synchronized(lock) {
+        val segment = segments[sequence] ?: return null
+        if (segment.blockCount == 0) return null
+        val first = segment.firstBlockFor(from)
+        val file = try {
+            RandomAccessFile(if (segment.compressed) compressedFile(sequence) else logFile(sequence), "r")
+        } catch (e: IOException) {
+            Log.w(TAG, "Journal segment $sequence unavailable", e)
+            return null
+        }
+        SegmentView(
+            file = file,
+            compressed = segment.compressed,
+            offsets = segment.blockOffsets.copyOfRange(first, segment.blockCount),
+            compressedOffsets = if (segment.compressed) {
+                segment.blockCompressedOffsets.copyOfRange(first, segment.blockCount)
+            } else LongArray(0),
+            length = segment.length,
+            compressedLength = segment.compressedLength
+        )
+    }
+
+    private fun readBlock(file: RandomAccessFile, view: SegmentView, block: Int, rawLength: Int): ByteArray {
+        val raw = ByteArray(rawLength)
+        if (!view.compressed) {
+            file.seek(view.offsets[block])
+            file.readFully(raw)
+            return raw
+        }
+
+        val end = if (block + 1 < view.compressedOffsets.size) view.compressedOffsets[block + 1] else view.compressedLength
+        val deflated = ByteArray((end - view.compressedOffsets[block]).toInt())
+        file.seek(view.compressedOffsets[block])
+        file.readFully(deflated)
+
+        val inflater = Inflater()
+        try {
+            inflater.setInput(deflated)
+            var filled = 0
+            while (filled < rawLength && !inflater.finished()) {
+                val count = inflater.inflate(raw, filled, rawLength - filled)
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break
+                filled += count
+            }
+            return if (filled == rawLength) raw else raw.copyOf(filled)
+        } finally {
+            inflater.end()
+        }
+    }
+
+    /**
+     * Entrega los registros del bloque que caen en el rango; false si encuentra un registro corrupto
+     */
+    private suspend fun parseBlock(
+        block: ByteArray,
+        crc: CRC32,
+        from: Long,
+        to: Long,
+        kinds: Set<Int>,
+        consumer: suspend (JournalRecord) -> Unit
+    ): Boolean {
+        val input = ByteBuffer.wrap(block)
+        while (input.remaining() >= RECORD_HEADER_BYTES) {
+            val start = input.position()
+            val size = input.getInt()
+            val expected = input.getInt()
+            val timestamp = input.getLong()
+            val kind = input.get().toInt() and 0xFF
+            if (size < 0 || size > input.remaining()) {
+                corrupt.increment()
+                return false
+            }
+            crc.reset()
+            crc.update(block, start + CRC_OFFSET, RECORD_HEADER_BYTES - CRC_OFFSET + size)
+            if (crc.value.toInt() != expected) {
+                Log.w(TAG, "Journal record failed CRC check; stopping replay of segment")
+                corrupt.increment()
+                return false
+            }
+
+            if (timestamp in from..to && (kinds.isEmpty() || kind in kinds)) {
+                val payload = ByteArray(size)
+                input.get(payload)
+                consumer(JournalRecord(timestamp, kind, payload))
+            } else {
+                input.position(input.position() + size)
+            }
+        }
+        return true
+    }
+
+    private fun logFile(sequence: Long) = File(directory, "$SEGMENT_PREFIX$sequence$LOG_SUFFIX")
+    private fun compressedFile(sequence: Long) = File(directory, "$SEGMENT_PREFIX$sequence$COMPRESSED_SUFFIX")
+    private fun indexFile(sequence: Long) = File(directory, "$SEGMENT_PREFIX$sequence$INDEX_SUFFIX")
+}
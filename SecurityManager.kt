@@ -3,11 +3,21 @@ package com.guardianai.managers
 import android.content.Context
 import android.util.Log
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BufferOverflow
 import kotlinx.coroutines.flow.*
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
 import java.security.MessageDigest
+import java.util.EnumMap
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import javax.crypto.Cipher
 import javax.crypto.KeyGenerator
 import javax.crypto.SecretKey
@@ -31,6 +41,13 @@ class SecurityManager(private val context: Context) {
         private const val MILITARY_PROTOCOL_VERSION = "DELTA-7.0"
         private const val EMERGENCY_CODE = "GUARDIAN-SHIELD-ALPHA"
         private const val NUCLEAR_AUTH_CODE = "OMEGA-PROTOCOL-ZERO"
+        private const val THREAT_BLOCK_TTL = 3600000L // 1 hora
+        private const val SCANNER_TIMEOUT = 30000L
+        private const val DEEP_SCANNER_TIMEOUT = 60000L
+        private const val SCAN_PROGRESS_INTERVAL = 250L
+        // Los tipos 0 y 1 guardaban enums por ordinal y ya no se leen
+        private const val JOURNAL_KIND_EVENT = 2
+        private const val JOURNAL_KIND_ALERT = 3
     }
 
     // ============== MOTORES DE SEGURIDAD ESTÁNDAR ==============
@@ -74,11 +91,19 @@ class SecurityManager(private val context: Context) {
     private val _militarySecurityStatus = MutableStateFlow(MilitarySecurityStatus())
     val militarySecurityStatus: StateFlow<MilitarySecurityStatus> = _militarySecurityStatus.asStateFlow()
 
-    private val _threatAlerts = MutableSharedFlow<ThreatAlert>()
+    private val _threatAlerts = MutableSharedFlow<ThreatAlert>(
+        extraBufferCapacity = BackpressureFanOut.DEFAULT_CAPACITY,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
     val threatAlerts: SharedFlow<ThreatAlert> = _threatAlerts.asSharedFlow()
+    private val threatAlertFanOut = BackpressureFanOut<ThreatAlert>("threatAlerts")
 
-    private val _securityEvents = MutableSharedFlow<SecurityEvent>()
+    private val _securityEvents = MutableSharedFlow<SecurityEvent>(
+        extraBufferCapacity = BackpressureFanOut.DEFAULT_CAPACITY,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
     val securityEvents: SharedFlow<SecurityEvent> = _securityEvents.asSharedFlow()
+    private val securityEventFanOut = BackpressureFanOut<SecurityEvent>("securityEvents")
 
     private val _militaryAlerts = MutableSharedFlow<MilitaryAlert>()
     val militaryAlerts: SharedFlow<MilitaryAlert> = _militaryAlerts.asSharedFlow()
@@ -87,14 +112,65 @@ class SecurityManager(private val context: Context) {
     private val securityConfig = SecurityConfiguration()
     private val militaryConfig = MilitarySecurityConfiguration()
     private val activeThreatBlocks = ConcurrentHashMap<String, ThreatBlock>()
+    private val expiryService = TimingWheelExpiryService.shared
     private val militaryProtocols = ConcurrentHashMap<String, MilitarySecurityProtocol>()
-    private val securityMetrics = SecurityMetrics()
-    private val militaryMetrics = MilitaryMetrics()
+    // Registro propio: las métricas expuestas son las de esta instancia; los totales del proceso van a shared
+    private val metricsRegistry = MetricsRegistry(parent = MetricsRegistry.shared)
+    private val securityMetrics = SecurityMetrics(metricsRegistry)
+    private val militaryMetrics = MilitaryMetrics(metricsRegistry)
+
+    // Copia persistente de eventos y alertas, reproducible tras reiniciar
+    private val eventJournal = SecurityEventJournal.shared(context)
 
     // ============== COROUTINE SCOPES ==============
     private val securityScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
     private val militaryScope = CoroutineScope(Dispatchers.Default + SupervisorJob())
 
+    // ============== TAREAS PERIÓDICAS ==============
+    private val tickScheduler = TickScheduler(dispatcher = Dispatchers.IO)
+    private val backgroundTasks = ConcurrentHashMap<String, BackgroundTask>()
+
+    // Respuestas a amenazas: priorizadas, con bloqueos de origen agrupados por lote
+    private val responseQueue = ThreatResponseQueue(metrics = metricsRegistry) { sources ->
+        firewallManager.blockSources(sources)
+    }
+
+    /**
+     * Tarea de fondo y nivel de protección mínimo con el que sigue activa
+     */
+    private class BackgroundTask(val handle: TickScheduler.TaskHandle, val minimumLevel: ProtectionLevel)
+
+    // DEFCON y nivel de protección: sólo se reconfigura lo que cambia, en paralelo por dependencias.
+    // El nivel declarado de firewall, escaneo y postura va después de los modos que los sobrescriben.
+    private val defenseReconciler = DefenseReconciler<DefenseSubsystem>(
+        name = "defense",
+        dependencies = mapOf(
+            DefenseSubsystem.FIREWALL to setOf(
+                DefenseSubsystem.ALL_DEFENSES, DefenseSubsystem.COMBAT_MODE, DefenseSubsystem.EMERGENCY_PROTOCOL
+            ),
+            DefenseSubsystem.MALWARE_SCANNING to setOf(DefenseSubsystem.COMBAT_MODE, DefenseSubsystem.EMERGENCY_PROTOCOL),
+            DefenseSubsystem.MILITARY_POSTURE to setOf(DefenseSubsystem.COMBAT_MODE, DefenseSubsystem.EMERGENCY_PROTOCOL)
+        ),
+        metrics = metricsRegistry
+    ) { subsystem, value -> applyDefenseValue(subsystem, value) }
+
+    /**
+     * Subsistemas que reconfiguran DEFCON y el nivel de protección
+     */
+    private enum class DefenseSubsystem {
+        FIREWALL, MALWARE_SCANNING, TACTICAL_FREQUENCY, TACTICAL_MAXIMUM, INTELLIGENCE,
+        ALL_DEFENSES, COMBAT_MODE, QUANTUM_SHIELD, EMERGENCY_PROTOCOL, MILITARY_POSTURE
+    }
+
+    /**
+     * Postura militar declarada por cada DEFCON
+     */
+    private data class MilitaryPosture(
+        val operationMode: MilitaryOperationMode,
+        val cyberDefenseLevel: CyberDefenseLevel,
+        val intelligenceLevel: IntelligenceLevel
+    )
+
     // ============== DATA CLASSES EXPANDIDAS ==============
 
     data class SecurityStatus(
@@ -162,31 +238,52 @@ class SecurityManager(private val context: Context) {
         val nuclearOptionEnabled: Boolean = false
     )
 
-    data class SecurityMetrics(
-        var totalScans: Long = 0L,
-        var threatsDetected: Long = 0L,
-        var threatsBlocked: Long = 0L,
-        var falsePositives: Long = 0L,
-        var systemOptimizations: Long = 0L,
-        var encryptionOperations: Long = 0L,
-        var antiTheftActivations: Long = 0L,
-        var successRate: Float = 0.0f
-    )
+    /**
+     * Contadores de seguridad registrados en el MetricsRegistry; se leen por instantánea
+     */
+    class SecurityMetrics(registry: MetricsRegistry) {
+        val totalScans = registry.counter(SCANS_TOTAL)
+        val threatsDetected = registry.counter(THREATS_DETECTED)
+        val threatsBlocked = registry.counter(THREATS_BLOCKED)
+        val falsePositives = registry.counter("security.false_positives")
+        val systemOptimizations = registry.counter("security.optimizations")
+        val encryptionOperations = registry.counter("security.encryption_operations")
+        val antiTheftActivations = registry.counter("security.anti_theft_activations")
+        val scanDuration = registry.histogram(SCAN_DURATION)
+        val activeThreats = registry.gauge("security.threats.active")
+
+        companion object {
+            const val SCANS_TOTAL = "security.scans.total"
+            const val THREATS_DETECTED = "security.threats.detected"
+            const val THREATS_BLOCKED = "security.threats.blocked"
+            const val SCAN_DURATION = "security.scans.duration_ms"
+
+            fun successRate(snapshot: MetricsRegistry.MetricsSnapshot): Float {
+                val detected = snapshot.counter(THREATS_DETECTED)
+                return if (detected > 0) snapshot.counter(THREATS_BLOCKED).toFloat() / detected else 0.0f
+            }
+        }
+    }
 
-    data class MilitaryMetrics(
-        var tacticalScans: Long = 0L,
-        var cyberAttacksRepelled: Long = 0L,
-        var quantumEncryptions: Long = 0L,
-        var emergencyActivations: Long = 0L,
-        var stealthOperations: Long = 0L,
-        var countermeasuresDeployed: Long = 0L,
-        var forensicCaptures: Long = 0L,
-        var biometricAuthentications: Long = 0L,
-        var defconChanges: Long = 0L,
-        var militaryProtocolsExecuted: Long = 0L,
-        var intelligenceReports: Long = 0L,
-        var nuclearProtocolActivations: Long = 0L
-    )
+    class MilitaryMetrics(registry: MetricsRegistry) {
+        val tacticalScans = registry.counter(TACTICAL_SCANS)
+        val cyberAttacksRepelled = registry.counter(CYBER_ATTACKS_REPELLED)
+        val quantumEncryptions = registry.counter("military.quantum_encryptions")
+        val emergencyActivations = registry.counter("military.emergency_activations")
+        val stealthOperations = registry.counter("military.stealth_operations")
+        val countermeasuresDeployed = registry.counter("military.countermeasures_deployed")
+        val forensicCaptures = registry.counter("military.forensic_captures")
+        val biometricAuthentications = registry.counter("military.biometric_authentications")
+        val defconChanges = registry.counter("military.defcon_changes")
+        val militaryProtocolsExecuted = registry.counter("military.protocols_executed")
+        val intelligenceReports = registry.counter("military.intelligence_reports")
+        val nuclearProtocolActivations = registry.counter("military.nuclear_protocol_activations")
+
+        companion object {
+            const val TACTICAL_SCANS = "military.tactical_scans"
+            const val CYBER_ATTACKS_REPELLED = "military.cyber_attacks_repelled"
+        }
+    }
 
     // ============== ENUMS EXPANDIDOS ==============
 
@@ -357,7 +454,49 @@ class SecurityManager(private val context: Context) {
         val timestamp: Long,
         val militaryThreatsFound: Int = 0,
         val forensicFindings: List<String> = emptyList(),
-        val quantumVulnerabilities: Int = 0
+        val quantumVulnerabilities: Int = 0,
+        val scannerStatuses: List<ScannerStatus> = emptyList()
+    ) {
+        val isPartial: Boolean
+            get() = scannerStatuses.any { it.state != ScannerState.COMPLETED }
+    }
+
+    enum class ScannerState {
+        RUNNING, COMPLETED, TIMED_OUT, FAILED
+    }
+
+    data class ScannerStatus(
+        val scanner: String,
+        val state: ScannerState,
+        val durationMs: Long,
+        val itemsFound: Int = 0,
+        val error: String? = null
+    )
+
+    data class ScanProgress(
+        val scanId: String,
+        val scanners: List<ScannerProgress>,
+        val itemsDone: Long,
+        val itemsTotal: Long,
+        val itemsPerSecond: Double,
+        val etaMs: Long?,
+        val threatsFound: Int,
+        val newFindings: List<ThreatInfo>,
+        val elapsedMs: Long,
+        val result: ScanResult? = null
+    ) {
+        val fraction: Float
+            get() = if (itemsTotal > 0) itemsDone.toFloat() / itemsTotal else 0f
+
+        val isComplete: Boolean
+            get() = result != null
+    }
+
+    data class ScannerProgress(
+        val scanner: String,
+        val itemsDone: Long,
+        val itemsTotal: Long,
+        val state: ScannerState
     )
 
     data class SecurityMetricsUI(
@@ -374,7 +513,8 @@ class SecurityManager(private val context: Context) {
         val cyberAttacksRepelled: Long,
         val quantumShieldActive: Boolean,
         val stealthModeActive: Boolean,
-        val militaryProtocolsActive: Int
+        val militaryProtocolsActive: Int,
+        val successRate: Float = 0.0f
     )
 
     data class MilitaryStatusUI(
@@ -594,22 +734,16 @@ class SecurityManager(private val context: Context) {
 
     private fun startBackgroundServices() {
         // Monitoreo de seguridad estándar
-        securityScope.launch {
-            startSecurityMonitoring()
-        }
+        startSecurityMonitoring()
 
         // Monitoreo militar
         if (militaryConfig.militaryModeEnabled) {
-            militaryScope.launch {
-                startMilitaryMonitoring()
-            }
+            startMilitaryMonitoring()
         }
 
         // Rotación de claves cuánticas
         if (militaryConfig.quantumEncryptionEnabled) {
-            militaryScope.launch {
-                startQuantumKeyRotation()
-            }
+            startQuantumKeyRotation()
         }
     }
 
@@ -640,7 +774,7 @@ class SecurityManager(private val context: Context) {
 
         updateSecurityStatus()
 
-        _securityEvents.emit(SecurityEvent(
+        publishSecurityEvent(SecurityEvent(
             type = SecurityEventType.SYSTEM_OPTIMIZED,
             description = "Security protocols activated",
             timestamp = System.currentTimeMillis()
@@ -691,7 +825,7 @@ class SecurityManager(private val context: Context) {
             enableAutoCountermeasures()
         }
 
-        militaryMetrics.militaryProtocolsExecuted++
+        militaryMetrics.militaryProtocolsExecuted.increment()
     }
 
     // ============== ESCANEO Y DETECCIÓN ==============
@@ -715,42 +849,89 @@ class SecurityManager(private val context: Context) {
 
     /**
      * Realiza escaneo completo del sistema con capacidades militares
+     * Los escáneres independientes corren en paralelo bajo un supervisor, cada uno con
+     * su propio plazo; uno lento o fallido no anula el resto y el resultado queda parcial.
+     */
+    suspend fun performFullSystemScan(): ScanResult = runFullSystemScan(ScanProgressTracker(generateScanId()))
+
+    /**
+     * Escaneo completo con avance en vivo: emite como mucho cada SCAN_PROGRESS_INTERVAL ms,
+     * con los hallazgos nuevos desde la emisión anterior; la última emisión trae el resultado.
+     * Cancelar la colección cancela el escaneo.
      */
-    suspend fun performFullSystemScan(): ScanResult {
-        val scanId = generateScanId()
+    fun scanProgress(): Flow<ScanProgress> = progressFlow { runFullSystemScan(it) }
+
+    /**
+     * Escaneo rápido con el mismo avance en vivo y hallazgos incrementales que scanProgress()
+     */
+    fun quickScanProgress(): Flow<ScanProgress> = progressFlow { runQuickScan(it) }
+
+    private fun progressFlow(run: suspend (ScanProgressTracker) -> ScanResult): Flow<ScanProgress> = channelFlow {
+        val tracker = ScanProgressTracker(generateScanId())
+        val scan = async { run(tracker) }
+
+        while (!scan.isCompleted) {
+            withTimeoutOrNull(SCAN_PROGRESS_INTERVAL) { scan.join() }
+            if (!scan.isCompleted && tracker.hasChanged()) {
+                send(tracker.snapshot())
+            }
+        }
+        send(tracker.snapshot(scan.await()))
+    }.flowOn(Dispatchers.Default)
+
+    private suspend fun runFullSystemScan(tracker: ScanProgressTracker): ScanResult {
+        val scanId = tracker.scanId
         val startTime = System.currentTimeMillis()
 
         try {
-            _securityEvents.emit(SecurityEvent(
+            publishSecurityEvent(SecurityEvent(
                 type = SecurityEventType.SCAN_COMPLETE,
                 description = "Iniciando escaneo completo militar del sistema",
                 timestamp = System.currentTimeMillis()
             ))
 
-            // Escaneos estándar
-            val fileThreats = malwareScanner.scanFileSystem()
-            val memoryThreats = malwareScanner.scanMemory()
-            val networkThreats = intrusionDetector.scanNetworkActivity()
-            val vulnerabilities = vulnerabilityScanner.scanSystem()
+            val militaryEnabled = militaryConfig.militaryModeEnabled
+            val forensicEnabled = militaryConfig.forensicAnalysisEnabled
 
-            // Escaneos militares
-            val militaryThreats = if (militaryConfig.militaryModeEnabled) {
-                val tactical = tacticalScanner.performDeepScan()
-                val cyber = cyberWarfareUnit.scanForCyberThreats()
-                val quantum = quantumDefense.scanQuantumVulnerabilities()
-                val intelligence = intelligenceEngine.performThreatAnalysis()
-
-                tactical + cyber + quantum + intelligence
-            } else emptyList()
+            val outcomes = supervisorScope {
+                // Escaneos estándar
+                val standard = listOf(
+                    launchScanner(tracker, "fileSystem", SCANNER_TIMEOUT, ScannerCounter::streamedFindings) { malwareScanner.scanFileSystem(it) },
+                    launchScanner(tracker, "memory", SCANNER_TIMEOUT, ScannerCounter::streamedFindings) { malwareScanner.scanMemory(it) },
+                    launchScanner(tracker, "network", SCANNER_TIMEOUT) { intrusionDetector.scanNetworkActivity() }
+                )
+                val vulnerability = launchScanner(tracker, "vulnerability", SCANNER_TIMEOUT) { vulnerabilityScanner.scanSystem(it) }
+
+                // Escaneos militares
+                val military = if (militaryEnabled) listOf(
+                    launchScanner(tracker, "tactical", DEEP_SCANNER_TIMEOUT) { tacticalScanner.performDeepScan() },
+                    launchScanner(tracker, "cyberWarfare", SCANNER_TIMEOUT) { cyberWarfareUnit.scanForCyberThreats() },
+                    launchScanner(tracker, "quantum", SCANNER_TIMEOUT) { quantumDefense.scanQuantumVulnerabilities() },
+                    launchScanner(tracker, "intelligence", SCANNER_TIMEOUT) { intelligenceEngine.performThreatAnalysis() }
+                ) else emptyList()
+
+                // Análisis forense
+                val forensic = if (forensicEnabled) {
+                    launchScanner(tracker, "forensic", DEEP_SCANNER_TIMEOUT) { forensicUnit.analyzeSystemState() }
+                } else null
+
+                ScanOutcomes(
+                    standard = standard.awaitAll(),
+                    vulnerability = vulnerability.await(),
+                    military = military.awaitAll(),
+                    forensic = forensic?.await()
+                )
+            }
 
-            // Análisis forense
-            val forensicFindings = if (militaryConfig.forensicAnalysisEnabled) {
-                forensicUnit.analyzeSystemState()
-            } else emptyList()
+            val vulnerabilities = outcomes.vulnerability.items
+            val militaryThreats = outcomes.military.flatMap { it.items }
+            val forensicFindings = outcomes.forensic?.items ?: emptyList()
 
             // Consolidar resultados
-            val allThreats = fileThreats + memoryThreats + networkThreats +
+            val allThreats = outcomes.standard.flatMap { it.items } +
                     militaryThreats.map { it.toThreatInfo() }
+            val scannerStatuses = outcomes.statuses()
+            val degraded = scannerStatuses.filter { it.state != ScannerState.COMPLETED }
 
             val scanDuration = System.currentTimeMillis() - startTime
 
@@ -763,11 +944,12 @@ class SecurityManager(private val context: Context) {
                 timestamp = System.currentTimeMillis(),
                 militaryThreatsFound = militaryThreats.size,
                 forensicFindings = forensicFindings,
-                quantumVulnerabilities = militaryThreats.count { it.type == ThreatType.QUANTUM_ATTACK }
+                quantumVulnerabilities = militaryThreats.count { it.type == ThreatType.QUANTUM_ATTACK },
+                scannerStatuses = scannerStatuses
             )
 
             // Actualizar métricas
-            updateScanMetrics(allThreats, militaryThreats)
+            updateScanMetrics(allThreats, militaryThreats, scanDuration)
 
             // Procesar amenazas
             processDetectedThreats(allThreats)
@@ -781,39 +963,199 @@ class SecurityManager(private val context: Context) {
                 activeThreats = allThreats.size
             )
 
-            _securityEvents.emit(SecurityEvent(
+            publishSecurityEvent(SecurityEvent(
                 type = SecurityEventType.SCAN_COMPLETE,
-                description = "Escaneo completado: ${allThreats.size} amenazas (${militaryThreats.size} militares)",
+                description = "Escaneo completado: ${allThreats.size} amenazas (${militaryThreats.size} militares)" +
+                        if (degraded.isNotEmpty()) " - parcial, ${degraded.size} escáneres sin completar" else "",
                 timestamp = System.currentTimeMillis(),
                 metadata = mapOf(
                     "scanId" to scanId,
                     "threats" to allThreats.size,
                     "militaryThreats" to militaryThreats.size,
-                    "duration" to scanDuration
+                    "duration" to scanDuration,
+                    "partial" to scanResult.isPartial,
+                    "degradedScanners" to degraded.map { "${it.scanner}:${it.state}" }
                 )
             ))
 
             return scanResult
 
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "Error during system scan", e)
             throw SecurityException("Error durante el escaneo militar: ${e.message}")
         }
     }
 
-    private fun updateScanMetrics(threats: List<ThreatInfo>, militaryThreats: List<MilitaryThreatInfo>) {
-        securityMetrics.totalScans++
-        securityMetrics.threatsDetected += threats.size.toLong()
+    private class ScannerOutcome<T>(val items: List<T>, val status: ScannerStatus)
 
-        if (militaryConfig.militaryModeEnabled) {
-            militaryMetrics.tacticalScans++
-            militaryMetrics.intelligenceReports++
+    private class ScanOutcomes(
+        val standard: List<ScannerOutcome<ThreatInfo>>,
+        val vulnerability: ScannerOutcome<String>,
+        val military: List<ScannerOutcome<MilitaryThreatInfo>>,
+        val forensic: ScannerOutcome<String>?
+    ) {
+        fun statuses(): List<ScannerStatus> =
+            (standard + vulnerability + military + listOfNotNull(forensic)).map { it.status }
+    }
+
+    /**
+     * Lanza un escáner con su propio plazo; el fallo o la expiración se reportan en su estado.
+     * partial da el resultado parcial de un escáner que expira o falla (lo ya publicado)
+     */
+    private fun <T> CoroutineScope.launchScanner(
+        tracker: ScanProgressTracker,
+        name: String,
+        timeoutMs: Long,
+        partial: (ScannerCounter) -> List<T> = { emptyList() },
+        scan: suspend (ScannerCounter) -> List<T>
+    ): Deferred<ScannerOutcome<T>> {
+        val counter = tracker.register(name)
+        return async(Dispatchers.IO) {
+            val start = System.currentTimeMillis()
+            val outcome: ScannerOutcome<T> = try {
+                val items = withTimeoutOrNull(timeoutMs) { scan(counter) }
+                val duration = System.currentTimeMillis() - start
+                if (items == null) {
+                    Log.w(TAG, "Scanner $name timed out after ${duration}ms")
+                    val partialItems = partial(counter)
+                    ScannerOutcome(partialItems, ScannerStatus(name, ScannerState.TIMED_OUT, duration, partialItems.size))
+                } else {
+                    ScannerOutcome(items, ScannerStatus(name, ScannerState.COMPLETED, duration, items.size))
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e(TAG, "Scanner $name failed", e)
+                val partialItems = partial(counter)
+                ScannerOutcome(
+                    partialItems,
+                    ScannerStatus(name, ScannerState.FAILED, System.currentTimeMillis() - start, partialItems.size, e.message)
+                )
+            }
+
+            // Los hallazgos ya publicados por el escáner mientras corría no se repiten
+            counter.finish(outcome.status.state)
+            counter.found(outcome.items.mapNotNull { item ->
+                when (item) {
+                    is ThreatInfo -> item
+                    is MilitaryThreatInfo -> item.toThreatInfo()
+                    else -> null
+                }
+            })
+            outcome
         }
+    }
 
-        // Calcular tasa de éxito
-        if (securityMetrics.threatsDetected > 0) {
-            securityMetrics.successRate =
-                securityMetrics.threatsBlocked.toFloat() / securityMetrics.threatsDetected
+    /**
+     * Avance de un escáner; los que no informan su total cuentan como una unidad
+     */
+    private class ScannerCounter(
+        val name: String,
+        private val changes: AtomicLong,
+        private val onFindings: (List<ThreatInfo>) -> Unit
+    ) {
+        private val done = AtomicLong(0)
+        private val streamed = ConcurrentHashMap.newKeySet<ThreatInfo>()
+        @Volatile private var total = 1L
+        @Volatile private var state = ScannerState.RUNNING
+
+        fun setTotal(items: Long) {
+            total = maxOf(items, 1L)
+            changes.incrementAndGet()
+        }
+
+        fun advance(items: Long = 1) {
+            done.addAndGet(items)
+            changes.incrementAndGet()
+        }
+
+        fun finish(state: ScannerState) {
+            this.state = state
+            done.set(total)
+            changes.incrementAndGet()
+        }
+
+        /**
+         * Publica hallazgos en cuanto el escáner los encuentra; los ya publicados se ignoran
+         */
+        fun found(findings: List<ThreatInfo>) {
+            val fresh = findings.filter { streamed.add(it) }
+            if (fresh.isNotEmpty()) onFindings(fresh)
+        }
+
+        /**
+         * Hallazgos ya publicados: resultado parcial si el escáner expira o falla
+         */
+        fun streamedFindings(): List<ThreatInfo> = streamed.toList()
+
+        fun view(): ScannerProgress = ScannerProgress(name, minOf(done.get(), total), total, state)
+    }
+
+    private class ScanProgressTracker(val scanId: String) {
+        private val startTime = System.currentTimeMillis()
+        private val scanners = CopyOnWriteArrayList<ScannerCounter>()
+        private val pendingFindings = ConcurrentLinkedQueue<ThreatInfo>()
+        private val threatsFound = AtomicInteger(0)
+        private val changes = AtomicLong(0)
+        private var emittedChanges = -1L
+
+        fun register(name: String): ScannerCounter =
+            ScannerCounter(name, changes) { report(it) }.also { scanners.add(it) }
+
+        fun report(findings: List<ThreatInfo>) {
+            if (findings.isEmpty()) return
+            pendingFindings.addAll(findings)
+            threatsFound.addAndGet(findings.size)
+            changes.incrementAndGet()
+        }
+
+        fun hasChanged(): Boolean = changes.get() != emittedChanges
+
+        fun snapshot(result: ScanResult? = null): ScanProgress {
+            emittedChanges = changes.get()
+            val elapsed = System.currentTimeMillis() - startTime
+            val views = scanners.map { it.view() }
+            val done = views.sumOf { it.itemsDone }
+            val total = views.sumOf { it.itemsTotal }
+            val rate = if (elapsed > 0) done * 1000.0 / elapsed else 0.0
+            val eta = when {
+                result != null -> 0L
+                rate > 0 -> ((total - done) / rate * 1000).toLong()
+                else -> null
+            }
+
+            val findings = ArrayList<ThreatInfo>()
+            while (true) findings.add(pendingFindings.poll() ?: break)
+
+            return ScanProgress(
+                scanId = scanId,
+                scanners = views,
+                itemsDone = done,
+                itemsTotal = total,
+                itemsPerSecond = rate,
+                etaMs = eta,
+                threatsFound = threatsFound.get(),
+                newFindings = findings,
+                elapsedMs = elapsed,
+                result = result
+            )
+        }
+    }
+
+    private fun updateScanMetrics(
+        threats: List<ThreatInfo>,
+        militaryThreats: List<MilitaryThreatInfo>,
+        scanDuration: Long
+    ) {
+        securityMetrics.totalScans.increment()
+        securityMetrics.threatsDetected.add(threats.size.toLong())
+        securityMetrics.scanDuration.record(scanDuration)
+
+        if (militaryConfig.militaryModeEnabled) {
+            militaryMetrics.tacticalScans.increment()
+            militaryMetrics.intelligenceReports.increment()
         }
     }
 
@@ -843,24 +1185,28 @@ class SecurityManager(private val context: Context) {
                         threat.description, threat.source, "quantum"
                     )
                 )
-                else -> firewallManager.blockSource(threat.source)
+                else -> responseQueue.blockSource(
+                    threat.id, threat.source, determinePriority(ThreatSeverity.valueOf(threat.severity))
+                ) ?: firewallManager.blockSource(threat.source)
             }
 
-            // Registrar bloqueo
-            activeThreatBlocks[blockId] = ThreatBlock(
+            // Registrar bloqueo con expiración programada
+            val block = ThreatBlock(
                 threatId = threat.id,
                 blockTime = System.currentTimeMillis(),
                 blockMethod = blockMethod,
                 isActive = true,
                 militaryGrade = threat.type in listOf("CYBER_WARFARE", "MILITARY_GRADE", "QUANTUM_ATTACK")
             )
+            activeThreatBlocks[blockId] = block
+            expiryService.expireEntry(activeThreatBlocks, blockId, block, block.blockTime + THREAT_BLOCK_TTL)
 
             // Actualizar métricas
-            securityMetrics.threatsBlocked++
+            securityMetrics.threatsBlocked.increment()
             neutralizedThreats.incrementAndGet()
 
             // Notificar bloqueo
-            _threatAlerts.emit(ThreatAlert(
+            publishThreatAlert(ThreatAlert(
                 id = threat.id,
                 type = ThreatType.valueOf(threat.type),
                 severity = ThreatSeverity.valueOf(threat.severity),
@@ -872,7 +1218,7 @@ class SecurityManager(private val context: Context) {
                 confidence = 0.95f
             ))
 
-            _securityEvents.emit(SecurityEvent(
+            publishSecurityEvent(SecurityEvent(
                 type = SecurityEventType.THREAT_BLOCKED,
                 description = "Amenaza bloqueada exitosamente",
                 timestamp = System.currentTimeMillis(),
@@ -917,16 +1263,27 @@ class SecurityManager(private val context: Context) {
      * Activa protocolo de emergencia
      */
     suspend fun activateEmergencyProtocol() {
-        if (isEmergencyMode.getAndSet(true)) {
+        if (isEmergencyMode.get()) {
             return // Ya está activo
         }
 
+        // Máximo nivel de protección: el nivel NUCLEAR exige el protocolo y lo despliega
+        // junto al resto de subsistemas; si esa reconfiguración se revierte, se despliega igual
+        setProtectionLevel(ProtectionLevel.NUCLEAR)
+        engageEmergencyProtocol()
+    }
+
+    /**
+     * Despliegue del protocolo de emergencia; paso EMERGENCY_PROTOCOL del reconciliador
+     */
+    private suspend fun engageEmergencyProtocol() {
+        if (isEmergencyMode.getAndSet(true)) {
+            return
+        }
+
         Log.w(TAG, "ACTIVATING EMERGENCY PROTOCOL: $EMERGENCY_CODE")
         emergencyActivations.incrementAndGet()
-        militaryMetrics.emergencyActivations++
-
-        // Máximo nivel de protección
-        setProtectionLevel(ProtectionLevel.NUCLEAR)
+        militaryMetrics.emergencyActivations.increment()
 
         // Activar todos los sistemas defensivos
         deployAllDefenses()
@@ -947,6 +1304,7 @@ class SecurityManager(private val context: Context) {
 
         // Comunicación de emergencia
         firewallManager.activateEmergencyMode()
+        defenseReconciler.invalidate(DefenseSubsystem.FIREWALL)
 
         // Respuesta táctica inmediata
         countermeasureSystem.activateImmediateResponse()
@@ -961,23 +1319,27 @@ class SecurityManager(private val context: Context) {
             emergencyResponseUnit.prepareEmergencyWipe()
         }
 
-        // Actualizar estados
-        _securityStatus.value = _securityStatus.value.copy(
-            militaryMode = MilitaryMode.EMERGENCY,
-            protectionLevel = ProtectionLevel.NUCLEAR,
-            defconLevel = DefconLevel.ONE,
-            emergencyModeActive = true
-        )
+        // Actualizar estados (update: otros pasos de la reconfiguración escriben en paralelo)
+        _securityStatus.update {
+            it.copy(
+                militaryMode = MilitaryMode.EMERGENCY,
+                protectionLevel = ProtectionLevel.NUCLEAR,
+                defconLevel = DefconLevel.ONE,
+                emergencyModeActive = true
+            )
+        }
 
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.EMERGENCY,
-            encryptionLevel = MilitaryEncryptionLevel.MILITARY_GRADE,
-            cyberDefenseLevel = CyberDefenseLevel.IMPENETRABLE,
-            threatAssessment = ThreatAssessment.CRITICAL
-        )
+        _militarySecurityStatus.update {
+            it.copy(
+                operationMode = MilitaryOperationMode.EMERGENCY,
+                encryptionLevel = MilitaryEncryptionLevel.MILITARY_GRADE,
+                cyberDefenseLevel = CyberDefenseLevel.IMPENETRABLE,
+                threatAssessment = ThreatAssessment.CRITICAL
+            )
+        }
 
         // Notificar emergencia
-        _militaryAlerts.emit(MilitaryAlert(
+        publishMilitaryAlert(MilitaryAlert(
             id = "EMERGENCY-${System.currentTimeMillis()}",
             level = DefconLevel.ONE,
             threatAssessment = ThreatAssessment.CRITICAL,
@@ -998,16 +1360,20 @@ class SecurityManager(private val context: Context) {
 
         Log.d(TAG, "Activating combat mode")
 
-        _securityStatus.value = _securityStatus.value.copy(
-            militaryMode = MilitaryMode.COMBAT,
-            protectionLevel = ProtectionLevel.MILITARY,
-            combatModeActive = true
-        )
+        _securityStatus.update {
+            it.copy(
+                militaryMode = MilitaryMode.COMBAT,
+                protectionLevel = ProtectionLevel.MILITARY,
+                combatModeActive = true
+            )
+        }
 
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.OFFENSIVE,
-            cyberDefenseLevel = CyberDefenseLevel.MAXIMUM
-        )
+        _militarySecurityStatus.update {
+            it.copy(
+                operationMode = MilitaryOperationMode.OFFENSIVE,
+                cyberDefenseLevel = CyberDefenseLevel.MAXIMUM
+            )
+        }
 
         // Activar todas las defensas
         deployAllDefenses()
@@ -1015,6 +1381,7 @@ class SecurityManager(private val context: Context) {
         // Maximizar escaneo
         tacticalScanner.setIntensity(ScanIntensity.MAXIMUM)
         malwareScanner.setIntensity(ScanIntensity.MAXIMUM)
+        defenseReconciler.invalidate(DefenseSubsystem.MALWARE_SCANNING)
 
         // Activar contraataque
         if (militaryConfig.cyberWarfareEnabled) {
@@ -1026,7 +1393,7 @@ class SecurityManager(private val context: Context) {
 
         activeDefenses.incrementAndGet()
 
-        _securityEvents.emit(SecurityEvent(
+        publishSecurityEvent(SecurityEvent(
             type = SecurityEventType.TACTICAL_RESPONSE,
             description = "Combat mode activated",
             timestamp = System.currentTimeMillis(),
@@ -1061,9 +1428,9 @@ class SecurityManager(private val context: Context) {
         // Modo de observación pasiva
         intelligenceEngine.enablePassiveMonitoring()
 
-        militaryMetrics.stealthOperations++
+        militaryMetrics.stealthOperations.increment()
 
-        _securityEvents.emit(SecurityEvent(
+        publishSecurityEvent(SecurityEvent(
             type = SecurityEventType.TACTICAL_RESPONSE,
             description = "Stealth mode activated",
             timestamp = System.currentTimeMillis(),
@@ -1101,13 +1468,40 @@ class SecurityManager(private val context: Context) {
         // Deshabilitar interfaces no críticas
         disableNonCriticalInterfaces()
 
-        _securityEvents.emit(SecurityEvent(
+        publishSecurityEvent(SecurityEvent(
             type = SecurityEventType.EMERGENCY_ACTIVATION,
             description = "System lockdown initiated",
             timestamp = System.currentTimeMillis()
         ))
     }
 
+    /**
+     * Levanta el bloqueo del sistema y restablece las comunicaciones
+     */
+    suspend fun releaseSystemLockdown() {
+        if (!isLockdownMode.getAndSet(false)) {
+            return
+        }
+
+        Log.w(TAG, "Releasing system lockdown")
+
+        val status = _securityStatus.value
+        _securityStatus.value = status.copy(
+            militaryMode = if (status.militaryMode == MilitaryMode.LOCKDOWN) MilitaryMode.ACTIVE else status.militaryMode,
+            lockdownModeActive = false
+        )
+
+        // Restablecer comunicaciones
+        firewallManager.restoreCommunications()
+        enableNonCriticalInterfaces()
+
+        publishSecurityEvent(SecurityEvent(
+            type = SecurityEventType.TACTICAL_RESPONSE,
+            description = "System lockdown released",
+            timestamp = System.currentTimeMillis()
+        ))
+    }
+
     /**
      * Activa protocolo nuclear (máxima emergencia)
      */
@@ -1149,9 +1543,9 @@ class SecurityManager(private val context: Context) {
             }
         }
 
-        militaryMetrics.nuclearProtocolActivations++
+        militaryMetrics.nuclearProtocolActivations.increment()
 
-        _militaryAlerts.emit(MilitaryAlert(
+        publishMilitaryAlert(MilitaryAlert(
             id = "NUCLEAR-${System.currentTimeMillis()}",
             level = DefconLevel.ONE,
             threatAssessment = ThreatAssessment.APOCALYPTIC,
@@ -1176,11 +1570,15 @@ class SecurityManager(private val context: Context) {
 
         Log.d(TAG, "Changing DEFCON from $previousLevel to $level")
 
-        _securityStatus.value = _securityStatus.value.copy(
-            defconLevel = level
-        )
+        // Llevar los subsistemas al estado del nivel; sólo cambia lo que difiere del actual
+        val result = reconfigureDefenses(level, level.protectionLevel(), level.posture())
+        if (!result.succeeded) {
+            return
+        }
+
+        _securityStatus.update { it.copy(defconLevel = level) }
 
-        militaryMetrics.defconChanges++
+        militaryMetrics.defconChanges.increment()
 
         // Activar protocolos asociados al nivel DEFCON
         for (protocol in militaryProtocols.values) {
@@ -1189,204 +1587,306 @@ class SecurityManager(private val context: Context) {
             }
         }
 
-        // Ajustar configuración según DEFCON
-        when (level) {
-            DefconLevel.FIVE -> configureDefconFive()
-            DefconLevel.FOUR -> configureDefconFour()
-            DefconLevel.THREE -> configureDefconThree()
-            DefconLevel.TWO -> configureDefconTwo()
-            DefconLevel.ONE -> configureDefconOne()
-        }
-
-        _securityEvents.emit(SecurityEvent(
+        publishSecurityEvent(SecurityEvent(
             type = SecurityEventType.DEFCON_CHANGE,
             description = "DEFCON level changed from $previousLevel to $level",
             timestamp = System.currentTimeMillis(),
-            metadata = mapOf("previous" to previousLevel.name, "current" to level.name)
+            metadata = mapOf(
+                "previous" to previousLevel.name,
+                "current" to level.name,
+                "reconfigured" to result.changed.joinToString(","),
+                "reconfigurationMs" to result.elapsedMs
+            )
         ))
     }
 
-    private suspend fun configureDefconFive() {
-        // Operaciones normales
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.PASSIVE,
-            cyberDefenseLevel = CyberDefenseLevel.STANDARD,
-            intelligenceLevel = IntelligenceLevel.BASIC
-        )
-        setProtectionLevel(ProtectionLevel.HIGH)
+    /**
+     * Nivel de protección que exige cada DEFCON
+     */
+    private fun DefconLevel.protectionLevel(): ProtectionLevel = when (this) {
+        DefconLevel.FIVE -> ProtectionLevel.HIGH
+        DefconLevel.FOUR -> ProtectionLevel.ULTRA
+        DefconLevel.THREE -> ProtectionLevel.MAXIMUM
+        DefconLevel.TWO -> ProtectionLevel.MILITARY
+        DefconLevel.ONE -> ProtectionLevel.NUCLEAR
     }
 
-    private suspend fun configureDefconFour() {
+    private fun DefconLevel.posture(): MilitaryPosture = when (this) {
+        // Operaciones normales
+        DefconLevel.FIVE -> MilitaryPosture(MilitaryOperationMode.PASSIVE, CyberDefenseLevel.STANDARD, IntelligenceLevel.BASIC)
         // Inteligencia aumentada
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.DEFENSIVE,
-            cyberDefenseLevel = CyberDefenseLevel.ENHANCED,
-            intelligenceLevel = IntelligenceLevel.ENHANCED
-        )
-        tacticalScanner.increaseFrequency()
-        intelligenceEngine.increaseAnalysisFrequency()
-        setProtectionLevel(ProtectionLevel.ULTRA)
+        DefconLevel.FOUR -> MilitaryPosture(MilitaryOperationMode.DEFENSIVE, CyberDefenseLevel.ENHANCED, IntelligenceLevel.ENHANCED)
+        // Preparación aumentada
+        DefconLevel.THREE -> MilitaryPosture(MilitaryOperationMode.TACTICAL, CyberDefenseLevel.MAXIMUM, IntelligenceLevel.MAXIMUM)
+        // Mayor preparación
+        DefconLevel.TWO -> MilitaryPosture(MilitaryOperationMode.OFFENSIVE, CyberDefenseLevel.IMPENETRABLE, IntelligenceLevel.OMNISCIENT)
+        // Máxima preparación
+        DefconLevel.ONE -> MilitaryPosture(MilitaryOperationMode.EMERGENCY, CyberDefenseLevel.ABSOLUTE, IntelligenceLevel.OMNISCIENT)
     }
 
-    private suspend fun configureDefconThree() {
-        // Preparación aumentada
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.TACTICAL,
-            cyberDefenseLevel = CyberDefenseLevel.MAXIMUM,
-            intelligenceLevel = IntelligenceLevel.MAXIMUM
-        )
-        deployAllDefenses()
-        setProtectionLevel(ProtectionLevel.MAXIMUM)
+    /**
+     * Estado objetivo de los subsistemas para un DEFCON y nivel de protección.
+     * Los refuerzos y modos se exigen a partir de su umbral (DEFCON crece hacia ONE);
+     * la postura militar sólo se exige al cambiar de DEFCON.
+     */
+    private fun defenseTarget(
+        defcon: DefconLevel,
+        level: ProtectionLevel,
+        posture: MilitaryPosture?
+    ): Map<DefenseSubsystem, Any> {
+        val target = EnumMap<DefenseSubsystem, Any>(DefenseSubsystem::class.java)
+
+        target[DefenseSubsystem.FIREWALL] = when (level) {
+            ProtectionLevel.LOW -> FirewallLevel.BASIC
+            ProtectionLevel.MEDIUM -> FirewallLevel.STANDARD
+            ProtectionLevel.HIGH -> FirewallLevel.HIGH
+            ProtectionLevel.ULTRA -> FirewallLevel.ULTRA
+            else -> FirewallLevel.MAXIMUM
+        }
+        target[DefenseSubsystem.MALWARE_SCANNING] = when (level) {
+            ProtectionLevel.LOW -> ScanIntensity.LOW
+            ProtectionLevel.MEDIUM -> ScanIntensity.MEDIUM
+            ProtectionLevel.HIGH -> ScanIntensity.HIGH
+            ProtectionLevel.ULTRA -> ScanIntensity.ULTRA
+            else -> ScanIntensity.MAXIMUM
+        }
+
+        if (defcon >= DefconLevel.FOUR) {
+            target[DefenseSubsystem.TACTICAL_FREQUENCY] = true
+            target[DefenseSubsystem.INTELLIGENCE] = true
+        }
+        if (level >= ProtectionLevel.TACTICAL) {
+            target[DefenseSubsystem.TACTICAL_MAXIMUM] = true
+        }
+        if (defcon >= DefconLevel.THREE) {
+            target[DefenseSubsystem.ALL_DEFENSES] = true
+        }
+        if (defcon >= DefconLevel.TWO || (level >= ProtectionLevel.MILITARY && militaryConfig.militaryModeEnabled)) {
+            target[DefenseSubsystem.COMBAT_MODE] = true
+        }
+        if (militaryConfig.quantumEncryptionEnabled && (defcon >= DefconLevel.TWO || level >= ProtectionLevel.QUANTUM)) {
+            target[DefenseSubsystem.QUANTUM_SHIELD] = true
+        }
+        if (defcon == DefconLevel.ONE || level == ProtectionLevel.NUCLEAR) {
+            target[DefenseSubsystem.EMERGENCY_PROTOCOL] = true
+        }
+        posture?.let { target[DefenseSubsystem.MILITARY_POSTURE] = it }
+
+        return target
     }
 
-    private suspend fun configureDefconTwo() {
-        // Mayor preparación
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.OFFENSIVE,
-            cyberDefenseLevel = CyberDefenseLevel.IMPENETRABLE,
-            intelligenceLevel = IntelligenceLevel.OMNISCIENT
-        )
-        activateCombatMode()
-        if (militaryConfig.quantumEncryptionEnabled) {
-            quantumDefense.activateQuantumShield()
+    /**
+     * Aplica el valor de un subsistema. Modos y refuerzos de escaneo no tienen vuelta atrás
+     * en sus motores: sólo se activan, y su rollback no hace nada.
+     */
+    private suspend fun applyDefenseValue(subsystem: DefenseSubsystem, value: Any) {
+        when (subsystem) {
+            DefenseSubsystem.FIREWALL -> firewallManager.setLevel(value as FirewallLevel)
+            DefenseSubsystem.MALWARE_SCANNING -> malwareScanner.setIntensity(value as ScanIntensity)
+            DefenseSubsystem.MILITARY_POSTURE -> {
+                val posture = value as MilitaryPosture
+                _militarySecurityStatus.update {
+                    it.copy(
+                        operationMode = posture.operationMode,
+                        cyberDefenseLevel = posture.cyberDefenseLevel,
+                        intelligenceLevel = posture.intelligenceLevel
+                    )
+                }
+            }
+            DefenseSubsystem.TACTICAL_FREQUENCY -> tacticalScanner.increaseFrequency()
+            DefenseSubsystem.TACTICAL_MAXIMUM -> tacticalScanner.enableMaximumScanning()
+            DefenseSubsystem.INTELLIGENCE -> intelligenceEngine.increaseAnalysisFrequency()
+            DefenseSubsystem.ALL_DEFENSES -> deployAllDefenses()
+            DefenseSubsystem.COMBAT_MODE -> activateCombatMode()
+            DefenseSubsystem.QUANTUM_SHIELD -> quantumDefense.activateQuantumShield()
+            DefenseSubsystem.EMERGENCY_PROTOCOL -> engageEmergencyProtocol()
         }
-        setProtectionLevel(ProtectionLevel.MILITARY)
     }
 
-    private suspend fun configureDefconOne() {
-        // Máxima preparación
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            operationMode = MilitaryOperationMode.EMERGENCY,
-            cyberDefenseLevel = CyberDefenseLevel.ABSOLUTE,
-            intelligenceLevel = IntelligenceLevel.OMNISCIENT
-        )
-        activateEmergencyProtocol()
-        setProtectionLevel(ProtectionLevel.NUCLEAR)
+    /**
+     * Reconcilia los subsistemas con el objetivo y, si se aplica, publica el nivel y
+     * pausa o reanuda las tareas de fondo; si falla, el estado anterior se conserva
+     */
+    private suspend fun reconfigureDefenses(
+        defcon: DefconLevel,
+        level: ProtectionLevel,
+        posture: MilitaryPosture?
+    ): DefenseReconciler.ReconfigurationResult {
+        val result = defenseReconciler.reconcile(defenseTarget(defcon, level, posture))
+        if (!result.succeeded) {
+            Log.w(TAG, "Reconfiguration to $level/DEFCON $defcon failed at ${result.failedChange}; rolled back ${result.rolledBack}")
+            return result
+        }
+
+        _securityStatus.update { it.copy(protectionLevel = level) }
+
+        // Pausar o reanudar las tareas de fondo según el nuevo nivel
+        backgroundTasks.values.forEach { applyProtectionLevel(it, level) }
+        return result
     }
 
     // ============== FUNCIONES AUXILIARES ==============
 
-    private fun startRealTimeProtection() {
-        securityScope.launch {
-            while (true) {
-                // Monitorear archivos
-                malwareScanner.monitorFileSystem()
-
-                // Monitorear red
-                intrusionDetector.monitorNetwork()
+    /**
+     * Programa una tarea en el planificador común y aplica el nivel de protección actual
+     */
+    private fun scheduleBackgroundTask(
+        name: String,
+        periodMs: Long,
+        budgetMs: Long,
+        minimumLevel: ProtectionLevel = ProtectionLevel.LOW,
+        toleranceMs: Long = 0L,
+        initialDelayMs: Long = 0L,
+        military: Boolean = false,
+        activeWhile: () -> Boolean = { true },
+        block: suspend () -> Unit
+    ) {
+        val handle = tickScheduler.schedule(
+            name = name,
+            periodMs = periodMs,
+            budgetMs = budgetMs,
+            toleranceMs = toleranceMs,
+            initialDelayMs = initialDelayMs,
+            context = if (military) Dispatchers.Default else Dispatchers.IO,
+            activeWhile = activeWhile,
+            // Por debajo de su nivel la tarea nace pausada y no llega a ejecutarse una vez
+            paused = !isEnabledAt(minimumLevel, _securityStatus.value.protectionLevel),
+            block = block
+        )
+        val task = BackgroundTask(handle, minimumLevel)
+        backgroundTasks[name] = task
+        // Recoge un cambio de nivel ocurrido antes de registrar la tarea; sin cambio no hace nada
+        applyProtectionLevel(task, _securityStatus.value.protectionLevel)
+    }
 
-                // Monitorear comportamiento
-                intrusionDetector.monitorBehavior()
+    private fun isEnabledAt(minimumLevel: ProtectionLevel, level: ProtectionLevel): Boolean =
+        level.ordinal >= minimumLevel.ordinal
 
-                delay(1000) // Cada segundo
-            }
-        }
+    private fun applyProtectionLevel(task: BackgroundTask, level: ProtectionLevel) {
+        if (isEnabledAt(task.minimumLevel, level)) task.handle.resume() else task.handle.pause()
     }
 
-    private fun startSecurityMonitoring() {
-        securityScope.launch {
-            while (true) {
-                // Actualizar estado de seguridad
-                updateSecurityStatus()
+    /**
+     * Estadísticas del planificador: qué tarea consume más tiempo, excesos y omisiones
+     */
+    fun getBackgroundTaskStats(): TickScheduler.SchedulerStats = tickScheduler.getStats()
+
+    /**
+     * Profundidad, descartes y latencia de la cola de respuestas a amenazas
+     */
+    fun getResponseQueueStats(): ThreatResponseQueue.QueueStats = responseQueue.getStats()
+
+    /**
+     * Tamaño del conjunto de reglas compilado y coste por consulta del firewall
+     */
+    fun getFirewallStats(): FirewallRuleEngine.RuleEngineStats = firewallManager.getRuleEngineStats()
 
-                // Verificar integridad
-                verifySystemIntegrity()
+    private fun startRealTimeProtection() {
+        scheduleBackgroundTask("realTimeProtection", periodMs = 1000L, budgetMs = 200L) {
+            // Monitorear archivos
+            malwareScanner.monitorFileSystem()
 
-                // Limpiar bloqueos expirados
-                cleanupExpiredBlocks()
+            // Monitorear red
+            intrusionDetector.monitorNetwork()
 
-                delay(30000) // Cada 30 segundos
-            }
+            // Monitorear comportamiento
+            intrusionDetector.monitorBehavior()
         }
     }
 
-    private fun startMilitaryMonitoring() {
-        militaryScope.launch {
-            // Monitoreo de amenazas militares
-            launch { monitorMilitaryThreats() }
+    private fun startSecurityMonitoring() {
+        scheduleBackgroundTask("securityMonitoring", periodMs = 30000L, budgetMs = 1000L, toleranceMs = 5000L) {
+            // Actualizar estado de seguridad
+            updateSecurityStatus()
 
-            // Monitoreo de intrusiones
-            launch { monitorIntrusionAttempts() }
+            // Verificar integridad
+            verifySystemIntegrity()
 
-            // Análisis táctico continuo
-            launch { performTacticalAnalysis() }
+            // Los bloqueos expirados los elimina el servicio de expiración
+        }
+    }
 
-            // Verificación de integridad cuántica
-            if (militaryConfig.quantumEncryptionEnabled) {
-                launch { monitorQuantumIntegrity() }
-            }
+    private fun startMilitaryMonitoring() {
+        // Monitoreo de amenazas militares
+        scheduleBackgroundTask(
+            "militaryThreats", periodMs = 5000L, budgetMs = 500L, minimumLevel = ProtectionLevel.HIGH,
+            toleranceMs = 1000L, military = true, activeWhile = { isInitialized.get() }
+        ) { monitorMilitaryThreats() }
+
+        // Monitoreo de intrusiones
+        scheduleBackgroundTask(
+            "intrusionMonitoring", periodMs = 2000L, budgetMs = 200L, minimumLevel = ProtectionLevel.MEDIUM,
+            military = true, activeWhile = { isInitialized.get() }
+        ) { monitorIntrusionAttempts() }
+
+        // Análisis táctico continuo
+        scheduleBackgroundTask(
+            "tacticalAnalysis", periodMs = 10000L, budgetMs = 1000L, minimumLevel = ProtectionLevel.HIGH,
+            toleranceMs = 2000L, military = true, activeWhile = { isInitialized.get() }
+        ) { performTacticalAnalysis() }
+
+        // Verificación de integridad cuántica
+        if (militaryConfig.quantumEncryptionEnabled) {
+            scheduleBackgroundTask(
+                "quantumIntegrity", periodMs = 15000L, budgetMs = 500L, minimumLevel = ProtectionLevel.MEDIUM,
+                toleranceMs = 5000L, military = true,
+                activeWhile = { isInitialized.get() && isQuantumShieldActive.get() }
+            ) { monitorQuantumIntegrity() }
         }
     }
 
     private suspend fun monitorMilitaryThreats() {
-        while (isInitialized.get()) {
-            val threats = intelligenceEngine.scanForThreats()
-
-            if (threats.isNotEmpty()) {
-                processMilitaryThreats(threats)
-                threatCounter.addAndGet(threats.size)
-            }
-
-            updateThreatAssessment()
+        val threats = intelligenceEngine.scanForThreats()
 
-            delay(5000) // Cada 5 segundos
+        if (threats.isNotEmpty()) {
+            processMilitaryThreats(threats)
+            threatCounter.addAndGet(threats.size)
         }
+
+        updateThreatAssessment()
     }
 
     private suspend fun monitorIntrusionAttempts() {
-        while (isInitialized.get()) {
-            val intrusions = cyberWarfareUnit.detectIntrusions()
-
-            if (intrusions > 0) {
-                handleIntrusionAttempts(intrusions)
-                militaryMetrics.cyberAttacksRepelled += intrusions
-            }
+        val intrusions = cyberWarfareUnit.detectIntrusions()
 
-            delay(2000) // Cada 2 segundos
+        if (intrusions > 0) {
+            handleIntrusionAttempts(intrusions)
+            militaryMetrics.cyberAttacksRepelled.add(intrusions.toLong())
         }
     }
 
     private suspend fun performTacticalAnalysis() {
-        while (isInitialized.get()) {
-            val analysis = tacticalScanner.analyzeTacticalSituation()
-
-            if (analysis.recommendedAction != null) {
-                executeTacticalRecommendation(analysis.recommendedAction)
-            }
+        val analysis = tacticalScanner.analyzeTacticalSituation()
 
-            delay(10000) // Cada 10 segundos
+        if (analysis.recommendedAction != null) {
+            executeTacticalRecommendation(analysis.recommendedAction)
         }
     }
 
     private suspend fun monitorQuantumIntegrity() {
-        while (isInitialized.get() && isQuantumShieldActive.get()) {
-            val integrity = quantumDefense.verifyIntegrity()
-
-            _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-                quantumIntegrity = integrity
-            )
+        val integrity = quantumDefense.verifyIntegrity()
 
-            if (integrity < 0.9f) {
-                Log.w(TAG, "Quantum integrity degraded: $integrity")
-                quantumDefense.reinforceQuantumShield()
-            }
+        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
+            quantumIntegrity = integrity
+        )
 
-            delay(15000) // Cada 15 segundos
+        if (integrity < 0.9f) {
+            Log.w(TAG, "Quantum integrity degraded: $integrity")
+            quantumDefense.reinforceQuantumShield()
         }
     }
 
     private fun startTacticalScanning() {
-        militaryScope.launch {
-            while (_securityStatus.value.militaryMode != MilitaryMode.STANDBY) {
-                performTacticalScan()
-                delay(militaryConfig.tacticalScanInterval)
-            }
-        }
+        scheduleBackgroundTask(
+            "tacticalScanning", periodMs = militaryConfig.tacticalScanInterval, budgetMs = 500L,
+            minimumLevel = ProtectionLevel.HIGH, military = true,
+            activeWhile = { _securityStatus.value.militaryMode != MilitaryMode.STANDBY }
+        ) { performTacticalScan() }
     }
 
     private suspend fun performTacticalScan() {
         val threats = tacticalScanner.performScan()
-        militaryMetrics.tacticalScans++
+        militaryMetrics.tacticalScans.increment()
 
         if (threats.isNotEmpty()) {
             processMilitaryThreats(threats)
@@ -1398,34 +1898,53 @@ class SecurityManager(private val context: Context) {
     }
 
     private fun startQuantumKeyRotation() {
-        militaryScope.launch {
-            while (militaryConfig.quantumEncryptionEnabled) {
-                delay(militaryConfig.quantumKeyRotation)
-                quantumDefense.rotateKeys()
-                militaryMetrics.quantumEncryptions++
-            }
+        // La rotación de claves no se pausa con niveles bajos de protección
+        scheduleBackgroundTask(
+            "quantumKeyRotation", periodMs = militaryConfig.quantumKeyRotation, budgetMs = 2000L,
+            toleranceMs = 60000L, initialDelayMs = militaryConfig.quantumKeyRotation, military = true,
+            activeWhile = { militaryConfig.quantumEncryptionEnabled }
+        ) {
+            quantumDefense.rotateKeys()
+            militaryMetrics.quantumEncryptions.increment()
         }
     }
 
     private fun scheduleAutomaticScans() {
-        securityScope.launch {
-            while (true) {
-                delay(securityConfig.autoScanInterval)
-                performQuickScan()
-            }
-        }
+        scheduleBackgroundTask(
+            "automaticScans", periodMs = securityConfig.autoScanInterval, budgetMs = 60000L,
+            toleranceMs = 30000L, initialDelayMs = securityConfig.autoScanInterval
+        ) { performQuickScan() }
     }
 
     private suspend fun performQuickScan() {
-        val threats = malwareScanner.quickScan()
+        runQuickScan(ScanProgressTracker(generateScanId()))
+    }
+
+    private suspend fun runQuickScan(tracker: ScanProgressTracker): ScanResult {
+        val startTime = System.currentTimeMillis()
+        val outcome = coroutineScope {
+            launchScanner(tracker, "quick", SCANNER_TIMEOUT, ScannerCounter::streamedFindings) { malwareScanner.quickScan(it) }.await()
+        }
+
+        val threats = outcome.items
         if (threats.isNotEmpty()) {
             processDetectedThreats(threats)
         }
+
+        return ScanResult(
+            scanId = tracker.scanId,
+            threatsFound = threats.size,
+            threats = threats,
+            vulnerabilities = emptyList(),
+            scanDuration = System.currentTimeMillis() - startTime,
+            timestamp = System.currentTimeMillis(),
+            scannerStatuses = listOf(outcome.status)
+        )
     }
 
     private suspend fun processDetectedThreats(threats: List<ThreatInfo>) {
         for (threat in threats) {
-            _threatAlerts.emit(ThreatAlert(
+            publishThreatAlert(ThreatAlert(
                 id = threat.id,
                 type = ThreatType.valueOf(threat.type),
                 severity = ThreatSeverity.valueOf(threat.severity),
@@ -1450,7 +1969,7 @@ class SecurityManager(private val context: Context) {
             )
 
             // Emitir alerta militar
-            _militaryAlerts.emit(MilitaryAlert(
+            publishMilitaryAlert(MilitaryAlert(
                 id = threat.id,
                 level = determineDefconLevel(assessment),
                 threatAssessment = assessment,
@@ -1461,9 +1980,12 @@ class SecurityManager(private val context: Context) {
                 priority = determinePriority(threat.severity)
             ))
 
-            // Responder automáticamente si está habilitado
+            // Responder automáticamente si está habilitado; la cola ordena por severidad
             if (militaryConfig.autoCountermeasures) {
-                deployCountermeasure(threat, assessment)
+                responseQueue.submit(ThreatResponseQueue.ThreatResponse.Action(
+                    threatId = threat.id,
+                    priority = determinePriority(threat.severity)
+                ) { deployCountermeasure(threat, assessment) })
             }
         }
 
@@ -1506,9 +2028,9 @@ class SecurityManager(private val context: Context) {
             CountermeasureType.ABSOLUTE -> deployAbsoluteCountermeasure(threat)
         }
 
-        militaryMetrics.countermeasuresDeployed++
+        militaryMetrics.countermeasuresDeployed.increment()
 
-        _threatAlerts.emit(ThreatAlert(
+        publishThreatAlert(ThreatAlert(
             id = threat.id,
             type = threat.type,
             severity = threat.severity,
@@ -1523,10 +2045,44 @@ class SecurityManager(private val context: Context) {
     }
 
     private suspend fun deployBasicCountermeasure(threat: MilitaryThreatInfo) {
-        firewallManager.blockSource(threat.source)
+        // Se agrupa con los demás bloqueos del lote; no se espera desde el propio worker
+        val result = CompletableDeferred<String>()
+        val accepted = responseQueue.submit(ThreatResponseQueue.ThreatResponse.BlockSource(
+            threatId = threat.id,
+            priority = determinePriority(threat.severity),
+            source = threat.source,
+            result = result
+        ))
+        if (accepted) {
+            // Una respuesta más urgente aún puede expulsarlo de la cola llena
+            militaryScope.launch { ensureBlocked(threat.source, result) }
+        } else {
+            firewallManager.blockSource(threat.source)
+        }
         malwareScanner.quarantineThreat(threat.toThreatInfo())
     }
 
+    /**
+     * Bloquea directamente el origen si la cola descartó o no pudo aplicar su bloqueo
+     */
+    private suspend fun ensureBlocked(source: String, result: CompletableDeferred<String>) {
+        try {
+            if (result.await() != ThreatResponseQueue.SHED) return
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.w(TAG, "Batched block of $source failed; blocking directly", e)
+        }
+
+        try {
+            firewallManager.blockSource(source)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Fallback block of $source failed", e)
+        }
+    }
+
     private suspend fun deployAdvancedCountermeasure(threat: MilitaryThreatInfo) {
         deployBasicCountermeasure(threat)
         cyberWarfareUnit.neutralizeThreat(threat)
@@ -1567,6 +2123,7 @@ class SecurityManager(private val context: Context) {
 
     private suspend fun deployAllDefenses() {
         firewallManager.maximizeDefense()
+        defenseReconciler.invalidate(DefenseSubsystem.FIREWALL)
         malwareScanner.enableMaximumProtection()
         intrusionDetector.enableMaximumDetection()
         cyberWarfareUnit.deployAllDefenses()
@@ -1575,16 +2132,16 @@ class SecurityManager(private val context: Context) {
             quantumDefense.enableAllShields()
         }
 
-        _militarySecurityStatus.value = _militarySecurityStatus.value.copy(
-            activeCountermeasures = countermeasureSystem.getActiveCount()
-        )
+        _militarySecurityStatus.update {
+            it.copy(activeCountermeasures = countermeasureSystem.getActiveCount())
+        }
     }
 
     private suspend fun activateProtocol(protocol: MilitarySecurityProtocol) {
         if (!protocol.isActive) {
             militaryProtocols[protocol.id] = protocol.copy(isActive = true)
             executeProtocolActions(protocol)
-            militaryMetrics.militaryProtocolsExecuted++
+            militaryMetrics.militaryProtocolsExecuted.increment()
         }
     }
 
@@ -1742,6 +2299,7 @@ class SecurityManager(private val context: Context) {
     }
 
     private fun updateSecurityStatus() {
+        securityMetrics.activeThreats.set(activeThreatBlocks.size.toLong())
         _securityStatus.value = _securityStatus.value.copy(
             isFirewallActive = firewallManager.isActive(),
             isMalwareScanActive = malwareScanner.isActive(),
@@ -1749,7 +2307,7 @@ class SecurityManager(private val context: Context) {
             isAntiTheftActive = antiTheftSystem.isActive(),
             isEncryptionActive = encryptionEngine.isActive(),
             activeThreats = activeThreatBlocks.size,
-            blockedThreats = securityMetrics.threatsBlocked,
+            blockedThreats = securityMetrics.threatsBlocked.sum(),
             lastScanTime = System.currentTimeMillis(),
             quantumShieldActive = isQuantumShieldActive.get(),
             stealthModeActive = isStealthMode.get(),
@@ -1798,14 +2356,10 @@ class SecurityManager(private val context: Context) {
         return (baseIntegrity - threatPenalty + defensiveBonus).coerceIn(0f, 1f)
     }
 
-    private fun cleanupExpiredBlocks() {
-        val currentTime = System.currentTimeMillis()
-        val expiredBlocks = activeThreatBlocks.filter {
-            currentTime - it.value.blockTime > 3600000 // 1 hora
-        }
-
-        expiredBlocks.forEach { activeThreatBlocks.remove(it.key) }
-    }
+    /**
+     * Métricas del servicio de expiración (incluye el retraso de expiración)
+     */
+    fun getExpiryStats(): TimingWheelExpiryService.ExpiryStats = expiryService.getStats()
 
     private fun loadSecurityConfiguration() {
         // Cargar configuración de seguridad desde almacenamiento
@@ -1830,6 +2384,10 @@ class SecurityManager(private val context: Context) {
         // Deshabilitar interfaces no críticas durante lockdown
     }
 
+    private fun enableNonCriticalInterfaces() {
+        // Rehabilitar las interfaces deshabilitadas por el lockdown
+    }
+
     private suspend fun increaseProtectionLevel() {
         val currentLevel = _securityStatus.value.protectionLevel
         val newLevel = when (currentLevel) {
@@ -1851,70 +2409,7 @@ class SecurityManager(private val context: Context) {
      * Establece nivel de protección
      */
     suspend fun setProtectionLevel(level: ProtectionLevel) {
-        when (level) {
-            ProtectionLevel.LOW -> configureLowProtection()
-            ProtectionLevel.MEDIUM -> configureMediumProtection()
-            ProtectionLevel.HIGH -> configureHighProtection()
-            ProtectionLevel.ULTRA -> configureUltraProtection()
-            ProtectionLevel.MAXIMUM -> configureMaximumProtection()
-            ProtectionLevel.MILITARY -> configureMilitaryProtection()
-            ProtectionLevel.TACTICAL -> configureTacticalProtection()
-            ProtectionLevel.QUANTUM -> configureQuantumProtection()
-            ProtectionLevel.NUCLEAR -> configureNuclearProtection()
-        }
-
-        _securityStatus.value = _securityStatus.value.copy(
-            protectionLevel = level
-        )
-    }
-
-    private fun configureLowProtection() {
-        firewallManager.setLevel(FirewallLevel.BASIC)
-        malwareScanner.setIntensity(ScanIntensity.LOW)
-    }
-
-    private fun configureMediumProtection() {
-        firewallManager.setLevel(FirewallLevel.STANDARD)
-        malwareScanner.setIntensity(ScanIntensity.MEDIUM)
-    }
-
-    private fun configureHighProtection() {
-        firewallManager.setLevel(FirewallLevel.HIGH)
-        malwareScanner.setIntensity(ScanIntensity.HIGH)
-    }
-
-    private fun configureUltraProtection() {
-        firewallManager.setLevel(FirewallLevel.ULTRA)
-        malwareScanner.setIntensity(ScanIntensity.ULTRA)
-    }
-
-    private fun configureMaximumProtection() {
-        firewallManager.setLevel(FirewallLevel.MAXIMUM)
-        malwareScanner.setIntensity(ScanIntensity.MAXIMUM)
-    }
-
-    private suspend fun configureMilitaryProtection() {
-        configureMaximumProtection()
-        if (militaryConfig.militaryModeEnabled) {
-            activateCombatMode()
-        }
-    }
-
-    private suspend fun configureTacticalProtection() {
-        configureMilitaryProtection()
-        tacticalScanner.enableMaximumScanning()
-    }
-
-    private suspend fun configureQuantumProtection() {
-        configureTacticalProtection()
-        if (militaryConfig.quantumEncryptionEnabled) {
-            quantumDefense.activateQuantumShield()
-        }
-    }
-
-    private suspend fun configureNuclearProtection() {
-        configureQuantumProtection()
-        activateEmergencyProtocol()
+        reconfigureDefenses(_securityStatus.value.defconLevel, level, null)
     }
 
     // Funciones auxiliares para amenazas
@@ -1952,10 +2447,178 @@ class SecurityManager(private val context: Context) {
         )
     }
 
+    // ============== DISTRIBUCIÓN DE ALERTAS Y EVENTOS ==============
+
+    /**
+     * Suscripción a alertas con buffer propio y política de desbordamiento
+     */
+    fun subscribeThreatAlerts(
+        subscriber: String,
+        policy: BackpressureFanOut.OverflowPolicy = BackpressureFanOut.OverflowPolicy.DROP_OLDEST,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<ThreatAlert> = threatAlertFanOut.subscribe(subscriber, policy, capacity)
+
+    fun subscribeThreatAlertBatches(
+        subscriber: String,
+        maxBatchSize: Int = BackpressureFanOut.DEFAULT_BATCH_SIZE,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<List<ThreatAlert>> = threatAlertFanOut.subscribeBatched(subscriber, maxBatchSize, capacity)
+
+    /**
+     * Suscripción a eventos de seguridad con buffer propio y política de desbordamiento
+     */
+    fun subscribeSecurityEvents(
+        subscriber: String,
+        policy: BackpressureFanOut.OverflowPolicy = BackpressureFanOut.OverflowPolicy.DROP_OLDEST,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<SecurityEvent> = securityEventFanOut.subscribe(subscriber, policy, capacity)
+
+    fun subscribeSecurityEventBatches(
+        subscriber: String,
+        maxBatchSize: Int = BackpressureFanOut.DEFAULT_BATCH_SIZE,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<List<SecurityEvent>> = securityEventFanOut.subscribeBatched(subscriber, maxBatchSize, capacity)
+
+    /**
+     * Retraso y descartes por suscriptor de alertas y eventos
+     */
+    fun getSubscriberStats(): List<BackpressureFanOut.SubscriberStats> =
+        threatAlertFanOut.getSubscriberStats() + securityEventFanOut.getSubscriberStats()
+
+    private fun publishThreatAlert(alert: ThreatAlert) {
+        _threatAlerts.tryEmit(alert)
+        threatAlertFanOut.publish(alert)
+    }
+
+    private fun publishSecurityEvent(event: SecurityEvent) {
+        _securityEvents.tryEmit(event)
+        securityEventFanOut.publish(event)
+        encodeSecurityEvent(event)?.let { eventJournal.append(event.timestamp, JOURNAL_KIND_EVENT, it) }
+    }
+
+    private suspend fun publishMilitaryAlert(alert: MilitaryAlert) {
+        encodeMilitaryAlert(alert)?.let { eventJournal.append(alert.timestamp, JOURNAL_KIND_ALERT, it) }
+        _militaryAlerts.emit(alert)
+    }
+
+    // ============== DIARIO DE EVENTOS ==============
+
+    /**
+     * Eventos de seguridad persistidos desde el timestamp indicado, en orden de escritura.
+     * Los valores de metadata se recuperan como Long, Double, Boolean o String.
+     */
+    fun replaySecurityEvents(from: Long, to: Long = Long.MAX_VALUE): Flow<SecurityEvent> = flow {
+        eventJournal.replay(from, to, setOf(JOURNAL_KIND_EVENT)) { record ->
+            decodeSecurityEvent(record)?.let { emit(it) }
+        }
+    }.flowOn(Dispatchers.IO)
+
+    /**
+     * Alertas militares persistidas desde el timestamp indicado, en orden de escritura
+     */
+    fun replayMilitaryAlerts(from: Long, to: Long = Long.MAX_VALUE): Flow<MilitaryAlert> = flow {
+        eventJournal.replay(from, to, setOf(JOURNAL_KIND_ALERT)) { record ->
+            decodeMilitaryAlert(record)?.let { emit(it) }
+        }
+    }.flowOn(Dispatchers.IO)
+
+    /**
+     * Segmentos, compresión, lotes confirmados y descartes del diario
+     */
+    fun getJournalStats(): SecurityEventJournal.JournalStats = eventJournal.getStats()
+
+    private fun encodeSecurityEvent(event: SecurityEvent): ByteArray? = encodeRecord {
+        writeUTF(event.type.name)
+        writeUTF(event.description)
+        writeShort(event.metadata.size)
+        for ((key, value) in event.metadata) {
+            writeUTF(key)
+            when (value) {
+                is Int, is Long, is Short, is Byte -> { writeByte('L'.code); writeLong((value as Number).toLong()) }
+                is Float, is Double -> { writeByte('D'.code); writeDouble((value as Number).toDouble()) }
+                is Boolean -> { writeByte('Z'.code); writeBoolean(value) }
+                else -> { writeByte('S'.code); writeUTF(value.toString()) }
+            }
+        }
+    }
+
+    private fun encodeMilitaryAlert(alert: MilitaryAlert): ByteArray? = encodeRecord {
+        writeUTF(alert.id)
+        writeUTF(alert.level.name)
+        writeUTF(alert.threatAssessment.name)
+        writeUTF(alert.description)
+        writeUTF(alert.recommendedAction)
+        writeBoolean(alert.autoResponseEnabled)
+        writeInt(alert.priority)
+    }
+
+    private inline fun encodeRecord(write: DataOutputStream.() -> Unit): ByteArray? {
+        return try {
+            val bytes = ByteArrayOutputStream(128)
+            DataOutputStream(bytes).use { it.write() }
+            bytes.toByteArray()
+        } catch (e: IOException) {
+            // writeUTF rechaza cadenas de más de 64 KB codificadas
+            Log.w(TAG, "Skipping journal record: ${e.message}")
+            null
+        }
+    }
+
+    private fun decodeSecurityEvent(record: SecurityEventJournal.JournalRecord): SecurityEvent? = decodeRecord(record) {
+        val type = readEnum<SecurityEventType>() ?: return@decodeRecord null
+        val description = readUTF()
+        val metadata = LinkedHashMap<String, Any>()
+        repeat(readUnsignedShort()) {
+            val key = readUTF()
+            metadata[key] = when (readUnsignedByte().toChar()) {
+                'L' -> readLong()
+                'D' -> readDouble()
+                'Z' -> readBoolean()
+                else -> readUTF()
+            }
+        }
+        SecurityEvent(type, description, record.timestamp, metadata)
+    }
+
+    private fun decodeMilitaryAlert(record: SecurityEventJournal.JournalRecord): MilitaryAlert? = decodeRecord(record) {
+        val id = readUTF()
+        val level = readEnum<DefconLevel>() ?: return@decodeRecord null
+        val assessment = readEnum<ThreatAssessment>() ?: return@decodeRecord null
+        MilitaryAlert(
+            id = id,
+            level = level,
+            threatAssessment = assessment,
+            description = readUTF(),
+            recommendedAction = readUTF(),
+            timestamp = record.timestamp,
+            autoResponseEnabled = readBoolean(),
+            priority = readInt()
+        )
+    }
+
+    /**
+     * Enum guardado por nombre; un nombre que ya no existe descarta el registro
+     */
+    private inline fun <reified E : Enum<E>> DataInputStream.readEnum(): E? {
+        val name = readUTF()
+        val value = enumValues<E>().firstOrNull { it.name == name }
+        if (value == null) Log.w(TAG, "Unknown ${E::class.java.simpleName} '$name' in journal record")
+        return value
+    }
+
+    private inline fun <T> decodeRecord(record: SecurityEventJournal.JournalRecord, read: DataInputStream.() -> T?): T? {
+        return try {
+            DataInputStream(ByteArrayInputStream(record.payload)).use { it.read() }
+        } catch (e: IOException) {
+            Log.w(TAG, "Skipping unreadable journal record at ${record.timestamp}", e)
+            null
+        }
+    }
+
     /**
      * Obtiene total de amenazas bloqueadas
      */
-    fun getTotalThreatsBlocked(): Long = securityMetrics.threatsBlocked
+    fun getTotalThreatsBlocked(): Long = securityMetrics.threatsBlocked.sum()
 
     /**
      * Obtiene estado de protección para UI
@@ -1978,24 +2641,36 @@ class SecurityManager(private val context: Context) {
      * Obtiene métricas de seguridad militar para las interfaces
      */
     fun getSecurityMetricsForUI(): SecurityMetricsUI {
+        val snapshot = metricsRegistry.snapshot()
         return SecurityMetricsUI(
-            totalScans = securityMetrics.totalScans,
-            threatsDetected = securityMetrics.threatsDetected,
-            threatsBlocked = securityMetrics.threatsBlocked,
+            totalScans = snapshot.counter(SecurityMetrics.SCANS_TOTAL),
+            threatsDetected = snapshot.counter(SecurityMetrics.THREATS_DETECTED),
+            threatsBlocked = snapshot.counter(SecurityMetrics.THREATS_BLOCKED),
             protectionLevel = _securityStatus.value.protectionLevel.name,
             systemIntegrity = _securityStatus.value.systemIntegrity,
             lastScanTime = _securityStatus.value.lastScanTime,
             activeProtections = getActiveProtectionsCount(),
             militaryMode = _securityStatus.value.militaryMode.name,
             defconLevel = _securityStatus.value.defconLevel.name,
-            tacticalScans = militaryMetrics.tacticalScans,
-            cyberAttacksRepelled = militaryMetrics.cyberAttacksRepelled,
+            tacticalScans = snapshot.counter(MilitaryMetrics.TACTICAL_SCANS),
+            cyberAttacksRepelled = snapshot.counter(MilitaryMetrics.CYBER_ATTACKS_REPELLED),
             quantumShieldActive = _securityStatus.value.quantumShieldActive,
             stealthModeActive = _securityStatus.value.stealthModeActive,
-            militaryProtocolsActive = militaryProtocols.count { it.value.isActive }
+            militaryProtocolsActive = militaryProtocols.count { it.value.isActive },
+            successRate = SecurityMetrics.successRate(snapshot)
         )
     }
 
+    /**
+     * Instantánea de las métricas de esta instancia (seguridad, militares, cola de respuesta y reconfiguración)
+     */
+    fun getMetricsSnapshot(): MetricsRegistry.MetricsSnapshot = metricsRegistry.snapshot()
+
+    /**
+     * Métricas acumuladas desde la exportación anterior, para telemetría periódica
+     */
+    fun exportMetricsDelta(): MetricsRegistry.MetricsSnapshot = metricsRegistry.exportDelta()
+
     /**
      * Obtiene estado militar completo
      */
@@ -2038,9 +2713,9 @@ class SecurityManager(private val context: Context) {
         fun initialize() {}
         fun enableRealTimeScanning() {}
         fun isActive(): Boolean = true
-        suspend fun scanFileSystem(): List<ThreatInfo> = emptyList()
-        suspend fun scanMemory(): List<ThreatInfo> = emptyList()
-        suspend fun quickScan(): List<ThreatInfo> = emptyList()
+        suspend fun scanFileSystem(progress: ScannerCounter? = null): List<ThreatInfo> = emptyList()
+        suspend fun scanMemory(progress: ScannerCounter? = null): List<ThreatInfo> = emptyList()
+        suspend fun quickScan(progress: ScannerCounter? = null): List<ThreatInfo> = emptyList()
         suspend fun quarantineThreat(threat: ThreatInfo): String = "quarantined"
         suspend fun destroyThreat(threat: ThreatInfo): String = "destroyed"
         fun monitorFileSystem() {}
@@ -2074,21 +2749,46 @@ class SecurityManager(private val context: Context) {
         suspend fun activateEmergencyMode() {}
     }
 
+    /**
+     * Traduce las órdenes de firewall a reglas compiladas del FirewallRuleEngine compartido,
+     * que es el que consulta la ruta de paquetes de la VPN
+     */
     private inner class FirewallManager {
+        private val ruleEngine = FirewallRuleEngine.shared
+        // El motor es del proceso: cada instancia publica sus reglas bajo su propio origen
+        private val ruleOwner = "security@${System.identityHashCode(this@SecurityManager)}"
+
         fun initialize() {}
         fun activate() {}
         fun isActive(): Boolean = true
-        suspend fun blockSource(source: String): String = "blocked"
-        suspend fun activateEmergencyMode() {}
-        fun setLevel(level: FirewallLevel) {}
-        fun maximizeDefense() {}
-        fun blockAllCommunications() {}
+        suspend fun blockSource(source: String): String = blockSources(listOf(source))
+        suspend fun blockSources(sources: List<String>): String {
+            val compiled = ruleEngine.blockSources(sources, THREAT_BLOCK_TTL)
+            return if (compiled > 0) "firewall_rule_v${ruleEngine.current.version}" else "blocked"
+        }
+        suspend fun activateEmergencyMode() = setLevel(FirewallLevel.MAXIMUM)
+        fun setLevel(level: FirewallLevel) = ruleEngine.setPortRanges(ruleOwner, level.blockedPorts())
+        fun maximizeDefense() = setLevel(FirewallLevel.MAXIMUM)
+        fun blockAllCommunications() = ruleEngine.setBlockAll(ruleOwner, true)
+        fun restoreCommunications() = ruleEngine.setBlockAll(ruleOwner, false)
         fun enableSilentMode() {}
+        fun getRuleEngineStats(): FirewallRuleEngine.RuleEngineStats = ruleEngine.getStats()
+    }
+
+    /**
+     * Puertos de servicios expuestos que se cortan en cada nivel (acumulativo)
+     */
+    private fun FirewallLevel.blockedPorts(): List<IntRange> = when (this) {
+        FirewallLevel.BASIC -> emptyList()
+        FirewallLevel.STANDARD -> listOf(23..23) // Telnet
+        FirewallLevel.HIGH -> FirewallLevel.STANDARD.blockedPorts() + listOf(135..139, 445..445) // RPC, NetBIOS, SMB
+        FirewallLevel.ULTRA -> FirewallLevel.HIGH.blockedPorts() + listOf(1433..1434, 3389..3389, 5900..5900) // SQL, RDP, VNC
+        FirewallLevel.MAXIMUM -> FirewallLevel.ULTRA.blockedPorts() + listOf(4444..4444, 6660..6669) // Shells, IRC
     }
 
     private inner class VulnerabilityScanner {
         fun initialize() {}
-        suspend fun scanSystem(): List<String> = emptyList()
+        suspend fun scanSystem(progress: ScannerCounter? = null): List<String> = emptyList()
     }
 
     // Implementaciones militares
@@ -0,0 +1,407 @@
+package com.guardianai.security.quantum_encryption
+
+import kotlinx.coroutines.*
+import java.io.ByteArrayInputStream
+import java.io.EOFException
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.SeekableByteChannel
+import java.nio.channels.WritableByteChannel
+import java.util.concurrent.Executors
+import javax.crypto.AEADBadTagException
+import javax.crypto.Cipher
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Cifrado autenticado AES-GCM por segmentos para cargas grandes
+ * - Segmentos de tamaño fijo cifrados de forma independiente: memoria constante
+ * - Nonce por segmento = prefijo aleatorio || contador || marca de último segmento
+ * - La marca de último segmento autentica el fin del flujo y detecta truncamientos
+ * - Cualquier segmento puede descifrarse por separado conociendo su índice
+ *
+ * Formato: cabecera [magic][versión][tamaño de segmento][sal 16][prefijo 7]
+ * seguida de segmentos de (tamaño + 16 bytes de etiqueta); el último puede ser menor
+ */
+class SegmentedAesGcm(
+    private val segmentSize: Int = DEFAULT_SEGMENT_SIZE,
+    private val parallelism: Int = Runtime.getRuntime().availableProcessors()
+) {
+
+    companion object {
+        const val DEFAULT_SEGMENT_SIZE = 64 * 1024
+        const val HEADER_SIZE = 32
+        private const val MAGIC = 0x47515331 // "GQS1"
+        private const val VERSION: Byte = 1
+        private const val TAG_SIZE = 16
+        private const val SALT_SIZE = 16
+        private const val NONCE_PREFIX_SIZE = 7
+        private const val NONCE_SIZE = 12
+        private const val KEY_SIZE = 32
+        private val SEGMENT_KEY_INFO = "GuardianQE segment key".toByteArray(Charsets.UTF_8)
+        private val entropyPool = EntropyPool.shared
+        
+        // Cada hilo trabajador conserva su propia instancia de Cipher
+        private val threadCipher = ThreadLocal.withInitial { Cipher.getInstance("AES/GCM/NoPadding") }
+        
+        /**
+         * Pool acotado compartido para el cifrado paralelo de segmentos
+         */
+        private val workerPool: ExecutorCoroutineDispatcher by lazy {
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) { runnable ->
+                Thread(runnable, "segment-aead").apply { isDaemon = true }
+            }.asCoroutineDispatcher()
+        }
+    }
+
+    data class StreamStats(
+        val plaintextBytes: Long,
+        val segments: Long,
+        val elapsedMs: Long
+    ) {
+        val throughputMBps: Double
+            get() = if (elapsedMs > 0) plaintextBytes / 1048576.0 / (elapsedMs / 1000.0) else 0.0
+    }
+
+    init {
+        require(segmentSize in 1024..(16 * 1024 * 1024)) { "Tamaño de segmento inválido: $segmentSize" }
+    }
+
+    private val ciphertextSegmentSize = segmentSize + TAG_SIZE
+
+    /**
+     * Parámetros de un flujo: clave de segmentos, prefijo de nonce y cabecera usada como AAD
+     */
+    private class StreamContext(val segmentKey: SecretKeySpec, val noncePrefix: ByteArray, val header: ByteArray)
+
+    fun encrypt(key: ByteArray, source: ReadableByteChannel, sink: WritableByteChannel): StreamStats {
+        val startTime = System.nanoTime()
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        val salt = ByteArray(SALT_SIZE).also { entropyPool.nextBytes(it) }
+        val noncePrefix = ByteArray(NONCE_PREFIX_SIZE).also { entropyPool.nextBytes(it) }
+        header.putInt(MAGIC).put(VERSION).putInt(segmentSize).put(salt).put(noncePrefix)
+        val context = createContext(key, header.array())
+        header.flip()
+        writeFully(sink, header)
+
+        val cipher = threadCipher.get()
+        val nonce = ByteArray(NONCE_SIZE)
+        var current = ByteBuffer.allocate(segmentSize)
+        var next = ByteBuffer.allocate(segmentSize)
+        val output = ByteBuffer.allocate(ciphertextSegmentSize)
+        var plaintextBytes = 0L
+        var segment = 0L
+
+        // Se lee un segmento por adelantado para saber cuál es el último
+        readFully(source, current)
+        while (true) {
+            val last = current.hasRemaining() || readFully(source, next) == 0
+            current.flip()
+            plaintextBytes += current.remaining()
+
+            initCipher(cipher, Cipher.ENCRYPT_MODE, context, nonce, segment, last)
+            output.clear()
+            cipher.doFinal(current, output)
+            output.flip()
+            writeFully(sink, output)
+            segment++
+
+            if (last) break
+            val tmp = current
+            current = next
+            next = tmp
+            next.clear()
+        }
+
+        return StreamStats(plaintextBytes, segment, (System.nanoTime() - startTime) / 1_000_000)
+    }
+
+    fun decrypt(key: ByteArray, source: ReadableByteChannel, sink: WritableByteChannel): StreamStats {
+        val startTime = System.nanoTime()
+        val context = readHeader(key, source)
+
+        val cipher = threadCipher.get()
+        val nonce = ByteArray(NONCE_SIZE)
+        var current = ByteBuffer.allocate(ciphertextSegmentSize)
+        var next = ByteBuffer.allocate(ciphertextSegmentSize)
+        val output = ByteBuffer.allocate(segmentSize)
+        var plaintextBytes = 0L
+        var segment = 0L
+
+        readFully(source, current)
+        while (true) {
+            // Un segmento incompleto sólo puede ser el último; uno completo lo es si no hay más datos
+            val last = current.hasRemaining() || readFully(source, next) == 0
+            current.flip()
+            if (current.remaining() < TAG_SIZE) throw AEADBadTagException("Flujo truncado en el segmento $segment")
+
+            initCipher(cipher, Cipher.DECRYPT_MODE, context, nonce, segment, last)
+            output.clear()
+            cipher.doFinal(current, output)
+            output.flip()
+            plaintextBytes += output.remaining()
+            writeFully(sink, output)
+            segment++
+
+            if (last) break
+            val tmp = current
+            current = next
+            next = tmp
+            next.clear()
+        }
+
+        return StreamStats(plaintextBytes, segment, (System.nanoTime() - startTime) / 1_000_000)
+    }
+
+    /**
+     * Variante en memoria para mensajes pequeños: mismo formato, sin búferes intermedios
+     */
+    fun encrypt(key: ByteArray, data: ByteArray): ByteArray {
+        val segments = maxOf(1, (data.size + segmentSize - 1) / segmentSize)
+        val output = ByteArray(HEADER_SIZE + data.size + segments * TAG_SIZE)
+        val header = ByteBuffer.wrap(output, 0, HEADER_SIZE)
+        header.putInt(MAGIC).put(VERSION).putInt(segmentSize)
+        entropyPool.nextBytes(ByteArray(SALT_SIZE + NONCE_PREFIX_SIZE).also { header.put(it) })
+        val context = createContext(key, output.copyOf(HEADER_SIZE))
+        encryptSegments(context, data, output, 0, segments, segments)
+        return output
+    }
+
+    fun decrypt(key: ByteArray, data: ByteArray): ByteArray {
+        if (data.size < HEADER_SIZE + TAG_SIZE) throw AEADBadTagException("Datos cifrados incompletos")
+        val context = readHeader(key, Channels.newChannel(ByteArrayInputStream(data, 0, HEADER_SIZE)))
+        val segments = (data.size - HEADER_SIZE + ciphertextSegmentSize - 1) / ciphertextSegmentSize
+        if (data.size - HEADER_SIZE - (segments - 1) * ciphertextSegmentSize < TAG_SIZE) {
+            throw AEADBadTagException("Flujo truncado en el segmento ${segments - 1}")
+        }
+        val output = ByteArray(data.size - HEADER_SIZE - segments * TAG_SIZE)
+        decryptSegments(context, data, output, 0, segments, segments)
+        return output
+    }
+
+    /**
+     * Cifrado en memoria repartido entre el pool: cada trabajador escribe su propio
+     * rango contiguo de la salida, por lo que el resultado ya queda en orden
+     */
+    suspend fun encryptParallel(key: ByteArray, data: ByteArray): ByteArray {
+        val segments = maxOf(1, (data.size + segmentSize - 1) / segmentSize)
+        if (segments < 2 || parallelism < 2) return encrypt(key, data)
+
+        val output = ByteArray(HEADER_SIZE + data.size + segments * TAG_SIZE)
+        val header = ByteBuffer.wrap(output, 0, HEADER_SIZE)
+        header.putInt(MAGIC).put(VERSION).putInt(segmentSize)
+        entropyPool.nextBytes(ByteArray(SALT_SIZE + NONCE_PREFIX_SIZE).also { header.put(it) })
+        val context = createContext(key, output.copyOf(HEADER_SIZE))
+
+        forEachRange(segments) { from, to -> encryptSegments(context, data, output, from, to, segments) }
+        return output
+    }
+
+    suspend fun decryptParallel(key: ByteArray, data: ByteArray): ByteArray {
+        val segments = (data.size - HEADER_SIZE + ciphertextSegmentSize - 1) / ciphertextSegmentSize
+        if (segments < 2 || parallelism < 2) return decrypt(key, data)
+
+        val context = readHeader(key, Channels.newChannel(ByteArrayInputStream(data, 0, HEADER_SIZE)))
+        if (data.size - HEADER_SIZE - (segments - 1) * ciphertextSegmentSize < TAG_SIZE) {
+            throw AEADBadTagException("Flujo truncado en el segmento ${segments - 1}")
+        }
+        val output = ByteArray(data.size - HEADER_SIZE - segments * TAG_SIZE)
+
+        forEachRange(segments) { from, to -> decryptSegments(context, data, output, from, to, segments) }
+        return output
+    }
+
+    /**
+     * Cifrado de flujos en paralelo: se leen ventanas de segmentos, se cifran en el pool
+     * y se escriben en secuencia; la memoria sigue acotada al tamaño de la ventana
+     */
+    suspend fun encryptParallel(key: ByteArray, source: ReadableByteChannel, sink: WritableByteChannel): StreamStats {
+        if (parallelism < 2) return encrypt(key, source, sink)
+        val startTime = System.nanoTime()
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        val salt = ByteArray(SALT_SIZE).also { entropyPool.nextBytes(it) }
+        val noncePrefix = ByteArray(NONCE_PREFIX_SIZE).also { entropyPool.nextBytes(it) }
+        header.putInt(MAGIC).put(VERSION).putInt(segmentSize).put(salt).put(noncePrefix)
+        val context = createContext(key, header.array())
+        header.flip()
+        writeFully(sink, header)
+
+        return processWindows(Cipher.ENCRYPT_MODE, context, source, sink, segmentSize, ciphertextSegmentSize, startTime)
+    }
+
+    suspend fun decryptParallel(key: ByteArray, source: ReadableByteChannel, sink: WritableByteChannel): StreamStats {
+        if (parallelism < 2) return decrypt(key, source, sink)
+        val startTime = System.nanoTime()
+        val context = readHeader(key, source)
+        return processWindows(Cipher.DECRYPT_MODE, context, source, sink, ciphertextSegmentSize, segmentSize, startTime)
+    }
+
+    private suspend fun processWindows(
+        mode: Int,
+        context: StreamContext,
+        source: ReadableByteChannel,
+        sink: WritableByteChannel,
+        inputSize: Int,
+        outputSize: Int,
+        startTime: Long
+    ): StreamStats = coroutineScope {
+        val window = parallelism * 2
+        val inputs = Array(window) { ByteBuffer.allocate(inputSize) }
+        val outputs = Array(window) { ByteBuffer.allocate(outputSize) }
+        val lastFlags = BooleanArray(window)
+        var carry = ByteBuffer.allocate(inputSize)
+        var plaintextBytes = 0L
+        var segment = 0L
+        var finished = false
+
+        readFully(source, carry)
+        while (!finished) {
+            // Llenar la ventana; el búfer de arrastre conserva el segmento leído por adelantado
+            var count = 0
+            while (count < window && !finished) {
+                val current = carry
+                carry = inputs[count]
+                carry.clear()
+                inputs[count] = current
+
+                val last = current.hasRemaining() || readFully(source, carry) == 0
+                current.flip()
+                if (mode == Cipher.DECRYPT_MODE && current.remaining() < TAG_SIZE) {
+                    throw AEADBadTagException("Flujo truncado en el segmento ${segment + count}")
+                }
+                lastFlags[count] = last
+                finished = last
+                count++
+            }
+
+            val base = segment
+            (0 until count).map { i ->
+                async(workerPool) {
+                    val cipher = threadCipher.get()
+                    initCipher(cipher, mode, context, ByteArray(NONCE_SIZE), base + i, lastFlags[i])
+                    outputs[i].clear()
+                    cipher.doFinal(inputs[i], outputs[i])
+                    outputs[i].flip()
+                }
+            }.awaitAll()
+
+            // Escritura en orden de secuencia
+            for (i in 0 until count) {
+                plaintextBytes += if (mode == Cipher.ENCRYPT_MODE) inputs[i].limit() else outputs[i].remaining()
+                writeFully(sink, outputs[i])
+            }
+            segment += count
+        }
+
+        StreamStats(plaintextBytes, segment, (System.nanoTime() - startTime) / 1_000_000)
+    }
+
+    private suspend fun forEachRange(segments: Int, block: (Int, Int) -> Unit) = coroutineScope {
+        val workers = minOf(parallelism, segments)
+        val perWorker = (segments + workers - 1) / workers
+        (0 until workers).map { worker ->
+            val from = worker * perWorker
+            val to = minOf(segments, from + perWorker)
+            async(workerPool) { if (from < to) block(from, to) }
+        }.awaitAll()
+    }
+
+    private fun encryptSegments(context: StreamContext, data: ByteArray, output: ByteArray, from: Int, to: Int, segments: Int) {
+        val cipher = threadCipher.get()
+        val nonce = ByteArray(NONCE_SIZE)
+        for (segment in from until to) {
+            val offset = segment * segmentSize
+            val length = minOf(segmentSize, data.size - offset)
+            initCipher(cipher, Cipher.ENCRYPT_MODE, context, nonce, segment.toLong(), segment == segments - 1)
+            cipher.doFinal(data, offset, length, output, HEADER_SIZE + segment * ciphertextSegmentSize)
+        }
+    }
+
+    private fun decryptSegments(context: StreamContext, data: ByteArray, output: ByteArray, from: Int, to: Int, segments: Int) {
+        val cipher = threadCipher.get()
+        val nonce = ByteArray(NONCE_SIZE)
+        for (segment in from until to) {
+            val offset = HEADER_SIZE + segment * ciphertextSegmentSize
+            val length = minOf(ciphertextSegmentSize, data.size - offset)
+            initCipher(cipher, Cipher.DECRYPT_MODE, context, nonce, segment.toLong(), segment == segments - 1)
+            cipher.doFinal(data, offset, length, output, segment * segmentSize)
+        }
+    }
+
+    /**
+     * Descifra un único segmento sin procesar los anteriores
+     */
+    fun decryptSegment(key: ByteArray, channel: SeekableByteChannel, segmentIndex: Long): ByteArray {
+        val segments = segmentCount(channel)
+        require(segmentIndex in 0 until segments) { "Segmento fuera de rango: $segmentIndex de $segments" }
+
+        channel.position(0)
+        val context = readHeader(key, channel)
+        channel.position(HEADER_SIZE + segmentIndex * ciphertextSegmentSize)
+
+        val input = ByteBuffer.allocate(ciphertextSegmentSize)
+        readFully(channel, input)
+        input.flip()
+        val output = ByteBuffer.allocate(maxOf(0, input.remaining() - TAG_SIZE))
+
+        val cipher = threadCipher.get()
+        initCipher(cipher, Cipher.DECRYPT_MODE, context, ByteArray(NONCE_SIZE), segmentIndex, segmentIndex == segments - 1)
+        cipher.doFinal(input, output)
+        return output.array()
+    }
+
+    fun segmentCount(channel: SeekableByteChannel): Long {
+        val payload = channel.size() - HEADER_SIZE
+        if (payload < TAG_SIZE) throw AEADBadTagException("Flujo cifrado incompleto")
+        return (payload + ciphertextSegmentSize - 1) / ciphertextSegmentSize
+    }
+
+    private fun readHeader(key: ByteArray, source: ReadableByteChannel): StreamContext {
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        if (readFully(source, header) < HEADER_SIZE) throw EOFException("Cabecera de flujo cifrado incompleta")
+        header.flip()
+        if (header.getInt() != MAGIC || header.get() != VERSION) throw AEADBadTagException("Formato de flujo desconocido")
+        if (header.getInt() != segmentSize) throw AEADBadTagException("Tamaño de segmento distinto al del flujo")
+        return createContext(key, header.array())
+    }
+
+    private fun createContext(key: ByteArray, header: ByteArray): StreamContext {
+        val salt = header.copyOfRange(9, 9 + SALT_SIZE)
+        val noncePrefix = header.copyOfRange(9 + SALT_SIZE, HEADER_SIZE)
+        val prk = Hkdf.extract(salt, key)
+        val segmentKey = Hkdf.expand(prk, SEGMENT_KEY_INFO, KEY_SIZE)
+        prk.fill(0)
+        val spec = SecretKeySpec(segmentKey, "AES")
+        segmentKey.fill(0)
+        return StreamContext(spec, noncePrefix, header)
+    }
+
+    private fun initCipher(cipher: Cipher, mode: Int, context: StreamContext, nonce: ByteArray, segment: Long, last: Boolean) {
+        require(segment < 0xFFFFFFFFL) { "Demasiados segmentos en el flujo" }
+        System.arraycopy(context.noncePrefix, 0, nonce, 0, NONCE_PREFIX_SIZE)
+        nonce[7] = (segment ushr 24).toByte()
+        nonce[8] = (segment ushr 16).toByte()
+        nonce[9] = (segment ushr 8).toByte()
+        nonce[10] = segment.toByte()
+        nonce[11] = if (last) 1 else 0
+        cipher.init(mode, context.segmentKey, GCMParameterSpec(TAG_SIZE * 8, nonce))
+        cipher.updateAAD(context.header)
+    }
+
+    private fun readFully(channel: ReadableByteChannel, buffer: ByteBuffer): Int {
+        var total = 0
+        while (buffer.hasRemaining()) {
+            val read = channel.read(buffer)
+            if (read < 0) break
+            total += read
+        }
+        return total
+    }
+
+    private fun writeFully(channel: WritableByteChannel, buffer: ByteBuffer) {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+    }
+}
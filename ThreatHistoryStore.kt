@@ -0,0 +1,380 @@
+package com.guardianai.communication.real_time
+
+import com.google.gson.Gson
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.util.TreeMap
+
+/**
+ * Almacén histórico de amenazas particionado por tiempo
+ * Segmentos horarios de sólo-anexado con pie de índice (min/max de timestamp,
+ * máscaras y conteos por severidad y tipo). Las consultas por rango sólo abren
+ * los segmentos que se solapan y entregan los registros en streaming.
+ */
+class ThreatHistoryStore(
+    private val directory: File,
+    private val retentionMs: Long = DEFAULT_RETENTION_MS,
+    private val maxOpenWriters: Int = 2
+) {
+
+    companion object {
+        const val SEGMENT_DURATION_MS = 3600000L // 1 hora
+        const val DEFAULT_RETENTION_MS = 90L * 24 * 3600000L // 90 días
+        private const val SEGMENT_PREFIX = "seg_"
+        private const val LOG_SUFFIX = ".log"
+        private const val INDEX_SUFFIX = ".idx"
+        private const val RECORD_HEADER_BYTES = 8 + 1 + 1 + 4
+        private const val IO_BUFFER_SIZE = 32 * 1024
+    }
+
+    /**
+     * Pie de índice de un segmento
+     */
+    data class SegmentMeta(
+        val bucket: Long,
+        var minTimestamp: Long = Long.MAX_VALUE,
+        var maxTimestamp: Long = Long.MIN_VALUE,
+        var recordCount: Int = 0,
+        var logLength: Long = 0L,
+        var severityMask: Int = 0,
+        var typeMask: Int = 0,
+        val severityCounts: IntArray = IntArray(ThreatIntelligenceEngine.ThreatSeverity.values().size),
+        val typeCounts: IntArray = IntArray(ThreatIntelligenceEngine.ThreatUpdateType.values().size)
+    ) {
+        fun overlaps(start: Long, end: Long): Boolean =
+            recordCount > 0 && minTimestamp <= end && maxTimestamp >= start
+
+        fun record(timestamp: Long, severity: Int, type: Int, bytes: Int) {
+            if (timestamp < minTimestamp) minTimestamp = timestamp
+            if (timestamp > maxTimestamp) maxTimestamp = timestamp
+            recordCount++
+            logLength += bytes
+            severityMask = severityMask or (1 shl severity)
+            typeMask = typeMask or (1 shl type)
+            severityCounts[severity]++
+            typeCounts[type]++
+        }
+    }
+
+    private val gson = Gson()
+    private val segments = TreeMap<Long, SegmentMeta>()
+    private val writers = LinkedHashMap<Long, DataOutputStream>(maxOpenWriters + 1, 0.75f, true)
+    private val lock = Any()
+
+    init {
+        if (!directory.exists()) directory.mkdirs()
+        loadSegments()
+    }
+
+    /**
+     * Anexa una actualización al segmento de su hora
+     */
+    fun append(update: ThreatIntelligenceEngine.ThreatUpdate) {
+        val payload = gson.toJson(update).toByteArray(Charsets.UTF_8)
+        val bucket = bucketOf(update.timestamp)
+
+        synchronized(lock) {
+            val out = writerFor(bucket)
+            out.writeLong(update.timestamp)
+            out.writeByte(update.severity.ordinal)
+            out.writeByte(update.type.ordinal)
+            out.writeInt(payload.size)
+            out.write(payload)
+            out.flush()
+
+            segments.getOrPut(bucket) { SegmentMeta(bucket) }
+                .record(update.timestamp, update.severity.ordinal, update.type.ordinal, RECORD_HEADER_BYTES + payload.size)
+        }
+    }
+
+    /**
+     * Recorre en streaming las actualizaciones del rango; sólo abre segmentos que se solapan
+     * y omite sin deserializar los registros que no cumplen los filtros de severidad o tipo
+     */
+    fun scan(
+        start: Long,
+        end: Long,
+        severities: Set<ThreatIntelligenceEngine.ThreatSeverity> = emptySet(),
+        types: Set<ThreatIntelligenceEngine.ThreatUpdateType> = emptySet(),
+        consumer: (ThreatIntelligenceEngine.ThreatUpdate) -> Unit
+    ) {
+        val severityFilter = severities.fold(0) { mask, s -> mask or (1 shl s.ordinal) }
+        val typeFilter = types.fold(0) { mask, t -> mask or (1 shl t.ordinal) }
+
+        val candidates = synchronized(lock) {
+            // Los segmentos horarios sólo contienen timestamps de su hora
+            segments.subMap(bucketOf(start), true, bucketOf(end), true).values
+                .filter { meta ->
+                    meta.overlaps(start, end) &&
+                        (severityFilter == 0 || meta.severityMask and severityFilter != 0) &&
+                        (typeFilter == 0 || meta.typeMask and typeFilter != 0)
+                }
+                .map { it.bucket to it.logLength }
+        }
+
+        for ((bucket, length) in candidates) {
+            synchronized(lock) { writers[bucket]?.flush() }
+            readSegment(logFile(bucket), length) { timestamp, severity, type, size, input ->
+                val matches = timestamp in start..end &&
+                    (severityFilter == 0 || (1 shl severity) and severityFilter != 0) &&
+                    (typeFilter == 0 || (1 shl type) and typeFilter != 0)
+
+                if (matches) {
+                    val payload = ByteArray(size)
+                    input.readFully(payload)
+                    consumer(gson.fromJson(String(payload, Charsets.UTF_8), ThreatIntelligenceEngine.ThreatUpdate::class.java))
+                } else {
+                    skipFully(input, size)
+                }
+            }
+        }
+    }
+
+    /**
+     * Conteos por severidad en el rango usando sólo los pies de índice cuando el segmento cae entero dentro
+     */
+    fun countBySeverity(start: Long, end: Long): IntArray {
+        val counts = IntArray(ThreatIntelligenceEngine.ThreatSeverity.values().size)
+        val partial = mutableListOf<Long>()
+
+        synchronized(lock) {
+            for (meta in segments.subMap(bucketOf(start), true, bucketOf(end), true).values) {
+                if (!meta.overlaps(start, end)) continue
+                if (meta.minTimestamp >= start && meta.maxTimestamp <= end) {
+                    for (i in counts.indices) counts[i] += meta.severityCounts[i]
+                } else {
+                    partial.add(meta.bucket)
+                }
+            }
+        }
+
+        for (bucket in partial) {
+            val segmentStart = maxOf(start, bucket)
+            val segmentEnd = minOf(end, bucket + SEGMENT_DURATION_MS - 1)
+            scan(segmentStart, segmentEnd) { counts[it.severity.ordinal]++ }
+        }
+        return counts
+    }
+
+    fun getSegmentCount(): Int = synchronized(lock) { segments.size }
+
+    /**
+     * Elimina segmentos fuera del período de retención
+     */
+    fun applyRetention(now: Long = System.currentTimeMillis()) {
+        val cutoff = now - retentionMs
+        synchronized(lock) {
+            val expired = segments.headMap(bucketOf(cutoff), false).keys.toList()
+            for (bucket in expired) {
+                writers.remove(bucket)?.close()
+                logFile(bucket).delete()
+                indexFile(bucket).delete()
+                segments.remove(bucket)
+            }
+        }
+    }
+
+    /**
+     * Cierra los segmentos abiertos escribiendo sus pies de índice
+     */
+    fun close() {
+        synchronized(lock) {
+            for ((bucket, out) in writers) {
+                out.close()
+                segments[bucket]?.let { writeIndex(it) }
+            }
+            writers.clear()
+        }
+    }
+
+    private fun writerFor(bucket: Long): DataOutputStream {
+        writers[bucket]?.let { return it }
+
+        // Sellar el segmento menos usado al superar el límite de escritores abiertos
+        while (writers.size >= maxOpenWriters) {
+            val eldest = writers.entries.iterator().next()
+            eldest.value.close()
+            segments[eldest.key]?.let { writeIndex(it) }
+            writers.remove(eldest.key)
+            applyRetention()
+        }
+
+        // Un pie escrito deja de ser válido cuando el segmento vuelve a crecer
+        indexFile(bucket).delete()
+
+        val out = DataOutputStream(BufferedOutputStream(FileOutputStream(logFile(bucket), true), IO_BUFFER_SIZE))
+        writers[bucket] = out
+        return out
+    }
+
+    private fun loadSegments() {
+        val logs = directory.listFiles { file ->
+            file.name.startsWith(SEGMENT_PREFIX) && file.name.endsWith(LOG_SUFFIX)
+        } ?: return
+
+        for (log in logs) {
+            val bucket = log.name.removePrefix(SEGMENT_PREFIX).removeSuffix(LOG_SUFFIX).toLongOrNull() ?: continue
+            val meta = readIndex(bucket)?.takeIf { it.logLength == log.length() } ?: rebuildIndex(bucket, log)
+            segments[bucket] = meta
+        }
+    }
+
+    /**
+     * Reconstruye el pie leyendo sólo las cabeceras; trunca un registro final incompleto
+     */
+    private fun rebuildIndex(bucket: Long, log: File): SegmentMeta {
+        val meta = SegmentMeta(bucket)
+        readSegment(log, log.length()) { timestamp, severity, type, size, input ->
+            skipFully(input, size)
+            meta.record(timestamp, severity, type, RECORD_HEADER_BYTES + size)
+        }
+        if (meta.logLength < log.length()) {
+            FileOutputStream(log, true).channel.use { it.truncate(meta.logLength) }
+        }
+        writeIndex(meta)
+        return meta
+    }
+
+    private inline fun readSegment(
+        log: File,
+        length: Long,
+        onRecord: (timestamp: Long, severity: Int, type: Int, size: Int, input: DataInputStream) -> Unit
+    ) {
+        if (!log.exists()) return
+        DataInputStream(BufferedInputStream(FileInputStream(log), IO_BUFFER_SIZE)).use { input ->
+            var position = 0L
+            while (position + RECORD_HEADER_BYTES <= length) {
+                val timestamp: Long
+                val severity: Int
+                val type: Int
+                val size: Int
+                try {
+                    timestamp = input.readLong()
+                    severity = input.readUnsignedByte()
+                    type = input.readUnsignedByte()
+                    size = input.readInt()
+                } catch (e: EOFException) {
+                    return
+                }
+                if (size < 0 || position + RECORD_HEADER_BYTES + size > length) return
+                onRecord(timestamp, severity, type, size, input)
+                position += RECORD_HEADER_BYTES + size
+            }
+        }
+    }
+
+    private fun writeIndex(meta: SegmentMeta) {
+        val tmp = File(directory, "$SEGMENT_PREFIX${meta.bucket}$INDEX_SUFFIX.tmp")
+        DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { out ->
+            out.writeLong(meta.minTimestamp)
+            out.writeLong(meta.maxTimestamp)
+            out.writeInt(meta.recordCount)
+            out.writeLong(meta.logLength)
+            out.writeInt(meta.severityMask)
+            out.writeInt(meta.typeMask)
+            out.writeInt(meta.severityCounts.size)
+            meta.severityCounts.forEach { out.writeInt(it) }
+            out.writeInt(meta.typeCounts.size)
+            meta.typeCounts.forEach { out.writeInt(it) }
+        }
+        tmp.renameTo(indexFile(meta.bucket))
+    }
+
+    private fun readIndex(bucket: Long): SegmentMeta? {
+        val file = indexFile(bucket)
+        if (!file.exists()) return null
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                val meta = SegmentMeta(
+                    bucket = bucket,
+                    minTimestamp = input.readLong(),
+                    maxTimestamp = input.readLong(),
+                    recordCount = input.readInt(),
+                    logLength = input.readLong(),
+                    severityMask = input.readInt(),
+                    typeMask = input.readInt()
+                )
+                val severityCount = input.readInt()
+                if (severityCount != meta.severityCounts.size) return null
+                for (i in 0 until severityCount) meta.severityCounts[i] = input.readInt()
+                val typeCount = input.readInt()
+                if (typeCount != meta.typeCounts.size) return null
+                for (i in 0 until typeCount) meta.typeCounts[i] = input.readInt()
+                meta
+            }
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    private fun skipFully(input: DataInputStream, bytes: Int) {
+        var remaining = bytes
+        while (remaining > 0) {
+            val skipped = input.skipBytes(remaining)
+            if (skipped <= 0) throw EOFException()
+            remaining -= skipped
+        }
+    }
+
+    private fun bucketOf(timestamp: Long): Long = Math.floorDiv(timestamp, SEGMENT_DURATION_MS) * SEGMENT_DURATION_MS
+    private fun logFile(bucket: Long) = File(directory, "$SEGMENT_PREFIX$bucket$LOG_SUFFIX")
+    private fun indexFile(bucket: Long) = File(directory, "$SEGMENT_PREFIX$bucket$INDEX_SUFFIX")
+}
+
+/**
+ * Constructor incremental de reportes: consume actualizaciones en streaming
+ * y conserva sólo agregados y muestras acotadas de IOCs y TTPs
+ */
+class ThreatReportAccumulator(
+    private val windowStart: Long,
+    private val windowEnd: Long,
+    private val maxIOCs: Int = 500,
+    private val maxTTPs: Int = 200
+) {
+    var totalThreats = 0L
+        private set
+    val severityCounts = LongArray(ThreatIntelligenceEngine.ThreatSeverity.values().size)
+    val typeCounts = LongArray(ThreatIntelligenceEngine.ThreatUpdateType.values().size)
+
+    // Conteos por tipo en la primera y segunda mitad de la ventana, para tendencias
+    val firstHalfTypeCounts = LongArray(ThreatIntelligenceEngine.ThreatUpdateType.values().size)
+    val secondHalfTypeCounts = LongArray(ThreatIntelligenceEngine.ThreatUpdateType.values().size)
+
+    val sourceCounts = HashMap<String, Int>()
+    val sectorCounts = HashMap<String, Int>()
+    val iocs = LinkedHashMap<String, ThreatIntelligenceEngine.IOC>()
+    val ttps = LinkedHashMap<String, ThreatIntelligenceEngine.TTP>()
+    var confidenceSum = 0.0
+        private set
+
+    private val midpoint = windowStart + (windowEnd - windowStart) / 2
+
+    fun accept(update: ThreatIntelligenceEngine.ThreatUpdate) {
+        totalThreats++
+        severityCounts[update.severity.ordinal]++
+        typeCounts[update.type.ordinal]++
+        if (update.timestamp < midpoint) {
+            firstHalfTypeCounts[update.type.ordinal]++
+        } else {
+            secondHalfTypeCounts[update.type.ordinal]++
+        }
+        confidenceSum += update.confidence
+        sourceCounts.merge(update.source, 1, Int::plus)
+
+        for (ioc in update.iocs) {
+            for (tag in ioc.context.tags) sectorCounts.merge(tag, 1, Int::plus)
+            if (iocs.size < maxIOCs || iocs.containsKey(ioc.id)) iocs[ioc.id] = ioc
+        }
+        for (ttp in update.ttps) {
+            if (ttps.size < maxTTPs) ttps.putIfAbsent(ttp.id, ttp)
+        }
+    }
+
+    fun averageConfidence(): Float = if (totalThreats > 0) (confidenceSum / totalThreats).toFloat() else 0f
+}
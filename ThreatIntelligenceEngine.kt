@@ -1,27 +1,78 @@
 package com.guardianai.communication.real_time
 
 import android.content.Context
+import android.util.Log
+import com.guardianai.BuildConfig
+import com.guardianai.managers.BackpressureFanOut
+import com.guardianai.managers.TimingWheelExpiryService
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.*
+import java.io.File
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.*
+import retrofit2.Retrofit
+import retrofit2.converter.gson.GsonConverterFactory
+import retrofit2.http.GET
+import retrofit2.http.Query
 
 /**
  * Motor Avanzado de Inteligencia de Amenazas
  * Implementa análisis predictivo, correlación de IOCs y feeds en tiempo real
  * Trabaja con activity_guardian_threat_intelligence_center.xml
  */
-class ThreatIntelligenceEngine(private val context: Context) {
+class ThreatIntelligenceEngine(
+    private val context: Context,
+    reputationFeedUrl: String = BuildConfig.AI_SERVICES_API_URL + "threat-intel/"
+) {
+    
+    companion object {
+        private const val TAG = "ThreatIntelligence"
+        private const val DAY_MS = 24 * 3600000L
+        private const val CAMPAIGN_LIFETIME = 180L * DAY_MS // Campañas inactivas 6 meses
+        private const val FORECAST_CHECKPOINT_INTERVAL = 300000L // 5 minutos
+        private const val MALICIOUS_REPUTATION_THRESHOLD = 0.3f
+    }
     
     private val threatFeedManager = ThreatFeedManager()
     private val iocAnalyzer = IOCAnalyzer()
     private val ttpAnalyzer = TTPAnalyzer()
     private val predictiveAnalyzer = PredictiveAnalyzer()
     private val correlationEngine = CorrelationEngine()
+    private val iocFeedImporter = IOCFeedImporter()
+    private val clusterEngine = IOCClusterEngine()
+    private val forecaster = OnlineThreatForecaster(File(context.filesDir, "threat_forecast.bin"))
+    private val historyStore = ThreatHistoryStore(File(context.filesDir, "threat_history"))
+    
+    // Feed externo de reputación; la URL es configurable para apuntar a un servidor local de pruebas
+    private val reputationApi = Retrofit.Builder()
+        .baseUrl(reputationFeedUrl)
+        .addConverterFactory(GsonConverterFactory.create())
+        .build()
+        .create(ThreatReputationApi::class.java)
+    
+    // Los resultados limpios se cachean como entradas negativas con un TTL más corto
+    private val reputationCache = ReputationCache<String, ReputationVerdict>(
+        isNegative = { it.score >= MALICIOUS_REPUTATION_THRESHOLD },
+        loader = { key -> fetchReputation(key) }
+    )
+    
+    // Directorio donde el equipo de inteligencia deposita volcados de feeds
+    private val feedDirectory = File(context.filesDir, "threat_feeds")
+    
+    // Tabla IP→ubicación mapeada en memoria; se compila desde geoip.csv cuando cambia
+    private val geoDatabaseFile = File(context.filesDir, "geoip.bin")
+    @Volatile private var geoDatabase: GeoIpDatabase? = null
     
     // Flujos de datos en tiempo real
-    private val _threatUpdates = MutableSharedFlow<ThreatUpdate>()
+    // El SharedFlow legado no suspende al publicador; los nuevos colectores usan el fan-out
+    private val _threatUpdates = MutableSharedFlow<ThreatUpdate>(
+        extraBufferCapacity = BackpressureFanOut.DEFAULT_CAPACITY,
+        onBufferOverflow = BufferOverflow.DROP_OLDEST
+    )
     val threatUpdates: SharedFlow<ThreatUpdate> = _threatUpdates.asSharedFlow()
+    private val threatUpdateFanOut = BackpressureFanOut<ThreatUpdate>("threatUpdates")
     
     private val _globalThreatLevel = MutableStateFlow(ThreatLevel.MODERATE)
     val globalThreatLevel: StateFlow<ThreatLevel> = _globalThreatLevel.asStateFlow()
@@ -29,12 +80,27 @@ class ThreatIntelligenceEngine(private val context: Context) {
     private val _activeThreatCount = MutableStateFlow(0)
     val activeThreatCount: StateFlow<Int> = _activeThreatCount.asStateFlow()
     
+    // Candidatos a campaña emitidos por el agrupamiento incremental
+    // Un canal los retiene hasta que arranca el detector, así no se pierden los de la importación inicial
+    private val campaignCandidates = Channel<IOCClusterEngine.ClusterCandidate>(
+        BackpressureFanOut.DEFAULT_CAPACITY,
+        BufferOverflow.DROP_OLDEST
+    )
+    
+    private val _feedImportProgress = MutableStateFlow<IOCFeedImporter.ImportProgress?>(null)
+    val feedImportProgress: StateFlow<IOCFeedImporter.ImportProgress?> = _feedImportProgress.asStateFlow()
+    
     // Bases de datos de inteligencia
     private val threatActors = ConcurrentHashMap<String, ThreatActor>()
     private val indicators = ConcurrentHashMap<String, IOC>()
     private val campaigns = ConcurrentHashMap<String, ThreatCampaign>()
     private val ttps = ConcurrentHashMap<String, TTP>()
     
+    // Ciclo de vida de IOCs y campañas mediante el servicio compartido de expiración
+    private val expiryService = TimingWheelExpiryService.shared
+    private val indicatorExpiry = ConcurrentHashMap<String, TimingWheelExpiryService.ExpiryHandle>()
+    private val campaignExpiry = ConcurrentHashMap<String, TimingWheelExpiryService.ExpiryHandle>()
+    
     data class ThreatUpdate(
         val id: String,
         val type: ThreatUpdateType,
@@ -182,13 +248,28 @@ class ThreatIntelligenceEngine(private val context: Context) {
      * Inicializa el motor de inteligencia de amenazas
      */
     suspend fun initialize() {
-        loadThreatIntelligenceData()
         initializeFeedSources()
         startRealTimeMonitoring()
+        
+        // Importar volcados grandes puede tardar minutos: se hace en segundo plano
+        CoroutineScope(Dispatchers.IO).launch { loadThreatIntelligenceData() }
+        
         beginPredictiveAnalysis()
         startCorrelationEngine()
     }
     
+    /**
+     * Importa un volcado de feed (STIX 2.x o JSON plano) al índice de IOCs en lotes
+     * Si una importación previa se interrumpió, continúa desde el último lote confirmado
+     */
+    suspend fun importIOCFeed(file: File): IOCFeedImporter.ImportResult = withContext(Dispatchers.IO) {
+        iocFeedImporter.import(
+            file = file,
+            sink = { batch -> indexIOCs(batch) },
+            onProgress = { progress -> _feedImportProgress.value = progress }
+        )
+    }
+    
     /**
      * Inicia monitoreo en tiempo real de amenazas
      */
@@ -217,14 +298,15 @@ class ThreatIntelligenceEngine(private val context: Context) {
         // Buscar en bases de datos locales
         val localMatches = searchLocalIOCs(ioc, type)
         
-        // Consultar feeds externos
-        val externalMatches = queryExternalFeeds(ioc, type)
+        // Consultar feeds externos y reputación a través de la caché
+        val verdict = lookupReputation(ioc, type)
+        val externalMatches = verdict.matches
         
         // Análisis contextual
         val contextAnalysis = performContextualAnalysis(ioc, type, localMatches + externalMatches)
         
         // Análisis de reputación
-        val reputationScore = calculateReputationScore(ioc, type)
+        val reputationScore = verdict.score
         
         // Predicción de amenazas relacionadas
         val relatedThreats = predictRelatedThreats(ioc, type, contextAnalysis)
@@ -234,7 +316,7 @@ class ThreatIntelligenceEngine(private val context: Context) {
         return IOCAnalysisResult(
             ioc = ioc,
             type = type,
-            isMalicious = reputationScore < 0.3f,
+            isMalicious = reputationScore < MALICIOUS_REPUTATION_THRESHOLD,
             confidence = contextAnalysis.confidence,
             reputationScore = reputationScore,
             associatedThreats = relatedThreats,
@@ -268,7 +350,7 @@ class ThreatIntelligenceEngine(private val context: Context) {
         correlations.addAll(ttpCorrelations)
         
         // Detectar posibles campañas
-        val possibleCampaigns = detectPossibleCampaigns(correlations)
+        val possibleCampaigns = detectPossibleCampaigns(iocs, correlations)
         
         return CorrelationResult(
             correlations = correlations,
@@ -280,52 +362,54 @@ class ThreatIntelligenceEngine(private val context: Context) {
     
     /**
      * Genera reporte de inteligencia de amenazas
+     * Los datos del período se recorren en streaming desde el almacén histórico,
+     * de modo que la memoria no depende de la longitud del período
      */
     suspend fun generateThreatReport(
         timeframe: TimeFrame,
         sectors: List<String> = emptyList(),
         geography: List<String> = emptyList()
-    ): ThreatIntelligenceReport {
+    ): ThreatIntelligenceReport = withContext(Dispatchers.IO) {
         
         val reportId = generateReportId()
         val startTime = timeframe.startTime
         val endTime = timeframe.endTime
         
-        // Recopilar datos del período
-        val periodThreats = getThreatsByTimeframe(startTime, endTime)
-        val periodIOCs = getIOCsByTimeframe(startTime, endTime)
-        val periodTTPs = getTTPsByTimeframe(startTime, endTime)
-        
-        // Filtrar por sectores y geografía si se especifica
-        val filteredThreats = filterBySectorsAndGeography(periodThreats, sectors, geography)
+        // Recopilar datos del período filtrando por sectores y geografía si se especifica
+        val accumulator = ThreatReportAccumulator(startTime, endTime)
+        historyStore.scan(startTime, endTime) { update ->
+            if (matchesSectorsAndGeography(update, sectors, geography)) {
+                accumulator.accept(update)
+            }
+        }
         
         // Análisis de tendencias
-        val trendAnalysis = analyzeTrends(filteredThreats)
+        val trendAnalysis = analyzeTrends(accumulator)
         
         // Identificar amenazas emergentes
-        val emergingThreats = identifyEmergingThreats(filteredThreats)
+        val emergingThreats = identifyEmergingThreats(accumulator)
         
         // Generar hallazgos clave
         val keyFindings = generateKeyFindings(trendAnalysis, emergingThreats)
         
         // Generar recomendaciones
-        val recommendations = generateRecommendations(filteredThreats, trendAnalysis)
+        val recommendations = generateRecommendations(accumulator, trendAnalysis)
         
         // Calcular nivel de riesgo
-        val riskLevel = calculateOverallRiskLevel(filteredThreats)
+        val riskLevel = calculateOverallRiskLevel(accumulator)
         
-        return ThreatIntelligenceReport(
+        ThreatIntelligenceReport(
             id = reportId,
             title = "Reporte de Inteligencia de Amenazas - ${formatTimeframe(timeframe)}",
-            summary = generateReportSummary(filteredThreats, trendAnalysis),
+            summary = generateReportSummary(accumulator, trendAnalysis),
             keyFindings = keyFindings,
             recommendations = recommendations,
-            iocs = periodIOCs,
-            ttps = periodTTPs,
-            affectedSectors = extractAffectedSectors(filteredThreats),
+            iocs = accumulator.iocs.values.toList(),
+            ttps = accumulator.ttps.values.toList(),
+            affectedSectors = extractAffectedSectors(accumulator),
             riskLevel = riskLevel,
-            confidence = calculateReportConfidence(filteredThreats),
-            sources = extractSources(filteredThreats),
+            confidence = calculateReportConfidence(accumulator),
+            sources = extractSources(accumulator),
             createdAt = System.currentTimeMillis(),
             updatedAt = System.currentTimeMillis()
         )
@@ -338,11 +422,14 @@ class ThreatIntelligenceEngine(private val context: Context) {
         timeHorizon: Long = 7 * 24 * 60 * 60 * 1000L // 7 días
     ): ThreatPrediction {
         
+        // Pronóstico en línea por serie; no reprocesa el historial
+        val forecasts = forecaster.forecastAll(timeHorizon)
+        
         // Análisis de patrones históricos
-        val historicalPatterns = analyzeHistoricalPatterns()
+        val historicalPatterns = analyzeHistoricalPatterns(forecasts)
         
         // Análisis de tendencias actuales
-        val currentTrends = analyzeCurrentTrends()
+        val currentTrends = analyzeCurrentTrends(forecasts)
         
         // Factores geopolíticos
         val geopoliticalFactors = analyzeGeopoliticalFactors()
@@ -352,7 +439,8 @@ class ThreatIntelligenceEngine(private val context: Context) {
             historicalPatterns,
             currentTrends,
             geopoliticalFactors,
-            timeHorizon
+            timeHorizon,
+            forecasts
         )
         
         return ThreatPrediction(
@@ -365,13 +453,48 @@ class ThreatIntelligenceEngine(private val context: Context) {
         )
     }
     
+    /**
+     * Suscripción con buffer propio; un colector lento no frena la ingesta de feeds
+     */
+    fun subscribeThreatUpdates(
+        subscriber: String,
+        policy: BackpressureFanOut.OverflowPolicy = BackpressureFanOut.OverflowPolicy.DROP_OLDEST,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<ThreatUpdate> = threatUpdateFanOut.subscribe(subscriber, policy, capacity)
+    
+    /**
+     * Suscripción por lotes para consumidores que procesan ráfagas
+     */
+    fun subscribeThreatUpdateBatches(
+        subscriber: String,
+        maxBatchSize: Int = BackpressureFanOut.DEFAULT_BATCH_SIZE,
+        capacity: Int = BackpressureFanOut.DEFAULT_CAPACITY
+    ): Flow<List<ThreatUpdate>> = threatUpdateFanOut.subscribeBatched(subscriber, maxBatchSize, capacity)
+    
+    /**
+     * Retraso y descartes por suscriptor de actualizaciones
+     */
+    fun getThreatUpdateSubscriberStats(): List<BackpressureFanOut.SubscriberStats> =
+        threatUpdateFanOut.getSubscriberStats()
+    
+    /**
+     * Tasa de aciertos y latencia ahorrada por la caché de reputación
+     */
+    fun getReputationCacheStats(): ReputationCache.CacheStats = reputationCache.getStats()
+    
+    private fun publishThreatUpdate(update: ThreatUpdate) {
+        _threatUpdates.tryEmit(update)
+        threatUpdateFanOut.publish(update)
+    }
+    
     /**
      * Monitorea feeds de amenazas en tiempo real
      */
     private suspend fun monitorThreatFeeds() {
-        threatFeedManager.getUpdates().collect { update ->
+        threatFeedManager.getUpdates().collect { received ->
+            val update = geoTag(received)
             processThreatUpdate(update)
-            _threatUpdates.emit(update)
+            publishThreatUpdate(update)
             
             // Actualizar contadores
             updateThreatCounters()
@@ -406,7 +529,7 @@ class ThreatIntelligenceEngine(private val context: Context) {
                         confidence = correlationResult.confidence
                     )
                     
-                    _threatUpdates.emit(campaignAlert)
+                    publishThreatUpdate(campaignAlert)
                 }
             }
             
@@ -444,7 +567,7 @@ class ThreatIntelligenceEngine(private val context: Context) {
                     confidence = 0.95f
                 )
                 
-                _threatUpdates.emit(levelChangeAlert)
+                publishThreatUpdate(levelChangeAlert)
             }
             
             delay(60000) // Cada minuto
@@ -452,16 +575,138 @@ class ThreatIntelligenceEngine(private val context: Context) {
     }
     
     // Métodos auxiliares
-    private fun loadThreatIntelligenceData() {
-        // Cargar datos de inteligencia de amenazas
+    private suspend fun loadThreatIntelligenceData() {
+        loadGeoDatabase()
+        
+        // Cargar volcados de feeds pendientes; los ya importados se omiten por su checkpoint
+        val feeds = feedDirectory.listFiles { file -> file.isFile && file.name.endsWith(".json") } ?: return
+        
+        for (feed in feeds.sortedBy { it.name }) {
+            try {
+                importIOCFeed(feed)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                // Un feed corrupto no debe impedir cargar el resto
+                Log.e(TAG, "Failed to import threat feed ${feed.name}", e)
+            }
+        }
     }
     
+    private fun loadGeoDatabase() {
+        val csv = File(feedDirectory, "geoip.csv")
+        try {
+            // También se recompila si el binario es de una versión anterior del formato
+            val current = GeoIpDatabase.open(geoDatabaseFile)
+            if (csv.exists() && (current == null || csv.lastModified() > geoDatabaseFile.lastModified())) {
+                GeoIpDatabase.compile(csv, geoDatabaseFile)
+                geoDatabase = GeoIpDatabase.open(geoDatabaseFile)
+            } else {
+                geoDatabase = current
+            }
+        } catch (e: Exception) {
+            // Sin base de geolocalización las actualizaciones simplemente no se etiquetan
+            Log.w(TAG, "GeoIP database unavailable", e)
+        }
+    }
+    
+    /**
+     * Completa la geolocalización de una actualización a partir de su primer IOC de tipo IP
+     */
+    private fun geoTag(update: ThreatUpdate): ThreatUpdate {
+        if (update.geolocation != null) return update
+        val database = geoDatabase ?: return update
+        for (ioc in update.iocs) {
+            if (ioc.type != IOCType.IP_ADDRESS) continue
+            val location = database.resolve(ioc.value) ?: continue
+            return update.copy(geolocation = location)
+        }
+        return update
+    }
+    
+    /**
+     * Ubicación de una dirección IPv4 según la base local
+     */
+    fun resolveGeoLocation(ip: String): GeoLocation? = geoDatabase?.resolve(ip)
+    
     private fun initializeFeedSources() {
-        // Inicializar fuentes de feeds
+        // Preparar el directorio de volcados de feeds
+        if (!feedDirectory.exists()) {
+            feedDirectory.mkdirs()
+        }
+    }
+    
+    private fun indexIOCs(batch: List<IOC>, ttpIds: List<String> = emptyList()) {
+        for (ioc in batch) {
+            val key = indicatorKey(ioc.type, ioc.value)
+            val existing = indicators[key]
+            val merged = if (existing == null) ioc else existing.copy(
+                firstSeen = minOf(existing.firstSeen, ioc.firstSeen),
+                lastSeen = maxOf(existing.lastSeen, ioc.lastSeen),
+                confidence = maxOf(existing.confidence, ioc.confidence),
+                sources = (existing.sources + ioc.sources).distinct()
+            )
+            indicators[key] = merged
+            scheduleIndicatorExpiry(key, merged)
+            
+            // Enlazar con IOCs que comparten infraestructura
+            clusterEngine.add(key, merged, ttpIds)?.let { campaignCandidates.trySend(it) }
+        }
+    }
+    
+    /**
+     * Reprograma la expiración del IOC a partir de su última observación
+     */
+    private fun scheduleIndicatorExpiry(key: String, ioc: IOC) {
+        val deadline = ioc.lastSeen + getIOCLifetime(ioc.type)
+        val handle = expiryService.scheduleAt(deadline) {
+            if (indicators.remove(key, ioc)) {
+                indicatorExpiry.remove(key)
+                clusterEngine.remove(key)
+            }
+        }
+        indicatorExpiry.put(key, handle)?.cancel()
+    }
+    
+    private fun storeCampaign(campaign: ThreatCampaign) {
+        campaigns[campaign.id] = campaign
+        val lastActivity = campaign.endDate ?: campaign.timeline.maxOfOrNull { it.timestamp } ?: campaign.startDate
+        val handle = expiryService.scheduleAt(lastActivity + CAMPAIGN_LIFETIME) {
+            if (campaigns.remove(campaign.id, campaign)) campaignExpiry.remove(campaign.id)
+        }
+        campaignExpiry.put(campaign.id, handle)?.cancel()
+    }
+    
+    private fun getIOCLifetime(type: IOCType): Long {
+        return when (type) {
+            IOCType.IP_ADDRESS -> 30L * DAY_MS // Las IPs se reasignan con frecuencia
+            IOCType.URL, IOCType.USER_AGENT -> 60L * DAY_MS
+            IOCType.DOMAIN, IOCType.EMAIL, IOCType.SSL_CERT -> 90L * DAY_MS
+            IOCType.FILE_HASH, IOCType.MUTEX, IOCType.REGISTRY_KEY,
+            IOCType.YARA_RULE, IOCType.NETWORK_SIGNATURE -> 365L * DAY_MS
+        }
+    }
+    
+    /**
+     * Clave canónica del indicador; sólo se normaliza la caja donde no es significativa
+     * (las rutas y consultas de URL, mutex o claves de registro distinguen mayúsculas)
+     */
+    private fun indicatorKey(type: IOCType, value: String): String {
+        val canonical = when (type) {
+            IOCType.DOMAIN, IOCType.FILE_HASH, IOCType.EMAIL, IOCType.IP_ADDRESS -> value.lowercase()
+            else -> value
+        }
+        return "${type.name}:$canonical"
     }
     
     private fun beginPredictiveAnalysis() {
-        // Iniciar análisis predictivo
+        // Persistir periódicamente el modelo para no perderlo en reinicios
+        CoroutineScope(Dispatchers.IO).launch {
+            while (isActive) {
+                delay(FORECAST_CHECKPOINT_INTERVAL)
+                forecaster.checkpoint()
+            }
+        }
     }
     
     private fun startCorrelationEngine() {
@@ -469,52 +714,266 @@ class ThreatIntelligenceEngine(private val context: Context) {
     }
     
     private fun searchLocalIOCs(ioc: String, type: IOCType): List<IOCMatch> = emptyList()
-    private suspend fun queryExternalFeeds(ioc: String, type: IOCType): List<IOCMatch> = emptyList()
+    
+    private suspend fun lookupReputation(ioc: String, type: IOCType): ReputationVerdict {
+        return try {
+            reputationCache.get(indicatorKey(type, ioc))
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            // Feed no disponible: reputación neutra sin coincidencias externas
+            ReputationVerdict(0.5f, emptyList())
+        }
+    }
+    
+    private suspend fun fetchReputation(key: String): ReputationVerdict {
+        val separator = key.indexOf(':')
+        val response = reputationApi.getReputation(key.substring(0, separator), key.substring(separator + 1))
+        return ReputationVerdict(
+            score = response.score.coerceIn(0f, 1f),
+            matches = response.sources.map { IOCMatch(it.name, it.confidence) }
+        )
+    }
+    
     private fun performContextualAnalysis(ioc: String, type: IOCType, matches: List<IOCMatch>): ContextualAnalysis = ContextualAnalysis()
-    private fun calculateReputationScore(ioc: String, type: IOCType): Float = 0.5f
     private fun predictRelatedThreats(ioc: String, type: IOCType, context: ContextualAnalysis): List<String> = emptyList()
     private fun generateIOCRecommendations(ioc: String, type: IOCType, reputation: Float): List<String> = emptyList()
     
     private fun findTemporalCorrelations(iocs: List<IOC>): List<IOCCorrelation> = emptyList()
-    private fun findGeographicCorrelations(iocs: List<IOC>): List<IOCCorrelation> = emptyList()
+    
+    /**
+     * Agrupa las IPs por país usando los identificadores de diccionario, sin resolver cadenas por IOC
+     */
+    private fun findGeographicCorrelations(iocs: List<IOC>): List<IOCCorrelation> {
+        val database = geoDatabase ?: return emptyList()
+        val countsByCountry = HashMap<Int, Int>()
+        var located = 0
+        
+        for (ioc in iocs) {
+            if (ioc.type != IOCType.IP_ADDRESS) continue
+            val index = database.lookup(ioc.value)
+            if (index == GeoIpDatabase.NOT_FOUND) continue
+            countsByCountry.merge(database.countryId(index), 1, Int::plus)
+            located++
+        }
+        
+        return countsByCountry
+            .filter { it.value > 1 }
+            .map { (countryId, count) ->
+                IOCCorrelation("geographic:${database.name(countryId)}", count.toFloat() / located)
+            }
+    }
+    
     private fun findActorCorrelations(iocs: List<IOC>): List<IOCCorrelation> = emptyList()
     private fun findTTPCorrelations(iocs: List<IOC>): List<IOCCorrelation> = emptyList()
-    private fun detectPossibleCampaigns(correlations: List<IOCCorrelation>): List<String> = emptyList()
+    private fun detectPossibleCampaigns(iocs: List<IOC>, correlations: List<IOCCorrelation>): List<String> {
+        // Campañas cuyos clústeres contienen alguno de los IOCs correlacionados
+        return iocs.mapNotNull { ioc ->
+            val key = indicatorKey(ioc.type, ioc.value)
+            if (clusterEngine.clusterSize(key) >= IOCClusterEngine.DEFAULT_SIZE_THRESHOLD) {
+                clusterEngine.clusterOf(key)?.let { campaignId(it) }
+            } else null
+        }.distinct()
+    }
     private fun calculateCorrelationConfidence(correlations: List<IOCCorrelation>): Float = 0.5f
     private fun assessCorrelationRisk(correlations: List<IOCCorrelation>): ThreatSeverity = ThreatSeverity.MEDIUM
     
     private fun generateReportId(): String = "TR_${System.currentTimeMillis()}"
     private fun generateUpdateId(): String = "TU_${System.currentTimeMillis()}"
     
-    private fun getThreatsByTimeframe(start: Long, end: Long): List<ThreatUpdate> = emptyList()
-    private fun getIOCsByTimeframe(start: Long, end: Long): List<IOC> = emptyList()
-    private fun getTTPsByTimeframe(start: Long, end: Long): List<TTP> = emptyList()
-    private fun filterBySectorsAndGeography(threats: List<ThreatUpdate>, sectors: List<String>, geography: List<String>): List<ThreatUpdate> = threats
-    
-    private fun analyzeTrends(threats: List<ThreatUpdate>): TrendAnalysis = TrendAnalysis()
-    private fun identifyEmergingThreats(threats: List<ThreatUpdate>): List<ThreatUpdate> = emptyList()
-    private fun generateKeyFindings(trends: TrendAnalysis, emerging: List<ThreatUpdate>): List<String> = emptyList()
-    private fun generateRecommendations(threats: List<ThreatUpdate>, trends: TrendAnalysis): List<String> = emptyList()
-    private fun calculateOverallRiskLevel(threats: List<ThreatUpdate>): ThreatSeverity = ThreatSeverity.MEDIUM
-    private fun generateReportSummary(threats: List<ThreatUpdate>, trends: TrendAnalysis): String = ""
-    private fun extractAffectedSectors(threats: List<ThreatUpdate>): List<String> = emptyList()
-    private fun calculateReportConfidence(threats: List<ThreatUpdate>): Float = 0.8f
-    private fun extractSources(threats: List<ThreatUpdate>): List<String> = emptyList()
-    private fun formatTimeframe(timeframe: TimeFrame): String = ""
-    
-    private fun analyzeHistoricalPatterns(): HistoricalPatterns = HistoricalPatterns()
-    private fun analyzeCurrentTrends(): CurrentTrends = CurrentTrends()
+    private fun getThreatsByTimeframe(start: Long, end: Long, limit: Int = 1000): List<ThreatUpdate> {
+        val threats = ArrayList<ThreatUpdate>()
+        historyStore.scan(start, end) { if (threats.size < limit) threats.add(it) }
+        return threats
+    }
+    
+    private fun getIOCsByTimeframe(start: Long, end: Long, limit: Int = 1000): List<IOC> {
+        val iocs = LinkedHashMap<String, IOC>()
+        historyStore.scan(start, end) { update ->
+            for (ioc in update.iocs) if (iocs.size < limit) iocs.putIfAbsent(ioc.id, ioc)
+        }
+        return iocs.values.toList()
+    }
+    
+    private fun getTTPsByTimeframe(start: Long, end: Long, limit: Int = 1000): List<TTP> {
+        val ttps = LinkedHashMap<String, TTP>()
+        historyStore.scan(start, end) { update ->
+            for (ttp in update.ttps) if (ttps.size < limit) ttps.putIfAbsent(ttp.id, ttp)
+        }
+        return ttps.values.toList()
+    }
+    
+    private fun matchesSectorsAndGeography(update: ThreatUpdate, sectors: List<String>, geography: List<String>): Boolean {
+        val sectorMatch = sectors.isEmpty() || update.iocs.any { ioc ->
+            ioc.context.tags.any { tag -> sectors.any { it.equals(tag, ignoreCase = true) } }
+        }
+        val geoMatch = geography.isEmpty() || update.geolocation?.let { geo ->
+            geography.any { it.equals(geo.country, ignoreCase = true) || it.equals(geo.region, ignoreCase = true) }
+        } == true
+        return sectorMatch && geoMatch
+    }
+    
+    private fun analyzeTrends(accumulator: ThreatReportAccumulator): TrendAnalysis {
+        val trends = ThreatUpdateType.values().mapNotNull { type ->
+            val before = accumulator.firstHalfTypeCounts[type.ordinal]
+            val after = accumulator.secondHalfTypeCounts[type.ordinal]
+            when {
+                before == 0L && after == 0L -> null
+                after > before * 3 / 2 -> "${type.name}: en aumento ($before → $after)"
+                after * 3 / 2 < before -> "${type.name}: en descenso ($before → $after)"
+                else -> null
+            }
+        }
+        return TrendAnalysis(trends)
+    }
+    
+    private fun identifyEmergingThreats(accumulator: ThreatReportAccumulator): List<ThreatUpdateType> {
+        // Tipos ausentes en la primera mitad del período que aparecen en la segunda
+        return ThreatUpdateType.values().filter { type ->
+            accumulator.firstHalfTypeCounts[type.ordinal] == 0L && accumulator.secondHalfTypeCounts[type.ordinal] > 0L
+        }
+    }
+    
+    private fun generateKeyFindings(trends: TrendAnalysis, emerging: List<ThreatUpdateType>): List<String> {
+        return trends.trends + emerging.map { "Actividad emergente: ${it.name}" }
+    }
+    
+    private fun generateRecommendations(accumulator: ThreatReportAccumulator, trends: TrendAnalysis): List<String> {
+        val recommendations = mutableListOf<String>()
+        if (accumulator.severityCounts[ThreatSeverity.CRITICAL.ordinal] > 0) {
+            recommendations.add("Priorizar la contención de amenazas críticas")
+        }
+        if (accumulator.iocs.isNotEmpty()) {
+            recommendations.add("Bloquear los ${accumulator.iocs.size} IOCs identificados en el período")
+        }
+        if (trends.trends.isNotEmpty()) {
+            recommendations.add("Revisar controles frente a las tendencias en aumento")
+        }
+        return recommendations
+    }
+    
+    private fun calculateOverallRiskLevel(accumulator: ThreatReportAccumulator): ThreatSeverity {
+        return ThreatSeverity.values().lastOrNull { accumulator.severityCounts[it.ordinal] > 0 } ?: ThreatSeverity.LOW
+    }
+    
+    private fun generateReportSummary(accumulator: ThreatReportAccumulator, trends: TrendAnalysis): String {
+        return "${accumulator.totalThreats} amenazas registradas, ${accumulator.iocs.size} IOCs, " +
+            "${accumulator.ttps.size} TTPs y ${trends.trends.size} tendencias relevantes"
+    }
+    
+    private fun extractAffectedSectors(accumulator: ThreatReportAccumulator): List<String> =
+        accumulator.sectorCounts.entries.sortedByDescending { it.value }.take(20).map { it.key }
+    
+    private fun calculateReportConfidence(accumulator: ThreatReportAccumulator): Float =
+        if (accumulator.totalThreats > 0) accumulator.averageConfidence() else 0.8f
+    
+    private fun extractSources(accumulator: ThreatReportAccumulator): List<String> =
+        accumulator.sourceCounts.entries.sortedByDescending { it.value }.map { it.key }
+    
+    private fun formatTimeframe(timeframe: TimeFrame): String {
+        val format = java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault())
+        return "${format.format(java.util.Date(timeframe.startTime))} / ${format.format(java.util.Date(timeframe.endTime))}"
+    }
+    
+    private fun analyzeHistoricalPatterns(forecasts: List<OnlineThreatForecaster.SeriesForecast>): HistoricalPatterns {
+        // Series con suficiente historial para que la estacionalidad sea fiable
+        return HistoricalPatterns(forecasts
+            .filter { it.observedHours >= OnlineThreatForecaster.SEASON_LENGTH * 7 && it.expectedEvents > 0.0 }
+            .take(10)
+            .map { "${it.type.name} en ${it.sector}/${it.region}: ${"%.1f".format(it.expectedEvents)} eventos esperados" })
+    }
+    
+    private fun analyzeCurrentTrends(forecasts: List<OnlineThreatForecaster.SeriesForecast>): CurrentTrends {
+        return CurrentTrends(forecasts
+            .filter { it.trendPerHour > 0.0 }
+            .sortedByDescending { it.trendPerHour }
+            .take(10)
+            .map { "${it.type.name} en ${it.sector}/${it.region}: +${"%.2f".format(it.trendPerHour)}/h" })
+    }
     private fun analyzeGeopoliticalFactors(): GeopoliticalFactors = GeopoliticalFactors()
-    private fun generatePredictiveRecommendations(predictions: MLPredictions): List<String> = emptyList()
+    private fun generatePredictiveRecommendations(predictions: MLPredictions): List<String> {
+        return predictions.threats
+            .filter { it.probability >= 0.5f }
+            .map { "Reforzar defensas frente a ${it.name} (probabilidad ${(it.probability * 100).toInt()}%)" }
+    }
     
-    private fun processThreatUpdate(update: ThreatUpdate) {}
+    private fun processThreatUpdate(update: ThreatUpdate) {
+        historyStore.append(update)
+        forecaster.record(
+            type = update.type,
+            sector = update.iocs.firstOrNull()?.context?.tags?.firstOrNull(),
+            region = update.geolocation?.region ?: update.geolocation?.country,
+            timestamp = update.timestamp
+        )
+        if (update.iocs.isNotEmpty()) {
+            indexIOCs(update.iocs, update.ttps.map { it.mitreId })
+        }
+    }
     private fun updateThreatCounters() {}
     private fun evaluateGlobalThreatImpact(update: ThreatUpdate) {}
-    private fun getRecentIOCs(timeWindow: Long): List<IOC> = emptyList()
+    private fun getRecentIOCs(timeWindow: Long): List<IOC> {
+        val now = System.currentTimeMillis()
+        return getIOCsByTimeframe(now - timeWindow, now)
+    }
     private fun extractTTPsFromCorrelation(result: CorrelationResult): List<TTP> = emptyList()
-    private fun getActiveThreats(): List<ThreatUpdate> = emptyList()
+    private fun getActiveThreats(): List<ThreatUpdate> {
+        val now = System.currentTimeMillis()
+        return getThreatsByTimeframe(now - 3600000, now) // Última hora
+    }
     private fun calculateGlobalThreatLevel(threats: List<ThreatUpdate>): ThreatLevel = ThreatLevel.MODERATE
-    private fun detectEmergingCampaigns() {}
+    
+    /**
+     * Convierte en campañas los clústeres que cruzan los umbrales de tamaño o velocidad
+     */
+    private suspend fun detectEmergingCampaigns() {
+        for (candidate in campaignCandidates) {
+            val campaign = buildCampaignFromCluster(candidate)
+            val isNew = !campaigns.containsKey(campaign.id)
+            storeCampaign(campaign)
+            
+            publishThreatUpdate(ThreatUpdate(
+                id = generateUpdateId(),
+                type = ThreatUpdateType.CAMPAIGN_UPDATE,
+                severity = if (candidate.size >= IOCClusterEngine.DEFAULT_SIZE_THRESHOLD * 4) ThreatSeverity.HIGH else ThreatSeverity.MEDIUM,
+                title = if (isNew) "Campaña emergente detectada" else "Campaña en crecimiento",
+                description = "${candidate.size} IOCs enlazados por ${candidate.sharedFeatures.take(3).joinToString()}",
+                source = "Correlation Engine",
+                timestamp = System.currentTimeMillis(),
+                iocs = emptyList(),
+                ttps = emptyList(),
+                confidence = (0.5f + candidate.sharedFeatures.size * 0.1f).coerceAtMost(0.95f)
+            ))
+        }
+    }
+    
+    private fun buildCampaignFromCluster(candidate: IOCClusterEngine.ClusterCandidate): ThreatCampaign {
+        val id = campaignId(candidate.clusterId)
+        val previous = campaigns[id]
+        val event = CampaignEvent(
+            timestamp = System.currentTimeMillis(),
+            event = if (previous == null) "Detección" else "Crecimiento",
+            description = "Clúster de ${candidate.size} IOCs (${"%.1f".format(candidate.velocityPerHour)} IOCs/h)",
+            evidence = candidate.sharedFeatures.take(10)
+        )
+        
+        return ThreatCampaign(
+            id = id,
+            name = previous?.name ?: "Campaña emergente ${candidate.clusterId}",
+            description = "Actividad coordinada inferida por infraestructura compartida",
+            actor = candidate.actor ?: previous?.actor ?: "Desconocido",
+            startDate = candidate.firstSeen,
+            endDate = null,
+            isActive = true,
+            targetSectors = candidate.tags,
+            targetGeography = previous?.targetGeography ?: emptyList(),
+            objectives = previous?.objectives ?: emptyList(),
+            ttps = candidate.ttps,
+            iocs = candidate.memberKeys,
+            timeline = (previous?.timeline ?: emptyList()) + event
+        )
+    }
+    
+    private fun campaignId(clusterId: Int): String = "CMP_$clusterId"
     
     // Clases de datos auxiliares
     data class IOCAnalysisResult(
@@ -548,6 +1007,7 @@ class ThreatIntelligenceEngine(private val context: Context) {
     
     data class TimeFrame(val startTime: Long, val endTime: Long)
     data class IOCMatch(val source: String, val confidence: Float)
+    data class ReputationVerdict(val score: Float, val matches: List<IOCMatch>)
     data class ContextualAnalysis(val confidence: Float = 0.5f)
     data class IOCCorrelation(val type: String, val strength: Float)
     data class TrendAnalysis(val trends: List<String> = emptyList())
@@ -589,9 +1049,42 @@ class PredictiveAnalyzer {
         historical: ThreatIntelligenceEngine.HistoricalPatterns,
         current: ThreatIntelligenceEngine.CurrentTrends,
         geopolitical: ThreatIntelligenceEngine.GeopoliticalFactors,
-        timeHorizon: Long
+        timeHorizon: Long,
+        forecasts: List<OnlineThreatForecaster.SeriesForecast> = emptyList()
     ): ThreatIntelligenceEngine.MLPredictions {
-        return ThreatIntelligenceEngine.MLPredictions()
+        if (forecasts.isEmpty()) {
+            return ThreatIntelligenceEngine.MLPredictions()
+        }
+        
+        // Probabilidad de al menos un evento suponiendo llegadas de Poisson
+        val threats = forecasts.take(10).map { forecast ->
+            ThreatIntelligenceEngine.PredictedThreat(
+                name = "${forecast.type.name} · ${forecast.sector} · ${forecast.region}",
+                probability = (1.0 - exp(-forecast.expectedEvents)).toFloat(),
+                impact = impactOf(forecast.type)
+            )
+        }
+        
+        // La confianza crece con las horas observadas, saturando en cuatro semanas
+        val observedHours = forecasts.maxOf { it.observedHours }
+        val confidence = (observedHours / (OnlineThreatForecaster.SEASON_LENGTH * 28f)).coerceIn(0.1f, 0.95f)
+        
+        return ThreatIntelligenceEngine.MLPredictions(
+            threats = threats,
+            confidence = confidence,
+            influencingFactors = historical.patterns + current.trends + geopolitical.factors
+        )
+    }
+    
+    private fun impactOf(type: ThreatIntelligenceEngine.ThreatUpdateType): ThreatIntelligenceEngine.ThreatSeverity {
+        return when (type) {
+            ThreatIntelligenceEngine.ThreatUpdateType.APT_ACTIVITY,
+            ThreatIntelligenceEngine.ThreatUpdateType.VULNERABILITY_DISCLOSURE -> ThreatIntelligenceEngine.ThreatSeverity.CRITICAL
+            ThreatIntelligenceEngine.ThreatUpdateType.NEW_THREAT,
+            ThreatIntelligenceEngine.ThreatUpdateType.CAMPAIGN_UPDATE,
+            ThreatIntelligenceEngine.ThreatUpdateType.MALWARE_FAMILY -> ThreatIntelligenceEngine.ThreatSeverity.HIGH
+            else -> ThreatIntelligenceEngine.ThreatSeverity.MEDIUM
+        }
     }
 }
 
@@ -602,3 +1095,17 @@ class CorrelationEngine {
     // Implementación de correlación de amenazas
 }
 
+/**
+ * API del feed externo de reputación de indicadores
+ */
+interface ThreatReputationApi {
+    @GET("reputation")
+    suspend fun getReputation(@Query("type") type: String, @Query("value") value: String): ReputationResponse
+}
+
+data class ReputationResponse(
+    val score: Float,
+    val sources: List<ReputationSource> = emptyList()
+)
+
+data class ReputationSource(val name: String, val confidence: Float)
@@ -0,0 +1,220 @@
+package com.guardianai.managers
+
+import android.util.Log
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.util.TreeSet
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Cola de respuestas a amenazas ordenada por prioridad y con agrupación de acciones
+ * Menor prioridad numérica se atiende antes (ver determinePriority). Los bloqueos de origen
+ * que coinciden en una ventana se aplican como un único cambio del conjunto de reglas.
+ * Capacidad acotada: por encima del umbral se descartan las prioridades bajas y, llena,
+ * una entrada más urgente desplaza a la menos urgente.
+ */
+class ThreatResponseQueue(
+    private val capacity: Int = DEFAULT_CAPACITY,
+    private val batchWindowMs: Long = DEFAULT_BATCH_WINDOW,
+    private val maxBatchSize: Int = DEFAULT_MAX_BATCH_SIZE,
+    private val sheddablePriority: Int = DEFAULT_SHEDDABLE_PRIORITY,
+    private val urgentPriority: Int = DEFAULT_URGENT_PRIORITY,
+    private val metrics: MetricsRegistry = MetricsRegistry.shared,
+    private val blockSources: suspend (sources: List<String>) -> String
+) {
+
+    companion object {
+        private const val TAG = "ThreatResponseQueue"
+        const val DEFAULT_CAPACITY = 1024
+        const val DEFAULT_BATCH_WINDOW = 50L
+        const val DEFAULT_MAX_BATCH_SIZE = 256
+        const val DEFAULT_SHEDDABLE_PRIORITY = 5 // LOW
+        const val DEFAULT_URGENT_PRIORITY = 1    // CATASTROPHIC o superior: sin ventana
+        const val SHED = "shed" // Resultado de un bloqueo descartado por la cola
+    }
+
+    sealed class ThreatResponse {
+        abstract val threatId: String
+        abstract val priority: Int
+
+        /**
+         * Bloqueo de un origen; se agrupa con los demás bloqueos del mismo lote
+         */
+        class BlockSource(
+            override val threatId: String,
+            override val priority: Int,
+            val source: String,
+            val result: CompletableDeferred<String>? = null
+        ) : ThreatResponse()
+
+        /**
+         * Acción individual (contramedida, cuarentena...) ejecutada en orden de prioridad
+         */
+        class Action(
+            override val threatId: String,
+            override val priority: Int,
+            val action: suspend () -> Unit
+        ) : ThreatResponse()
+    }
+
+    data class QueueStats(
+        val depth: Int,
+        val submitted: Long,
+        val shed: Long,
+        val batches: Long,
+        val sourcesBlocked: Long,
+        val averageLatencyMs: Double,
+        val p99LatencyMs: Long
+    )
+
+    private class Entry(val response: ThreatResponse, val sequence: Long, val enqueuedAt: Long)
+
+    private val queue = TreeSet<Entry>(compareBy<Entry>({ it.response.priority }, { it.sequence }))
+    private val lock = Any()
+    private val signal = Channel<Unit>(Channel.CONFLATED)
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+    private val sequence = AtomicLong(0)
+    private val shedThreshold = capacity * 3 / 4
+
+    private val submitted = metrics.counter("response.queue.submitted")
+    private val shed = metrics.counter("response.queue.shed")
+    private val batches = metrics.counter("response.queue.batches")
+    private val sourcesBlocked = metrics.counter("response.queue.sources_blocked")
+    private val depth = metrics.gauge("response.queue.depth")
+    private val latency = metrics.histogram("response.queue.latency_ms")
+    private val batchSize = metrics.histogram("response.queue.batch_size", longArrayOf(1, 2, 4, 8, 16, 32, 64, 128, 256))
+
+    init {
+        scope.launch { runWorker() }
+    }
+
+    /**
+     * Encola la respuesta; devuelve false si se descarta por carga
+     */
+    fun submit(response: ThreatResponse): Boolean {
+        submitted.increment()
+        val entry = Entry(response, sequence.incrementAndGet(), System.nanoTime())
+        var evicted: Entry? = null
+
+        val accepted = synchronized(lock) {
+            when {
+                queue.size >= capacity -> {
+                    val worst = queue.last()
+                    if (worst.response.priority > response.priority) {
+                        queue.pollLast()
+                        evicted = worst
+                        queue.add(entry)
+                    } else false
+                }
+                queue.size >= shedThreshold && response.priority >= sheddablePriority -> false
+                else -> queue.add(entry)
+            }.also { depth.set(queue.size.toLong()) }
+        }
+
+        evicted?.let { reject(it.response) }
+        if (!accepted) {
+            reject(response)
+            return false
+        }
+        signal.trySend(Unit)
+        return true
+    }
+
+    /**
+     * Bloquea el origen a través de la cola y espera a que se aplique su lote;
+     * null si la petición se descartó por carga
+     */
+    suspend fun blockSource(threatId: String, source: String, priority: Int): String? {
+        val result = CompletableDeferred<String>()
+        if (!submit(ThreatResponse.BlockSource(threatId, priority, source, result))) return null
+        return result.await().takeIf { it != SHED }
+    }
+
+    fun getStats(): QueueStats {
+        val snapshot = latency.snapshot()
+        return QueueStats(
+            depth = synchronized(lock) { queue.size },
+            submitted = submitted.sum(),
+            shed = shed.sum(),
+            batches = batches.sum(),
+            sourcesBlocked = sourcesBlocked.sum(),
+            averageLatencyMs = snapshot.mean,
+            p99LatencyMs = snapshot.percentile(0.99)
+        )
+    }
+
+    fun shutdown() {
+        scope.cancel()
+    }
+
+    private fun reject(response: ThreatResponse) {
+        shed.increment()
+        if (response is ThreatResponse.BlockSource) response.result?.complete(SHED)
+        Log.w(TAG, "Shedding response for threat ${response.threatId} (priority ${response.priority})")
+    }
+
+    private suspend fun runWorker() {
+        while (currentCoroutineContext().isActive) {
+            signal.receive()
+
+            while (true) {
+                val head = synchronized(lock) { queue.firstOrNull() } ?: break
+
+                // Las amenazas urgentes no esperan a que se llene la ventana
+                if (head.response.priority > urgentPriority && batchWindowMs > 0) {
+                    delay(batchWindowMs)
+                }
+
+                val batch = synchronized(lock) {
+                    val drained = ArrayList<Entry>(minOf(queue.size, maxBatchSize))
+                    while (drained.size < maxBatchSize) drained.add(queue.pollFirst() ?: break)
+                    depth.set(queue.size.toLong())
+                    drained
+                }
+                if (batch.isEmpty()) break
+                execute(batch)
+            }
+        }
+    }
+
+    private suspend fun execute(batch: List<Entry>) {
+        val started = System.nanoTime()
+        batch.forEach { latency.record((started - it.enqueuedAt) / 1_000_000) }
+        batches.increment()
+        batchSize.record(batch.size.toLong())
+
+        val blocks = batch.mapNotNull { it.response as? ThreatResponse.BlockSource }
+        var blocksApplied = blocks.isEmpty()
+
+        // Orden de prioridad; los bloqueos del lote se aplican juntos al llegar al primero
+        for (entry in batch) {
+            when (val response = entry.response) {
+                is ThreatResponse.BlockSource -> if (!blocksApplied) {
+                    applyBlocks(blocks)
+                    blocksApplied = true
+                }
+                is ThreatResponse.Action -> try {
+                    response.action()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Log.e(TAG, "Response for threat ${response.threatId} failed", e)
+                }
+            }
+        }
+    }
+
+    private suspend fun applyBlocks(blocks: List<ThreatResponse.BlockSource>) {
+        val sources = blocks.map { it.source }.distinct()
+        try {
+            val method = blockSources(sources)
+            sourcesBlocked.add(sources.size.toLong())
+            blocks.forEach { it.result?.complete(method) }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to apply ${sources.size} source blocks", e)
+            blocks.forEach { it.result?.completeExceptionally(e) }
+        }
+    }
+}
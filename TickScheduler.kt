@@ -0,0 +1,243 @@
+package com.guardianai.managers
+
+import android.util.Log
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * Planificador único de tareas periódicas de fondo
+ * Los periodos se redondean a múltiplos de un tick común y se alinean a la misma rejilla,
+ * así que tareas con periodos conmensurables despiertan juntas. Cada tarea declara cuánto
+ * puede retrasarse para agruparse con otras (tolerancia) y un presupuesto por ejecución;
+ * los excesos se cuentan y registran. Entre ticks con trabajo el bucle duerme.
+ */
+class TickScheduler(
+    private val tickMs: Long = DEFAULT_TICK_MS,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    private val metrics: MetricsRegistry = MetricsRegistry.shared
+) {
+
+    companion object {
+        private const val TAG = "TickScheduler"
+        const val DEFAULT_TICK_MS = 1000L
+    }
+
+    data class TaskStats(
+        val name: String,
+        val periodMs: Long,
+        val budgetMs: Long,
+        val runs: Long,
+        val overruns: Long,
+        val skippedRuns: Long,
+        val failures: Long,
+        val totalRunMs: Double,
+        val maxRunMs: Double,
+        val isPaused: Boolean
+    ) {
+        val averageRunMs: Double
+            get() = if (runs > 0) totalRunMs / runs else 0.0
+    }
+
+    data class SchedulerStats(
+        val wakeups: Long,
+        val ticksElapsed: Long,
+        val tasks: List<TaskStats> // Ordenadas por tiempo total consumido
+    )
+
+    inner class TaskHandle internal constructor(
+        val name: String,
+        internal val periodTicks: Long,
+        internal val toleranceTicks: Long,
+        val budgetMs: Long,
+        internal val context: CoroutineContext,
+        internal val activeWhile: () -> Boolean,
+        internal val block: suspend () -> Unit,
+        paused: Boolean
+    ) {
+        @Volatile
+        internal var nextDueTick = 0L
+
+        @Volatile
+        var isPaused = paused
+            private set
+
+        internal val running = AtomicBoolean(false)
+        internal val runs = AtomicLong(0)
+        internal val overruns = AtomicLong(0)
+        internal val skipped = AtomicLong(0)
+        internal val failures = AtomicLong(0)
+        internal val totalRunNs = AtomicLong(0)
+        internal val maxRunNs = AtomicLong(0)
+        private val runHistogram = metrics.histogram("scheduler.$name.run_ms")
+
+        /**
+         * Deja de despertar para esta tarea; una ejecución en curso termina normalmente
+         */
+        fun pause() {
+            isPaused = true
+        }
+
+        /**
+         * Reanuda en el siguiente punto de su rejilla, sin ponerse al día con lo omitido
+         */
+        fun resume() {
+            if (!isPaused) return
+            nextDueTick = alignUp(currentTick(), periodTicks)
+            isPaused = false
+            wake()
+        }
+
+        fun cancel() {
+            tasks.remove(this)
+            wake()
+        }
+
+        internal fun record(elapsedNs: Long) {
+            runs.incrementAndGet()
+            totalRunNs.addAndGet(elapsedNs)
+            maxRunNs.accumulateAndGet(elapsedNs) { a, b -> maxOf(a, b) }
+            val elapsedMs = elapsedNs / 1_000_000
+            runHistogram.record(elapsedMs)
+            if (elapsedMs > budgetMs) {
+                overruns.incrementAndGet()
+                Log.w(TAG, "Task $name overran its budget: ${elapsedMs}ms > ${budgetMs}ms")
+            }
+        }
+
+        internal fun stats(): TaskStats = TaskStats(
+            name = name,
+            periodMs = periodTicks * tickMs,
+            budgetMs = budgetMs,
+            runs = runs.get(),
+            overruns = overruns.get(),
+            skippedRuns = skipped.get(),
+            failures = failures.get(),
+            totalRunMs = totalRunNs.get() / 1_000_000.0,
+            maxRunMs = maxRunNs.get() / 1_000_000.0,
+            isPaused = isPaused
+        )
+    }
+
+    private val scope = CoroutineScope(dispatcher + SupervisorJob())
+    private val tasks = CopyOnWriteArrayList<TaskHandle>()
+    private val wakeSignal = Channel<Unit>(Channel.CONFLATED)
+    private val started = AtomicBoolean(false)
+    private val epochMs = monotonicMs()
+    private val wakeups = AtomicLong(0)
+
+    /**
+     * Programa una tarea periódica; una tarea con el mismo nombre se reemplaza.
+     * La tarea se descarta cuando activeWhile deja de cumplirse en un vencimiento.
+     * El primer vencimiento cae en un múltiplo del periodo, también sin retardo inicial,
+     * para que las tareas del mismo periodo compartan despertar; con paused la tarea
+     * no se ejecuta hasta resume().
+     */
+    fun schedule(
+        name: String,
+        periodMs: Long,
+        budgetMs: Long,
+        toleranceMs: Long = 0L,
+        initialDelayMs: Long = 0L,
+        context: CoroutineContext = EmptyCoroutineContext,
+        activeWhile: () -> Boolean = { true },
+        paused: Boolean = false,
+        block: suspend () -> Unit
+    ): TaskHandle {
+        val periodTicks = maxOf(1L, (periodMs + tickMs - 1) / tickMs)
+        val toleranceTicks = (toleranceMs / tickMs).coerceIn(0L, periodTicks - 1)
+        val handle = TaskHandle(name, periodTicks, toleranceTicks, budgetMs, context, activeWhile, block, paused)
+
+        val delayTicks = (maxOf(0L, initialDelayMs) + tickMs - 1) / tickMs
+        handle.nextDueTick = alignUp(currentTick() + delayTicks, periodTicks)
+
+        tasks.firstOrNull { it.name == name }?.let { tasks.remove(it) }
+        tasks.add(handle)
+
+        if (started.compareAndSet(false, true)) {
+            scope.launch { runLoop() }
+        }
+        wake()
+        return handle
+    }
+
+    fun getStats(): SchedulerStats = SchedulerStats(
+        wakeups = wakeups.get(),
+        ticksElapsed = currentTick(),
+        tasks = tasks.map { it.stats() }.sortedByDescending { it.totalRunMs }
+    )
+
+    fun shutdown() {
+        tasks.clear()
+        scope.cancel()
+    }
+
+    private suspend fun runLoop() {
+        while (currentCoroutineContext().isActive) {
+            val now = currentTick()
+            for (task in tasks) {
+                if (!task.isPaused && task.nextDueTick <= now) dispatch(task, now)
+            }
+
+            // Despertar en el último tick admisible de la tarea más urgente; lo vencido hasta
+            // entonces se ejecuta en la misma pasada
+            val wakeTick = tasks.asSequence()
+                .filter { !it.isPaused }
+                .minOfOrNull { it.nextDueTick + it.toleranceTicks }
+            val sleepMs = if (wakeTick != null) epochMs + wakeTick * tickMs - monotonicMs() else Long.MAX_VALUE
+
+            if (sleepMs > 0) {
+                withTimeoutOrNull(sleepMs) { wakeSignal.receive() }
+            }
+            wakeups.incrementAndGet()
+        }
+    }
+
+    private fun dispatch(task: TaskHandle, now: Long) {
+        if (!task.activeWhile()) {
+            tasks.remove(task)
+            return
+        }
+
+        // Siguiente vencimiento sobre la rejilla; los periodos perdidos cuentan como omitidos
+        val missed = (now - task.nextDueTick) / task.periodTicks
+        task.nextDueTick += (missed + 1) * task.periodTicks
+        if (missed > 0) task.skipped.addAndGet(missed)
+
+        // Sin solapamiento: si la ejecución anterior sigue en curso se omite esta
+        if (!task.running.compareAndSet(false, true)) {
+            task.skipped.incrementAndGet()
+            return
+        }
+
+        scope.launch(task.context) {
+            val start = System.nanoTime()
+            try {
+                task.block()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                task.failures.incrementAndGet()
+                Log.e(TAG, "Task ${task.name} failed", e)
+            } finally {
+                task.record(System.nanoTime() - start)
+                task.running.set(false)
+            }
+        }
+    }
+
+    private fun wake() {
+        wakeSignal.trySend(Unit)
+    }
+
+    private fun currentTick(): Long = (monotonicMs() - epochMs) / tickMs
+
+    private fun alignUp(tick: Long, periodTicks: Long): Long =
+        (tick + periodTicks - 1) / periodTicks * periodTicks
+
+    private fun monotonicMs(): Long = System.nanoTime() / 1_000_000
+}
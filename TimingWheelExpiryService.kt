@@ -0,0 +1,258 @@
+package com.guardianai.managers
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Servicio compartido de expiración basado en ruedas de tiempo jerárquicas
+ * Programar y cancelar son O(1); en cada tick sólo se procesa el slot actual,
+ * por lo que las entradas caducan a tiempo sin recorridos periódicos de los mapas
+ */
+class TimingWheelExpiryService(
+    private val tickMs: Long = DEFAULT_TICK_MS,
+    wheelBits: Int = DEFAULT_WHEEL_BITS,
+    private val levels: Int = DEFAULT_LEVELS
+) {
+
+    companion object {
+        const val DEFAULT_TICK_MS = 1000L
+        const val DEFAULT_WHEEL_BITS = 6 // 64 slots por nivel
+        const val DEFAULT_LEVELS = 4     // 1 s, ~1 min, ~1 h, ~3 días por slot
+
+        /**
+         * Instancia compartida por motores de inteligencia, seguridad y cifrado
+         */
+        val shared: TimingWheelExpiryService by lazy { TimingWheelExpiryService() }
+    }
+
+    /**
+     * Manejador de una expiración programada; cancel() es O(1)
+     */
+    class ExpiryHandle internal constructor(
+        private val service: TimingWheelExpiryService,
+        val deadline: Long,
+        internal val action: () -> Unit
+    ) {
+        internal var deadlineTick = 0L
+        internal var prev: ExpiryHandle? = null
+        internal var next: ExpiryHandle? = null
+        internal var slot: Slot? = null
+
+        @Volatile
+        var isExpired = false
+            internal set
+
+        val isPending: Boolean
+            get() = slot != null
+
+        fun cancel(): Boolean = service.cancel(this)
+    }
+
+    data class ExpiryStats(
+        val pending: Long,
+        val scheduled: Long,
+        val cancelled: Long,
+        val expired: Long,
+        val maxLagMs: Long,
+        val averageLagMs: Double
+    )
+
+    /**
+     * Lista doblemente enlazada intrusiva de un slot
+     */
+    internal class Slot {
+        var head: ExpiryHandle? = null
+
+        fun add(handle: ExpiryHandle) {
+            handle.slot = this
+            handle.prev = null
+            handle.next = head
+            head?.prev = handle
+            head = handle
+        }
+
+        fun remove(handle: ExpiryHandle) {
+            handle.prev?.next = handle.next
+            if (handle.prev == null) head = handle.next
+            handle.next?.prev = handle.prev
+            handle.prev = null
+            handle.next = null
+            handle.slot = null
+        }
+
+        fun drain(): ExpiryHandle? {
+            val first = head
+            head = null
+            return first
+        }
+    }
+
+    private val bits = wheelBits
+    private val wheelMask = (1L shl wheelBits) - 1
+    private val wheels = Array(levels) { Array(1 shl wheelBits) { Slot() } }
+    private val lock = Any()
+    private var currentTick = System.currentTimeMillis() / tickMs
+
+    private val pendingCount = AtomicLong(0)
+    private val scheduledCount = AtomicLong(0)
+    private val cancelledCount = AtomicLong(0)
+    private val expiredCount = AtomicLong(0)
+    private val lagSumMs = AtomicLong(0)
+    private val maxLagMs = AtomicLong(0)
+
+    private val wakeUp = Channel<Unit>(Channel.CONFLATED)
+    private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    private val driver: Job by lazy { scope.launch { runWheel() } }
+
+    /**
+     * Programa [action] para ejecutarse en el instante absoluto [deadline]
+     */
+    fun scheduleAt(deadline: Long, action: () -> Unit): ExpiryHandle {
+        val handle = ExpiryHandle(this, deadline, action)
+        synchronized(lock) {
+            if (pendingCount.get() == 0L) {
+                // Tras un período inactivo la rueda se resincroniza con el reloj
+                currentTick = System.currentTimeMillis() / tickMs
+            }
+            handle.deadlineTick = (deadline + tickMs - 1) / tickMs
+            insert(handle)
+            // Dentro del lock: otra programación concurrente no debe ver 0 y resincronizar la rueda
+            pendingCount.incrementAndGet()
+        }
+        scheduledCount.incrementAndGet()
+        driver.start()
+        wakeUp.trySend(Unit)
+        return handle
+    }
+
+    fun schedule(ttlMs: Long, action: () -> Unit): ExpiryHandle =
+        scheduleAt(System.currentTimeMillis() + ttlMs, action)
+
+    /**
+     * Registra un TTL para una entrada de mapa; sólo se elimina si sigue asociada al mismo valor
+     */
+    fun <K : Any, V : Any> expireEntry(map: ConcurrentMap<K, V>, key: K, value: V, deadline: Long): ExpiryHandle =
+        scheduleAt(deadline) { map.remove(key, value) }
+
+    fun cancel(handle: ExpiryHandle): Boolean {
+        synchronized(lock) {
+            val slot = handle.slot ?: return false
+            slot.remove(handle)
+        }
+        pendingCount.decrementAndGet()
+        cancelledCount.incrementAndGet()
+        return true
+    }
+
+    fun getStats(): ExpiryStats {
+        val expired = expiredCount.get()
+        return ExpiryStats(
+            pending = pendingCount.get(),
+            scheduled = scheduledCount.get(),
+            cancelled = cancelledCount.get(),
+            expired = expired,
+            maxLagMs = maxLagMs.get(),
+            averageLagMs = if (expired > 0) lagSumMs.get().toDouble() / expired else 0.0
+        )
+    }
+
+    fun shutdown() {
+        scope.cancel()
+    }
+
+    private fun insert(handle: ExpiryHandle) {
+        val delta = (handle.deadlineTick - currentTick).coerceAtLeast(1L)
+        var level = 0
+        while (level < levels - 1 && delta >= (1L shl (bits * (level + 1)))) {
+            level++
+        }
+        // Más allá del último nivel se aparca en el slot más lejano y se recoloca al cascadear
+        val tick = if (level == levels - 1 && delta >= (1L shl (bits * levels))) {
+            currentTick + (1L shl (bits * levels)) - 1
+        } else {
+            maxOf(handle.deadlineTick, currentTick + 1)
+        }
+        val index = ((tick shr (bits * level)) and wheelMask).toInt()
+        wheels[level][index].add(handle)
+    }
+
+    /**
+     * Avanza un tick: cascadea niveles superiores y devuelve las entradas vencidas
+     */
+    private fun advance(expired: MutableList<ExpiryHandle>) {
+        currentTick++
+
+        for (level in levels - 1 downTo 1) {
+            val span = 1L shl (bits * level)
+            if (currentTick and (span - 1) == 0L) {
+                val index = ((currentTick shr (bits * level)) and wheelMask).toInt()
+                var handle = wheels[level][index].drain()
+                while (handle != null) {
+                    val next = handle.next
+                    handle.prev = null
+                    handle.next = null
+                    handle.slot = null
+                    insert(handle)
+                    handle = next
+                }
+            }
+        }
+
+        val slot = wheels[0][(currentTick and wheelMask).toInt()]
+        var handle = slot.drain()
+        while (handle != null) {
+            val next = handle.next
+            handle.prev = null
+            handle.next = null
+            handle.slot = null
+            if (handle.deadlineTick <= currentTick) {
+                expired.add(handle)
+            } else {
+                insert(handle)
+            }
+            handle = next
+        }
+    }
+
+    private suspend fun runWheel() {
+        val expired = ArrayList<ExpiryHandle>()
+        while (currentCoroutineContext().isActive) {
+            if (pendingCount.get() == 0L) {
+                // Sin entradas pendientes no hay despertares periódicos
+                wakeUp.receive()
+                continue
+            }
+
+            val nextTickTime = synchronized(lock) { (currentTick + 1) * tickMs }
+            val wait = nextTickTime - System.currentTimeMillis()
+            if (wait > 0) delay(wait)
+
+            val nowTick = System.currentTimeMillis() / tickMs
+            synchronized(lock) {
+                while (currentTick < nowTick) advance(expired)
+            }
+
+            if (expired.isEmpty()) continue
+
+            val now = System.currentTimeMillis()
+            for (handle in expired) {
+                pendingCount.decrementAndGet()
+                expiredCount.incrementAndGet()
+                handle.isExpired = true
+
+                val lag = (now - handle.deadline).coerceAtLeast(0L)
+                lagSumMs.addAndGet(lag)
+                maxLagMs.accumulateAndGet(lag) { a, b -> maxOf(a, b) }
+
+                try {
+                    handle.action()
+                } catch (e: Exception) {
+                    // Una acción fallida no debe detener la rueda
+                }
+            }
+            expired.clear()
+        }
+    }
+}
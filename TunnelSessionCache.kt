@@ -0,0 +1,169 @@
+package com.guardianai.security.quantum_encryption
+
+import com.guardianai.managers.TimingWheelExpiryService
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caché de sesiones de túnel con tickets de reanudación por endpoint
+ * Una reconexión al mismo endpoint mientras el ticket siga vigente omite el protocolo
+ * QKD completo; el motor deriva claves nuevas del secreto del ticket en cada reanudación.
+ * Tamaño acotado con expulsión LRU; los tickets caducan por la rueda de tiempo
+ * y su secreto se pone a cero al expulsarse. onDiscard recibe el túnel de cada sesión que
+ * sale de la caché, para que el motor suelte lo que retenía por ella.
+ */
+class TunnelSessionCache(
+    private val maxSessions: Int = DEFAULT_MAX_SESSIONS,
+    private val ticketLifetimeMs: Long = DEFAULT_TICKET_LIFETIME,
+    private val expiryService: TimingWheelExpiryService = TimingWheelExpiryService.shared,
+    private val onDiscard: (QuantumEncryptionEngine.QuantumTunnel) -> Unit = {}
+) {
+
+    companion object {
+        const val DEFAULT_MAX_SESSIONS = 64
+        const val DEFAULT_TICKET_LIFETIME = 600000L // 10 minutos
+    }
+
+    class ResumptionTicket(
+        val ticketId: String,
+        val endpoint: String,
+        val securityLevel: QuantumEncryptionEngine.QuantumSecurityLevel,
+        val issuedAt: Long,
+        val expiresAt: Long,
+        val resumptionSecret: ByteArray // Vinculante que se presenta al par al reanudar
+    )
+
+    data class TunnelSessionStats(
+        val sessions: Int,
+        val fullHandshakes: Long,
+        val resumptions: Long,
+        val averageFullHandshakeMs: Double,
+        val averageResumptionMs: Double,
+        val evictions: Long,
+        val expirations: Long
+    ) {
+        val resumptionRatio: Double
+            get() = if (fullHandshakes + resumptions > 0) resumptions.toDouble() / (fullHandshakes + resumptions) else 0.0
+    }
+
+    private class Session(val ticket: ResumptionTicket, val tunnel: QuantumEncryptionEngine.QuantumTunnel) {
+        var handle: TimingWheelExpiryService.ExpiryHandle? = null
+    }
+
+    private val sessions = LinkedHashMap<String, Session>(maxSessions * 2, 0.75f, true)
+    private val lock = Any()
+
+    private val fullHandshakes = AtomicLong(0)
+    private val resumptions = AtomicLong(0)
+    private val fullHandshakeNs = AtomicLong(0)
+    private val resumptionNs = AtomicLong(0)
+    private val evictions = AtomicLong(0)
+    private val expirations = AtomicLong(0)
+
+    /**
+     * Túnel reanudable para el endpoint, si el ticket sigue vigente y cubre el nivel pedido
+     * El ticket devuelto lleva una copia del secreto que el llamador debe poner a cero
+     */
+    fun lookup(
+        endpoint: String,
+        securityLevel: QuantumEncryptionEngine.QuantumSecurityLevel
+    ): Pair<ResumptionTicket, QuantumEncryptionEngine.QuantumTunnel>? {
+        val key = normalize(endpoint)
+        // El secreto se copia bajo el lock: una sesión expulsada en paralelo lo pone a cero
+        val (session, secret) = synchronized(lock) {
+            sessions[key]?.let { it to it.ticket.resumptionSecret.copyOf() }
+        } ?: return null
+
+        val ticket = session.ticket
+        val usable = System.currentTimeMillis() < ticket.expiresAt &&
+            ticket.securityLevel.ordinal >= securityLevel.ordinal
+        if (!usable) {
+            secret.fill(0)
+            invalidate(endpoint)
+            return null
+        }
+        return ResumptionTicket(ticket.ticketId, ticket.endpoint, ticket.securityLevel, ticket.issuedAt, ticket.expiresAt, secret) to
+            session.tunnel
+    }
+
+    /**
+     * Registra la sesión tras un handshake completo y emite su ticket
+     */
+    fun store(
+        endpoint: String,
+        tunnel: QuantumEncryptionEngine.QuantumTunnel,
+        resumptionSecret: ByteArray
+    ): ResumptionTicket {
+        val key = normalize(endpoint)
+        val now = System.currentTimeMillis()
+        val ticket = ResumptionTicket(
+            ticketId = "RT_${tunnel.tunnelId}",
+            endpoint = key,
+            securityLevel = tunnel.securityLevel,
+            issuedAt = now,
+            expiresAt = minOf(now + ticketLifetimeMs, tunnel.localKey.expirationTime),
+            resumptionSecret = resumptionSecret
+        )
+        val session = Session(ticket, tunnel)
+        val evicted = ArrayList<Session>(1)
+
+        synchronized(lock) {
+            sessions.put(key, session)?.let { evicted.add(it) }
+            while (sessions.size > maxSessions) {
+                val eldest = sessions.entries.iterator().next()
+                sessions.remove(eldest.key)
+                evicted.add(eldest.value)
+                evictions.incrementAndGet()
+            }
+            session.handle = expiryService.scheduleAt(ticket.expiresAt) { expire(key, session) }
+        }
+
+        evicted.forEach { discard(it) }
+        return ticket
+    }
+
+    fun invalidate(endpoint: String) {
+        val session = synchronized(lock) { sessions.remove(normalize(endpoint)) } ?: return
+        discard(session)
+    }
+
+    fun recordHandshake(resumed: Boolean, elapsedNs: Long) {
+        if (resumed) {
+            resumptions.incrementAndGet()
+            resumptionNs.addAndGet(elapsedNs)
+        } else {
+            fullHandshakes.incrementAndGet()
+            fullHandshakeNs.addAndGet(elapsedNs)
+        }
+    }
+
+    fun getStats(): TunnelSessionStats {
+        val full = fullHandshakes.get()
+        val resumed = resumptions.get()
+        return TunnelSessionStats(
+            sessions = synchronized(lock) { sessions.size },
+            fullHandshakes = full,
+            resumptions = resumed,
+            averageFullHandshakeMs = if (full > 0) fullHandshakeNs.get() / 1_000_000.0 / full else 0.0,
+            averageResumptionMs = if (resumed > 0) resumptionNs.get() / 1_000_000.0 / resumed else 0.0,
+            evictions = evictions.get(),
+            expirations = expirations.get()
+        )
+    }
+
+    private fun expire(key: String, session: Session) {
+        val removed = synchronized(lock) {
+            if (sessions[key] !== session) return
+            sessions.remove(key)
+        } ?: return
+        expirations.incrementAndGet()
+        discard(removed)
+    }
+
+    private fun discard(session: Session) {
+        session.handle?.cancel()
+        session.ticket.resumptionSecret.fill(0)
+        onDiscard(session.tunnel)
+    }
+
+    private fun normalize(endpoint: String): String = endpoint.trim().lowercase()
+}
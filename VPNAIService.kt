@@ -13,6 +13,7 @@ import android.util.Log
 import androidx.core.app.NotificationCompat
 import com.guardianai.R
 import com.guardianai.activities.MainActivity
+import com.guardianai.managers.FirewallRuleEngine
 import com.guardianai.membership.MembershipManager
 import com.guardianai.membership.MembershipStatus
 import kotlinx.coroutines.*
@@ -212,6 +213,9 @@ class VPNAIService : VpnService() {
     }
 
     private fun processVPNPacket(packet: ByteBuffer) {
+        // Decisión de firewall en el propio hilo VPN, sin locks: los paquetes bloqueados se descartan
+        if (isBlockedByFirewall(packet)) return
+
         // Aquí se implementaría el procesamiento inteligente de paquetes
         // Por ahora, simplemente reenviar el paquete
         serviceScope.launch {
@@ -219,6 +223,24 @@ class VPNAIService : VpnService() {
         }
     }
 
+    /**
+     * Destino IPv4 y puerto TCP/UDP de la cabecera; los paquetes no IPv4 no se filtran aquí
+     */
+    private fun isBlockedByFirewall(packet: ByteBuffer): Boolean {
+        if (packet.limit() < 20) return false
+        val versionAndLength = packet.get(0).toInt()
+        if (versionAndLength ushr 4 != 4) return false
+
+        val headerLength = (versionAndLength and 0x0F) * 4
+        val protocol = packet.get(9).toInt() and 0xFF
+        val destination = packet.getInt(16)
+        val port = if ((protocol == 6 || protocol == 17) && packet.limit() >= headerLength + 4) {
+            packet.getShort(headerLength + 2).toInt() and 0xFFFF
+        } else -1
+
+        return FirewallRuleEngine.shared.isBlocked(destination, port)
+    }
+
     private fun autoConnectVPN() {
         serviceScope.launch {
             try {
@@ -0,0 +1,84 @@
+package com.guardianai.benchmark
+
+import android.content.ContextWrapper
+import com.guardianai.activities.MilitaryEncryptionManager
+import com.guardianai.security.quantum_encryption.QuantumEncryptionEngine
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Cifrado y descifrado por tamaño de carga (64 B a 64 MB), en un hilo y con contención
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class QuantumEncryptionBenchmark {
+
+    @Param("64", "1024", "65536", "1048576", "16777216", "67108864")
+    var payloadSize = 0
+
+    @Param("true", "false")
+    var parallel = true
+
+    private lateinit var engine: QuantumEncryptionEngine
+    private lateinit var militaryEncryption: MilitaryEncryptionManager
+    private lateinit var payload: ByteArray
+    private lateinit var militaryPayload: String
+    private lateinit var keyId: String
+    private lateinit var encrypted: QuantumEncryptionEngine.QuantumEncryptionResult
+    private lateinit var militaryEncrypted: ByteArray
+
+    @Setup(Level.Trial)
+    fun setUp() = runBlocking {
+        engine = QuantumEncryptionEngine(ContextWrapper(null))
+        engine.parallelEncryptionEnabled = parallel
+        militaryEncryption = MilitaryEncryptionManager()
+        payload = Random(42).nextBytes(payloadSize)
+        // MilitaryEncryptionManager cifra data.toString(): un ByteArray daría "[B@hash".
+        // Texto ASCII para que su UTF-8 ocupe exactamente payloadSize bytes
+        val random = Random(42)
+        militaryPayload = String(CharArray(payloadSize) { 'a' + random.nextInt(26) })
+        keyId = engine.generateQuantumKey().keyId
+        encrypted = engine.quantumEncrypt(payload, keyId)
+        militaryEncrypted = militaryEncryption.quantumEncrypt(militaryPayload)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        engine.shutdown()
+    }
+
+    @Benchmark
+    fun quantumEncrypt(): QuantumEncryptionEngine.QuantumEncryptionResult = runBlocking {
+        engine.quantumEncrypt(payload, keyId)
+    }
+
+    @Benchmark
+    @Threads(4)
+    fun quantumEncryptContended(): QuantumEncryptionEngine.QuantumEncryptionResult = runBlocking {
+        engine.quantumEncrypt(payload, keyId)
+    }
+
+    @Benchmark
+    fun quantumEncryptSessionKey(): QuantumEncryptionEngine.QuantumEncryptionResult = runBlocking {
+        engine.quantumEncrypt(payload)
+    }
+
+    @Benchmark
+    fun quantumDecrypt(): ByteArray = runBlocking {
+        engine.quantumDecrypt(encrypted.encryptedData, keyId, encrypted.quantumSignature, encrypted.messageIndex)
+    }
+
+    @Benchmark
+    @Threads(4)
+    fun quantumDecryptContended(): ByteArray = runBlocking {
+        engine.quantumDecrypt(encrypted.encryptedData, keyId, encrypted.quantumSignature, encrypted.messageIndex)
+    }
+
+    @Benchmark
+    fun militaryQuantumEncrypt(): ByteArray = militaryEncryption.quantumEncrypt(militaryPayload)
+
+    @Benchmark
+    fun militaryDecrypt(): String = militaryEncryption.decrypt(militaryEncrypted)
+}
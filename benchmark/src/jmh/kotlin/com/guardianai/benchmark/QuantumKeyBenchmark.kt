@@ -0,0 +1,48 @@
+package com.guardianai.benchmark
+
+import android.content.ContextWrapper
+import com.guardianai.security.quantum_encryption.QuantumEncryptionEngine
+import kotlinx.coroutines.runBlocking
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Generación de claves y establecimiento de túneles, en un hilo y con contención
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class QuantumKeyBenchmark {
+
+    private lateinit var engine: QuantumEncryptionEngine
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        engine = QuantumEncryptionEngine(ContextWrapper(null))
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+        engine.shutdown()
+    }
+
+    @Benchmark
+    fun generateQuantumKey(): QuantumEncryptionEngine.QuantumKey = runBlocking {
+        engine.generateQuantumKey()
+    }
+
+    @Benchmark
+    @Threads(4)
+    fun generateQuantumKeyContended(): QuantumEncryptionEngine.QuantumKey = runBlocking {
+        engine.generateQuantumKey()
+    }
+
+    @Benchmark
+    fun establishTunnelFullHandshake(): QuantumEncryptionEngine.QuantumTunnel = runBlocking {
+        engine.establishQuantumTunnel("127.0.0.1:7443", allowResumption = false)
+    }
+
+    @Benchmark
+    fun establishTunnelResumed(): QuantumEncryptionEngine.QuantumTunnel = runBlocking {
+        engine.establishQuantumTunnel("127.0.0.1:7443")
+    }
+}